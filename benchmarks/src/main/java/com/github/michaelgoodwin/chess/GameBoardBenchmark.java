@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Board setup, move playing and notation, each invocation covers every position in the corpus
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBoardBenchmark
+{
+	private final GameBoard gameBoard = new GameBoard();
+	private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+	@Benchmark
+	public void newGame(final Blackhole blackhole)
+	{
+		gameBoard.newGame();
+		blackhole.consume(gameBoard.getPosition());
+	}
+
+	@Benchmark
+	public void playMove(final PositionCorpus corpus, final Blackhole blackhole)
+	{
+		for (final PositionCorpus.Sample sample : corpus.samples)
+		{
+			gameBoard.getPosition().copyFrom(sample.position);
+			gameBoard.playMove(sample.firstMove);
+			blackhole.consume(gameBoard.getPosition());
+		}
+	}
+
+	@Benchmark
+	public void generateLegalMoves(final PositionCorpus corpus, final Blackhole blackhole)
+	{
+		for (final PositionCorpus.Sample sample : corpus.samples)
+		{
+			blackhole.consume(MoveGenerator.generate(sample.position, moves));
+		}
+	}
+
+	@Benchmark
+	public void toChessNotation(final PositionCorpus corpus, final Blackhole blackhole)
+	{
+		for (final PositionCorpus.Sample sample : corpus.samples)
+		{
+			for (final Move move : sample.moves)
+			{
+				blackhole.consume(move.toChessNotation(sample.board));
+			}
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import com.github.michaelgoodwin.chess.journal.GameJournal;
+import com.github.michaelgoodwin.chess.server.GameServer;
+import com.github.michaelgoodwin.chess.server.GameSession;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Measures how long moves take to be applied on a loaded {@link GameServer}.
+ * Every hosted game plays through one of a set of random games, moves are submitted at a fixed rate spread over all
+ * games and the latency from submitting a move to its snapshot being published is recorded.
+ * This is a paced load test rather than a JMH benchmark, run it with
+ * `java -cp target/benchmarks.jar com.github.michaelgoodwin.chess.GameServerBenchmark games moves-per-second seconds
+ * [journal-directory]`. With a journal directory every move is journaled and games left by an earlier run are
+ * recovered first.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class GameServerBenchmark
+{
+	private static final int SCRIPTS = 256;
+	private static final int MAX_SCRIPT_PLIES = 160;
+	// Latencies are counted in microsecond buckets, anything slower lands in the last one
+	private static final int HISTOGRAM_SIZE = 100_000;
+	private static final long DRAIN_TIMEOUT_NANOS = Duration.ofSeconds(10).toNanos();
+	// Moves sent while the JIT is still compiling the move path aren't recorded
+	private static final long WARMUP_NANOS = Duration.ofSeconds(2).toNanos();
+
+	private static final int JOURNAL_SHARDS = 4;
+
+	private final GameServer server;
+
+	public static void main(final String[] args) throws IOException
+	{
+		if (args.length < 3)
+		{
+			System.err.println("Usage: GameServerBenchmark games moves-per-second seconds [journal-directory]");
+			System.exit(1);
+		}
+		final int games = Integer.parseInt(args[0]);
+		final int movesPerSecond = Integer.parseInt(args[1]);
+		final Duration duration = Duration.ofSeconds(Integer.parseInt(args[2]));
+
+		final GameJournal journal = args.length > 3
+			? GameJournal.open(Paths.get(args[3]), JOURNAL_SHARDS, GameServer.platformThreads(), User::new) : null;
+		try (GameServer server = new GameServer(Runtime.getRuntime().availableProcessors(),
+			GameServer.platformThreads(), null, journal))
+		{
+			log.info("Hosting {} recovered games", server.recover().size());
+			new GameServerBenchmark(server).run(games, movesPerSecond, duration);
+		}
+		finally
+		{
+			if (journal != null)
+			{
+				journal.close();
+			}
+		}
+	}
+
+	/**
+	 * @param games number of games to keep hosted, finished games are replaced by new ones
+	 * @param movesPerSecond rate moves are submitted at across all games
+	 * @param duration how long to record moves for after warming up
+	 */
+	public void run(final int games, final int movesPerSecond, final Duration duration)
+	{
+		final int[][] scripts = randomGames(new Random(games));
+		final GameSession[] sessions = new GameSession[games];
+		final int[] scriptIndex = new int[games];
+		final int[] plies = new int[games];
+		for (int i = 0; i < games; i++)
+		{
+			sessions[i] = server.host(newGame(i));
+			scriptIndex[i] = i % SCRIPTS;
+		}
+
+		// Set while a game has a move in flight, the next move is only sent once the last one is answered
+		final AtomicIntegerArray busy = new AtomicIntegerArray(games);
+		final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_SIZE);
+		final AtomicLong rejected = new AtomicLong();
+		final AtomicLong completed = new AtomicLong();
+		long submitted = 0;
+		long finished = 0;
+
+		final long interval = 1_000_000_000L / movesPerSecond;
+		final long start = System.nanoTime();
+		final long recordFrom = start + WARMUP_NANOS;
+		final long end = recordFrom + duration.toNanos();
+		long next = start;
+		int game = 0;
+		while (next < end)
+		{
+			final long now = System.nanoTime();
+			if (now < next)
+			{
+				LockSupport.parkNanos(Math.min(next - now, 50_000));
+				continue;
+			}
+			next += interval;
+
+			// Skip past games still waiting on their last move
+			for (int tries = 0; tries < games && busy.get(game) != 0; tries++)
+			{
+				game = (game + 1) % games;
+			}
+			if (busy.get(game) != 0)
+			{
+				continue;
+			}
+
+			final int[] script = scripts[scriptIndex[game]];
+			if (plies[game] == script.length || sessions[game].getSnapshot().isFinished())
+			{
+				server.remove(sessions[game].getId());
+				sessions[game] = server.host(newGame(game));
+				scriptIndex[game] = (scriptIndex[game] + 1) % SCRIPTS;
+				plies[game] = 0;
+				finished++;
+			}
+
+			final int move = scripts[scriptIndex[game]][plies[game]];
+			final int team = plies[game] % 2 == 0 ? Position.WHITE : Position.BLACK;
+			plies[game]++;
+			busy.set(game, 1);
+			submitted++;
+
+			final int index = game;
+			final long sent = System.nanoTime();
+			sessions[game].submitMove(team, CompactMove.from(move), CompactMove.to(move), CompactMove.promotionType(move))
+				.whenComplete((snapshot, error) ->
+				{
+					if (sent >= recordFrom)
+					{
+						final long micros = (System.nanoTime() - sent) / 1000;
+						histogram.incrementAndGet((int) Math.min(micros, HISTOGRAM_SIZE - 1));
+					}
+					completed.incrementAndGet();
+					if (error != null)
+					{
+						rejected.incrementAndGet();
+					}
+					busy.set(index, 0);
+				});
+			game = (game + 1) % games;
+		}
+
+		final long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+		while (completed.get() < submitted && System.nanoTime() < drainDeadline)
+		{
+			LockSupport.parkNanos(1_000_000);
+		}
+		final long elapsed = Math.max(1, System.nanoTime() - start);
+
+		final long[] counts = new long[HISTOGRAM_SIZE];
+		for (int i = 0; i < counts.length; i++)
+		{
+			counts[i] = histogram.get(i);
+		}
+		log.info("Applied {} moves over {} games ({} moves/s), {} rejected, {} games replaced", submitted, games,
+			submitted * 1_000_000_000L / elapsed, rejected.get(), finished);
+		log.info("Move latency p50 {} us p99 {} us p99.9 {} us max {} us", percentile(counts, 0.5),
+			percentile(counts, 0.99), percentile(counts, 0.999), percentile(counts, 1));
+	}
+
+	private static Game newGame(final int index)
+	{
+		return Game.start(new Player(new User("white" + index), Team.WHITE),
+			new Player(new User("black" + index), Team.BLACK), Duration.ofMinutes(5), Duration.ZERO);
+	}
+
+	/**
+	 * Plays random legal moves from the starting position, stopping at the end of the game
+	 */
+	private static int[][] randomGames(final Random random)
+	{
+		final int[][] scripts = new int[SCRIPTS][];
+		final Position position = new Position();
+		final int[] moves = new int[MoveGenerator.MAX_MOVES];
+		final int[] script = new int[MAX_SCRIPT_PLIES];
+		for (int i = 0; i < SCRIPTS; i++)
+		{
+			position.setFen(Perft.START_FEN);
+			int length = 0;
+			while (length < MAX_SCRIPT_PLIES)
+			{
+				final int count = MoveGenerator.generate(position, moves);
+				if (count == 0)
+				{
+					break;
+				}
+				script[length] = moves[random.nextInt(count)];
+				position.makeMove(script[length++]);
+			}
+			scripts[i] = Arrays.copyOf(script, length);
+		}
+		return scripts;
+	}
+
+	private static int percentile(final long[] counts, final double fraction)
+	{
+		final long total = Arrays.stream(counts).sum();
+		final long target = Math.max(1, (long) Math.ceil(total * fraction));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= target)
+			{
+				return i;
+			}
+		}
+		return counts.length - 1;
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import com.github.michaelgoodwin.chess.pieces.Knight;
+import com.github.michaelgoodwin.chess.pieces.Pawn;
+import com.github.michaelgoodwin.chess.pieces.Piece;
+import com.github.michaelgoodwin.chess.pieces.Queen;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Realistic middlegame positions shared by every benchmark
+ */
+@State(Scope.Thread)
+public class PositionCorpus
+{
+	private static final String[] FENS = {
+		"r1bq1rk1/ppp2ppp/2np1n2/2b1p3/2B1P3/2PP1N2/PP3PPP/RNBQ1RK1 w - - 0 7",
+		"r2q1rk1/pp2bppp/2n1bn2/2pp4/3P4/2N1PN2/PPQ1BPPP/R1B2RK1 w - - 0 9",
+		"r1bq1rk1/pp3ppp/2n1pn2/2bp4/2P5/P1N1PN2/1P3PPP/R1BQKB1R w KQ - 0 8",
+		"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"2rq1rk1/pb1nbppp/1p2pn2/2pp4/2PP4/1PN1PN2/PB2BPPP/2RQ1RK1 w - - 0 11",
+		"r2qr1k1/1b1nbppp/p2p1n2/1pp1p3/4P3/2PP1N1P/PPBN1PPP/R1BQR1K1 w - - 0 12",
+		"r1b2rk1/2q1bppp/p2ppn2/1p6/3NP3/1BN1B3/PPP1QPPP/R4RK1 b - - 0 11",
+	};
+
+	static final int[][] QUEEN_OFFSETS = {
+		{0, 1}, {0, -1}, {-1, 0}, {1, 0},
+		{1, 1}, {-1, 1}, {1, -1}, {-1, -1}
+	};
+
+	Sample[] samples;
+
+	/**
+	 * One corpus position with everything the benchmarks need precomputed
+	 */
+	static class Sample
+	{
+		final Position position = new Position();
+		Piece[][] board;
+		final List<Piece> sliders = new ArrayList<>();
+		final List<Knight> knights = new ArrayList<>();
+		final List<Pawn> pawns = new ArrayList<>();
+		final List<Square> pawnTargets = new ArrayList<>();
+		final List<Move> moves = new ArrayList<>();
+		Move firstMove;
+	}
+
+	@Setup
+	public void setup()
+	{
+		final Player white = new Player(new User("white"), Team.WHITE);
+		final Player black = new Player(new User("black"), Team.BLACK);
+		final int[] buffer = new int[MoveGenerator.MAX_MOVES];
+
+		samples = new Sample[FENS.length];
+		for (int i = 0; i < FENS.length; i++)
+		{
+			final Sample sample = new Sample();
+			sample.position.setFen(FENS[i]);
+			sample.board = sample.position.toBoard();
+
+			for (final Piece[] column : sample.board)
+			{
+				for (final Piece piece : column)
+				{
+					if (piece instanceof Queen)
+					{
+						sample.sliders.add(piece);
+					}
+					else if (piece instanceof Knight)
+					{
+						sample.knights.add((Knight) piece);
+					}
+					else if (piece instanceof Pawn)
+					{
+						final Square location = piece.getLocation();
+						final int forward = piece.getTeam() == Team.WHITE ? 1 : -1;
+						sample.pawns.add((Pawn) piece);
+						sample.pawnTargets.add(location.offset(0, forward));
+					}
+				}
+			}
+
+			final Player player = sample.position.getSideToMove() == Position.WHITE ? white : black;
+			final int count = MoveGenerator.generate(sample.position, buffer);
+			for (int m = 0; m < count; m++)
+			{
+				final int from = CompactMove.from(buffer[m]);
+				final int to = CompactMove.to(buffer[m]);
+				final Square start = Square.of(from);
+				final Square end = Square.of(to);
+				sample.moves.add(new Move(player, sample.board[start.x][start.y], start, end,
+					sample.board[end.x][end.y]));
+			}
+			sample.firstMove = sample.moves.get(0);
+			samples[i] = sample;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import com.github.michaelgoodwin.chess.bitbase.Bitbases;
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Ends games that can no longer be decided by play.
+ * On top of mate, stalemate and the fifty move rule a game is drawn when neither side has the material to mate,
+ * and a position found in the endgame bitbases is decided right away with the result perfect play would reach.
+ */
+@RequiredArgsConstructor
+public class Adjudicator
+{
+	// a1, c1 and so on
+	private static final long DARK_SQUARES = 0xAA55AA55AA55AA55L;
+
+	// Null to only adjudicate on the rules
+	private final Bitbases bitbases;
+
+	/**
+	 * @param position current position of the game
+	 * @param moves scratch array with room for {@link MoveGenerator#MAX_MOVES} moves
+	 * @return one of the {@link PgnWriter} result constants, {@link PgnWriter#UNFINISHED} if play should go on
+	 */
+	public String adjudicate(final Position position, final int[] moves)
+	{
+		final String result = PgnWriter.getResult(position, moves);
+		if (!PgnWriter.UNFINISHED.equals(result))
+		{
+			return result;
+		}
+		if (isInsufficientMaterial(position))
+		{
+			return PgnWriter.DRAW;
+		}
+		if (bitbases == null || Long.bitCount(position.getOccupancy()) > Bitbases.MAX_PIECES)
+		{
+			return PgnWriter.UNFINISHED;
+		}
+
+		switch (bitbases.probe(position))
+		{
+			case Bitbases.DRAW:
+				return PgnWriter.DRAW;
+			case Bitbases.WIN:
+				return position.getSideToMove() == Position.WHITE ? PgnWriter.WHITE_WINS : PgnWriter.BLACK_WINS;
+			case Bitbases.LOSS:
+				return position.getSideToMove() == Position.WHITE ? PgnWriter.BLACK_WINS : PgnWriter.WHITE_WINS;
+			default:
+				return PgnWriter.UNFINISHED;
+		}
+	}
+
+	/**
+	 * Used when a flag falls, the game is only lost on time if the opponent could still mate by some series of legal
+	 * moves, however unlikely. With only minor pieces left that needs the losing king to be walled in by its own
+	 * pieces, and some of those can always take the checking piece or block the check
+	 * @param position current position
+	 * @param team team that would have to mate
+	 * @return false if no series of legal moves ends with the team mating
+	 */
+	public static boolean canMate(final Position position, final int team)
+	{
+		if ((position.getPieces(team, Position.PAWN) | position.getPieces(team, Position.ROOK)
+			| position.getPieces(team, Position.QUEEN)) != 0)
+		{
+			return true;
+		}
+
+		final int other = team ^ 1;
+		final long knights = position.getPieces(team, Position.KNIGHT);
+		final long bishops = position.getPieces(team, Position.BISHOP);
+		final long blockers = position.getPieces(other, Position.PAWN) | position.getPieces(other, Position.KNIGHT);
+		if (bishops == 0)
+		{
+			if (Long.bitCount(knights) != 1)
+			{
+				// A bare king never mates, two knights can with help
+				return knights != 0;
+			}
+			// A queen next to the king always takes the checking knight, other pieces can be placed so they can't
+			return (blockers | position.getPieces(other, Position.BISHOP) | position.getPieces(other, Position.ROOK))
+				!= 0;
+		}
+		if (knights == 0)
+		{
+			// Bishops only ever check along diagonals of their own colour, a rook, queen or bishop of that colour can
+			// always block or take
+			final long allBishops = bishops | position.getPieces(other, Position.BISHOP);
+			return blockers != 0 || (allBishops & DARK_SQUARES) != 0 && (allBishops & ~DARK_SQUARES) != 0;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if only the kings and at most one knight or bishop are left
+	 */
+	static boolean isInsufficientMaterial(final Position position)
+	{
+		long heavy = 0;
+		long minor = 0;
+		for (int team = Position.WHITE; team <= Position.BLACK; team++)
+		{
+			heavy |= position.getPieces(team, Position.PAWN) | position.getPieces(team, Position.ROOK)
+				| position.getPieces(team, Position.QUEEN);
+			minor |= position.getPieces(team, Position.KNIGHT) | position.getPieces(team, Position.BISHOP);
+		}
+		return heavy == 0 && Long.bitCount(minor) <= 1;
+	}
+}
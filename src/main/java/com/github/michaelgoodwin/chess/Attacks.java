@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import java.util.Arrays;
+
+/**
+ * Attack set calculations for {@link Position} bitboards.
+ * Squares use the same index as {@link Position}, a1 = 0 and h8 = 63.
+ * Sliding attacks are looked up with magic bitboards: the blockers on a slider's rays are multiplied by a magic number
+ * so the top bits of the product form a perfect index into that square's table of attack sets.
+ */
+public final class Attacks
+{
+	public static final long FILE_A = 0x0101010101010101L;
+	public static final long FILE_B = FILE_A << 1;
+	public static final long FILE_G = FILE_A << 6;
+	public static final long FILE_H = FILE_A << 7;
+
+	// Up, Down, Left, Right, Up & Right, Down & Left, Up & Left, Down & Right
+	// Opposite directions are paired so direction ^ 1 is always the reverse of direction
+	private static final int[] DIRECTION_X = {0, 0, -1, 1, 1, -1, -1, 1};
+	private static final int[] DIRECTION_Y = {1, -1, 0, 0, 1, -1, 1, -1};
+
+	// Every square from a square to the edge of the board in each direction, indexed by direction then square
+	private static final long[][] RAYS = new long[DIRECTION_X.length][64];
+
+	// Attacks from a single square for the pieces that jump, indexed by square (and team for pawns)
+	private static final long[] KNIGHT_ATTACKS = new long[64];
+	private static final long[] KING_ATTACKS = new long[64];
+	private static final long[][] PAWN_ATTACKS = new long[2][64];
+
+	// Found offline by trying random sparse numbers until one produced no harmful collisions for the square
+	private static final long[] ROOK_MAGIC_NUMBERS = {
+		0xA080001820400080L, 0x0040002000401000L, 0x0180300160008008L, 0x0480040800801001L,
+		0x2A00081084204200L, 0x0480018012003400L, 0x0600010082000428L, 0x420002250C018042L,
+		0x0040800040002080L, 0x000040002000500CL, 0x2002004022001080L, 0x0026002200400810L,
+		0x2000808008000400L, 0x0022000200883104L, 0x2C88808001000200L, 0x1112000080420104L,
+		0x0100908000400020L, 0x0080808020004000L, 0x0008410010200300L, 0x0014808010000801L,
+		0x0080050011004800L, 0x00D1010002080400L, 0x3221540021080210L, 0x1000120005288244L,
+		0x020C400080248002L, 0x4020411200220082L, 0x8028100080200881L, 0x1210001100090020L,
+		0x005A005200084520L, 0x0080040080020080L, 0x00D6002200280401L, 0x440B210A00006884L,
+		0x0880401028800080L, 0x2000802008804000L, 0x2160001041002900L, 0x0800080080801000L,
+		0x0444820400800800L, 0x0000040080800200L, 0x0080028104001028L, 0x2808104102000894L,
+		0x0000800100450024L, 0x0000408102020020L, 0x2000200100110044L, 0x0110040008004040L,
+		0x0000080005010010L, 0x0002001088120044L, 0x0008100208040001L, 0x000100008045002AL,
+		0x0001002040800100L, 0x1602209200490200L, 0x1109100020008880L, 0x5000100100200900L,
+		0x0000040080080080L, 0x0003000204000900L, 0x4220080630035400L, 0x6140801100006080L,
+		0x1009234100800039L, 0x8000201200804102L, 0x5004100822004082L, 0x2802000440100822L,
+		0x0801008408001017L, 0x0002000108041062L, 0x8040121108129044L, 0x0400032411008242L
+	};
+	private static final long[] BISHOP_MAGIC_NUMBERS = {
+		0x01A0C20202002A00L, 0x2320810102008401L, 0x0408820402218000L, 0x10024081010C0040L,
+		0x4104042001041200L, 0x8400902420001100L, 0x001108220220001AL, 0xAA80240208040300L,
+		0x21C8089014080060L, 0x0000020214140090L, 0x0280040C0C104000L, 0x18B0022082084040L,
+		0x4004040420810801L, 0x4448008804402804L, 0x4081091401044000L, 0x20404C8848021008L,
+		0xC251800510100100L, 0x0620200802808200L, 0xA111000206020200L, 0x8001002020408000L,
+		0x0024011084A00006L, 0x202040020110010AL, 0x004A048088042300L, 0x004840A104208C20L,
+		0x0010C82044481000L, 0x0081041208080820L, 0x0040240008004408L, 0x2804010000200880L,
+		0x0504040000410050L, 0x100A008014100090L, 0x8212008007480848L, 0x0021020001328424L,
+		0x0001901000082008L, 0x0A01086000031400L, 0x0030140202440800L, 0x4084820080180480L,
+		0x0081010400C20020L, 0x8010010040020042L, 0x80241804A0360082L, 0x044C009201108440L,
+		0xA104020241301000L, 0x00808C10020B0922L, 0x0012042208000100L, 0x8000004012021041L,
+		0x8082400B02100B00L, 0x0040408808425680L, 0x20621A0441180400L, 0x4022240848808201L,
+		0x0004840120122000L, 0x1000420210420002L, 0xC800404044108100L, 0x4009800A10440000L,
+		0x011D010510440840L, 0x80008A2048408024L, 0x1062024418088201L, 0x3004410809250010L,
+		0x2820818409114080L, 0x0000042402080404L, 0x0200090020841000L, 0x0082090000842408L,
+		0x1010080060024424L, 0x1100600488100100L, 0x0022082204681210L, 0x0140288094008024L
+	};
+	private static final Magic[] ROOK_MAGICS = new Magic[64];
+	private static final Magic[] BISHOP_MAGICS = new Magic[64];
+
+	// Squares strictly between two squares that share a row, column or diagonal
+	private static final long[][] BETWEEN = new long[64][64];
+	// The entire row, column or diagonal two squares share, including both squares
+	private static final long[][] LINE = new long[64][64];
+
+	static
+	{
+		for (int from = 0; from < 64; from++)
+		{
+			final long bit = 1L << from;
+			KNIGHT_ATTACKS[from] = knightAttacks(bit);
+			KING_ATTACKS[from] = kingAttacks(bit);
+			PAWN_ATTACKS[Position.WHITE][from] = pawnAttacks(Position.WHITE, bit);
+			PAWN_ATTACKS[Position.BLACK][from] = pawnAttacks(Position.BLACK, bit);
+
+			for (int d = 0; d < DIRECTION_X.length; d++)
+			{
+				int x = Position.column(from) + DIRECTION_X[d];
+				int y = Position.row(from) + DIRECTION_Y[d];
+				while (GameBoard.isOnBoard(x, y))
+				{
+					RAYS[d][from] |= 1L << Position.square(x, y);
+					x += DIRECTION_X[d];
+					y += DIRECTION_Y[d];
+				}
+			}
+		}
+
+		for (int from = 0; from < 64; from++)
+		{
+			for (int d = 0; d < DIRECTION_X.length; d++)
+			{
+				final long line = RAYS[d][from] | RAYS[d ^ 1][from] | (1L << from);
+				long between = 0;
+				int x = Position.column(from) + DIRECTION_X[d];
+				int y = Position.row(from) + DIRECTION_Y[d];
+				while (x >= 0 && x < GameBoard.SIZE && y >= 0 && y < GameBoard.SIZE)
+				{
+					final int to = Position.square(x, y);
+					BETWEEN[from][to] = between;
+					LINE[from][to] = line;
+					between |= 1L << to;
+					x += DIRECTION_X[d];
+					y += DIRECTION_Y[d];
+				}
+			}
+		}
+
+		final long[][] rookRays = Arrays.copyOfRange(RAYS, 0, 4);
+		final long[][] bishopRays = Arrays.copyOfRange(RAYS, 4, 8);
+		for (int square = 0; square < 64; square++)
+		{
+			ROOK_MAGICS[square] = new Magic(rookRays, square, ROOK_MAGIC_NUMBERS[square]);
+			BISHOP_MAGICS[square] = new Magic(bishopRays, square, BISHOP_MAGIC_NUMBERS[square]);
+		}
+	}
+
+	/**
+	 * Lookup table for one slider on one square.
+	 * The magic number maps every blocker arrangement around the square to a slot holding its attack set, two
+	 * arrangements may only share a slot when they produce the same attacks.
+	 * The table is built here rather than in static methods of {@link Attacks}, calls into a class that is still
+	 * initializing take a slow path every time and filling the tables that way took half a second.
+	 */
+	private static final class Magic
+	{
+		// Squares whose occupancy can change the attack set, the edge of each ray never blocks anything past it
+		private final long mask;
+		private final long magic;
+		private final int shift;
+		private final long[] attacks;
+
+		/**
+		 * @param rays empty board rays for each direction the slider moves in, indexed by direction then square
+		 * @param square slider location
+		 * @param magic magic number for the square
+		 */
+		private Magic(final long[][] rays, final int square, final long magic)
+		{
+			long relevant = 0;
+			for (final long[] ray : rays)
+			{
+				relevant |= ray[square] & ~farthest(ray[square], square);
+			}
+
+			this.mask = relevant;
+			this.magic = magic;
+			this.shift = 64 - Long.bitCount(relevant);
+			this.attacks = new long[1 << Long.bitCount(relevant)];
+
+			// Every subset of the mask, walked with the carry rippler trick
+			final boolean[] filled = new boolean[attacks.length];
+			long blockers = 0;
+			do
+			{
+				long reference = 0;
+				for (final long[] ray : rays)
+				{
+					reference |= ray(ray, square, blockers);
+				}
+
+				final int index = (int) ((blockers * magic) >>> shift);
+				if (filled[index] && attacks[index] != reference)
+				{
+					throw new IllegalStateException("Magic number for square " + square + " collides");
+				}
+				filled[index] = true;
+				attacks[index] = reference;
+				blockers = (blockers - relevant) & relevant;
+			}
+			while (blockers != 0);
+		}
+
+		private long attacks(final long occupied)
+		{
+			return attacks[(int) (((occupied & mask) * magic) >>> shift)];
+		}
+
+		/**
+		 * Squares from a square in one direction until the edge of the board or the first occupied square (inclusive)
+		 * @param ray empty board rays for the direction, indexed by square
+		 * @param square starting square, not included in the result
+		 * @param occupied occupied squares
+		 * @return attacked squares
+		 */
+		private static long ray(final long[] ray, final int square, final long occupied)
+		{
+			final long blockers = ray[square] & occupied;
+			if (blockers == 0)
+			{
+				return ray[square];
+			}
+
+			// Everything past the closest blocker is hidden behind it
+			return ray[square] & ~ray[Long.numberOfTrailingZeros(closest(ray[square], square, blockers))];
+		}
+
+		/**
+		 * @param ray squares along a ray from a square
+		 * @param square starting square
+		 * @param squares non empty subset of the ray
+		 * @return the square in the subset closest to the starting square
+		 */
+		private static long closest(final long ray, final int square, final long squares)
+		{
+			// A ray heading up the board (or right) only holds higher squares, so its closest is the lowest square
+			return Long.numberOfTrailingZeros(ray) > square ? Long.lowestOneBit(squares) : Long.highestOneBit(squares);
+		}
+
+		private static long farthest(final long ray, final int square)
+		{
+			return Long.numberOfTrailingZeros(ray) > square ? Long.highestOneBit(ray) : Long.lowestOneBit(ray);
+		}
+	}
+
+	private Attacks()
+	{
+	}
+
+	/**
+	 * @param knights knight set
+	 * @return squares attacked by every knight in the set
+	 */
+	public static long knightAttacks(final long knights)
+	{
+		final long left1 = (knights >>> 1) & ~FILE_H;
+		final long left2 = (knights >>> 2) & ~(FILE_G | FILE_H);
+		final long right1 = (knights << 1) & ~FILE_A;
+		final long right2 = (knights << 2) & ~(FILE_A | FILE_B);
+		final long oneColumn = left1 | right1;
+		final long twoColumns = left2 | right2;
+		return (oneColumn << 16) | (oneColumn >>> 16) | (twoColumns << 8) | (twoColumns >>> 8);
+	}
+
+	/**
+	 * @param kings king set
+	 * @return squares attacked by every king in the set
+	 */
+	public static long kingAttacks(final long kings)
+	{
+		final long sideways = ((kings << 1) & ~FILE_A) | ((kings >>> 1) & ~FILE_H);
+		final long row = kings | sideways;
+		return sideways | (row << 8) | (row >>> 8);
+	}
+
+	/**
+	 * @param team team the pawns belong to, white pawns attack up the board and black pawns down
+	 * @param pawns pawn set
+	 * @return squares attacked by the pawns
+	 */
+	public static long pawnAttacks(final int team, final long pawns)
+	{
+		if (team == Position.WHITE)
+		{
+			return ((pawns << 7) & ~FILE_H) | ((pawns << 9) & ~FILE_A);
+		}
+		return ((pawns >>> 9) & ~FILE_H) | ((pawns >>> 7) & ~FILE_A);
+	}
+
+	public static long knightAttacksFrom(final int square)
+	{
+		return KNIGHT_ATTACKS[square];
+	}
+
+	public static long kingAttacksFrom(final int square)
+	{
+		return KING_ATTACKS[square];
+	}
+
+	/**
+	 * @param team team the pawn belongs to
+	 * @param square square the pawn is on
+	 * @return squares attacked by a single pawn
+	 */
+	public static long pawnAttacksFrom(final int team, final int square)
+	{
+		return PAWN_ATTACKS[team][square];
+	}
+
+	public static long rookAttacks(final int square, final long occupied)
+	{
+		return ROOK_MAGICS[square].attacks(occupied);
+	}
+
+	public static long bishopAttacks(final int square, final long occupied)
+	{
+		return BISHOP_MAGICS[square].attacks(occupied);
+	}
+
+	public static long queenAttacks(final int square, final long occupied)
+	{
+		return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+	}
+
+	/**
+	 * @param type piece type other than a pawn, see {@link Position}
+	 * @param square square the piece is on
+	 * @param occupied occupied squares
+	 * @return squares attacked by the piece
+	 */
+	public static long pieceAttacks(final int type, final int square, final long occupied)
+	{
+		switch (type)
+		{
+			case Position.KNIGHT:
+				return knightAttacksFrom(square);
+			case Position.BISHOP:
+				return bishopAttacks(square, occupied);
+			case Position.ROOK:
+				return rookAttacks(square, occupied);
+			case Position.QUEEN:
+				return queenAttacks(square, occupied);
+			default:
+				return kingAttacksFrom(square);
+		}
+	}
+
+	public static long between(final int from, final int to)
+	{
+		return BETWEEN[from][to];
+	}
+
+	public static long line(final int from, final int to)
+	{
+		return LINE[from][to];
+	}
+}
@@ -26,8 +26,31 @@ package com.github.michaelgoodwin.chess;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
+import com.github.michaelgoodwin.chess.archive.GameArchive;
+import com.github.michaelgoodwin.chess.archive.GameArchiveWriter;
+import com.github.michaelgoodwin.chess.bitbase.Bitbases;
+import com.github.michaelgoodwin.chess.book.PolyglotBook;
+import com.github.michaelgoodwin.chess.book.PolyglotBookBuilder;
+import com.github.michaelgoodwin.chess.book.PolyglotKey;
+import com.github.michaelgoodwin.chess.pgn.PgnReader;
+import com.github.michaelgoodwin.chess.rating.RatingRebuild;
+import com.github.michaelgoodwin.chess.rating.RatingTable;
+import com.github.michaelgoodwin.chess.search.LazySmpSearch;
+import com.github.michaelgoodwin.chess.search.SearchLimits;
+import com.github.michaelgoodwin.chess.search.SearchResult;
+import com.github.michaelgoodwin.chess.search.TranspositionTable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.LoggerFactory;
 
@@ -40,8 +63,82 @@ public class Chess
 	{
 		final OptionParser parser = new OptionParser();
 		parser.accepts("debug", "Show extra debugging output");
+		final OptionSpec<Integer> perft = parser.accepts("perft", "Count the leaf nodes of the move tree to the given depth")
+			.withRequiredArg()
+			.ofType(Integer.class);
+		final OptionSpec<String> fen = parser.accepts("fen", "Position to run perft from")
+			.withRequiredArg()
+			.defaultsTo(Perft.START_FEN);
+		parser.accepts("divide", "Show the perft node count below each move");
+		parser.accepts("perft-suite", "Verify move generation against the built in perft positions");
+		parser.accepts("verify-hash", "Check the incremental Zobrist hash at every perft node");
+		final OptionSpec<Long> search = parser.accepts("search", "Search the --fen position for the given number of milliseconds")
+			.withRequiredArg()
+			.ofType(Long.class);
+		final OptionSpec<Long> clock = parser.accepts("clock", "Search the --fen position with a budget worked out from "
+			+ "this many milliseconds left on the side to move's clock, instead of a fixed --search time")
+			.withRequiredArg()
+			.ofType(Long.class);
+		final OptionSpec<Long> increment = parser.accepts("increment", "Milliseconds added to the --clock after each move")
+			.withRequiredArg()
+			.ofType(Long.class)
+			.defaultsTo(0L);
+		final OptionSpec<Integer> hash = parser.accepts("hash", "Transposition table size in MB")
+			.withRequiredArg()
+			.ofType(Integer.class)
+			.defaultsTo(64);
+		final OptionSpec<Integer> threads = parser.accepts("threads", "Number of search threads")
+			.withRequiredArg()
+			.ofType(Integer.class)
+			.defaultsTo(Runtime.getRuntime().availableProcessors());
 
+		final OptionSpec<File> pgn = parser.accepts("pgn", "Read every game in a PGN file and report how fast it was parsed")
+			.withRequiredArg()
+			.ofType(File.class);
+		parser.accepts("skip-tags", "Don't parse the tag pairs when reading --pgn");
+		parser.accepts("skip-moves", "Don't parse the moves when reading --pgn");
+		final OptionSpec<File> archive = parser.accepts("archive", "Append the --pgn games to a game archive, or scan the "
+			+ "archive and report how fast it was read")
+			.withRequiredArg()
+			.ofType(File.class);
+		final OptionSpec<File> book = parser.accepts("book", "Polyglot opening book to play from before searching")
+			.withRequiredArg()
+			.ofType(File.class);
+		final OptionSpec<File> bookKeys = parser.accepts("book-keys", "Polyglot Random64 numbers overriding the "
+			+ "standard table the --book was made with")
+			.withRequiredArg()
+			.ofType(File.class);
+		final OptionSpec<File> makeBook = parser.accepts("make-book", "Build a Polyglot opening book from the --archive "
+			+ "games")
+			.withRequiredArg()
+			.ofType(File.class);
+		parser.accepts("rate", "Recompute every players rating from the --archive games and report the highest rated");
+		final OptionSpec<Integer> ratingPeriod = parser.accepts("rating-period", "Games in each rating period when "
+			+ "using --rate, players are rated against the ratings they had at the start of the period")
+			.withRequiredArg()
+			.ofType(Integer.class)
+			.defaultsTo(100_000);
+		final OptionSpec<File> bitbaseDirectory = parser.accepts("bitbases", "Directory of endgame bitbases to use in "
+			+ "--search, missing bitbases are generated into it")
+			.withRequiredArg()
+			.ofType(File.class);
 		final OptionSet options = parser.parse(args);
+		if (options.has(perft) && options.valueOf(perft) < 1)
+		{
+			log.error("Perft depth must be at least 1, got {}", options.valueOf(perft));
+			return;
+		}
+		// Checked up front so a bad --fen is logged like a bad --perft depth instead of failing with a stack trace
+		final Position position = new Position();
+		try
+		{
+			position.setFen(options.valueOf(fen));
+		}
+		catch (IllegalArgumentException e)
+		{
+			log.error("Invalid --fen {}: {}", options.valueOf(fen), e.getMessage());
+			return;
+		}
 
 		if (options.has("debug"))
 		{
@@ -49,6 +146,259 @@ public class Chess
 			logger.setLevel(Level.DEBUG);
 		}
 
+		final Perft perftRunner = new Perft();
+		perftRunner.setVerifyHash(options.has("verify-hash"));
+
+		if (options.has("perft-suite"))
+		{
+			final boolean passed = perftRunner.runSuite();
+			System.exit(passed ? 0 : 1);
+		}
+
+		if (options.has(perft))
+		{
+			perftRunner.run(options.valueOf(fen), options.valueOf(perft), options.has("divide"));
+		}
+
+		PolyglotKey keys = PolyglotKey.DEFAULT;
+		if (options.has(bookKeys))
+		{
+			try
+			{
+				keys = PolyglotKey.load(options.valueOf(bookKeys).toPath());
+			}
+			catch (IOException | IllegalArgumentException e)
+			{
+				log.error("Unable to read book keys from {}", options.valueOf(bookKeys), e);
+				return;
+			}
+		}
+
+		Bitbases bitbases = null;
+		if (options.has(bitbaseDirectory))
+		{
+			try
+			{
+				bitbases = Bitbases.load(options.valueOf(bitbaseDirectory).toPath());
+			}
+			catch (IOException | IllegalArgumentException e)
+			{
+				log.error("Unable to load bitbases from {}", options.valueOf(bitbaseDirectory), e);
+				return;
+			}
+		}
+
+		if (options.has(search) || options.has(clock))
+		{
+			if (bitbases != null)
+			{
+				log.info("Adjudicated result {}",
+					new Adjudicator(bitbases).adjudicate(position, new int[MoveGenerator.MAX_MOVES]));
+			}
+			// Positions in the book are answered straight away without searching
+			if (!options.has(book) || !playBookMove(options.valueOf(book), keys, position))
+			{
+				final SearchLimits limits;
+				if (options.has(search))
+				{
+					limits = SearchLimits.builder()
+						.moveTime(Duration.ofMillis(options.valueOf(search)))
+						.build();
+				}
+				else
+				{
+					final Player player = new Player(null,
+						position.getSideToMove() == Position.WHITE ? Team.WHITE : Team.BLACK);
+					player.setTimeRemaining(Duration.ofMillis(options.valueOf(clock)));
+					limits = SearchLimits.forPlayer(player, Duration.ofMillis(options.valueOf(increment)));
+				}
+				final SearchResult result;
+				try (LazySmpSearch engine = new LazySmpSearch(new TranspositionTable(options.valueOf(hash)),
+					options.valueOf(threads), LazySmpSearch.platformThreads()))
+				{
+					engine.setBitbases(bitbases);
+					result = engine.search(position, limits);
+				}
+				log.info("Best move {} score {} depth {} nodes {} in {}ms pv {}",
+					CompactMove.toString(result.getBestMove()), result.getScore(), result.getDepth(), result.getNodes(),
+					result.getElapsed().toMillis(), result.principalVariationString());
+			}
+		}
+
+		if (options.has(pgn) && options.has(archive))
+		{
+			importPgn(options.valueOf(pgn), options.valueOf(archive));
+		}
+		else if (options.has(pgn))
+		{
+			readPgn(options.valueOf(pgn), options.valueOf(threads) > 1, !options.has("skip-tags"),
+				!options.has("skip-moves"));
+		}
+		else if (options.has(archive) && options.has(makeBook))
+		{
+			makeBook(options.valueOf(archive), options.valueOf(makeBook), keys);
+		}
+		else if (options.has(archive) && options.has("rate"))
+		{
+			rateArchive(options.valueOf(archive), options.valueOf(ratingPeriod), options.valueOf(threads));
+		}
+		else if (options.has(archive))
+		{
+			scanArchive(options.valueOf(archive));
+		}
+	}
+
+	/**
+	 * @return true if a book move was found for the position
+	 */
+	private static boolean playBookMove(final File file, final PolyglotKey keys, final Position position)
+	{
+		final long start = System.nanoTime();
+		final int move;
+		try
+		{
+			move = new PolyglotBook(file.toPath(), keys).pickMove(position, ThreadLocalRandom.current());
+		}
+		catch (IOException e)
+		{
+			log.error("Unable to open book {}", file, e);
+			return false;
+		}
+
+		if (move == CompactMove.NONE)
+		{
+			log.info("Position isn't in book {}", file);
+			return false;
+		}
+		log.info("Book move {} in {} us", CompactMove.toString(move), (System.nanoTime() - start) / 1000);
+		return true;
+	}
+
+	private static void makeBook(final File archive, final File file, final PolyglotKey keys)
+	{
+		final long start = System.nanoTime();
+		final PolyglotBookBuilder builder = new PolyglotBookBuilder(keys);
+		final int entries;
+		try (GameArchive games = new GameArchive(archive.toPath()))
+		{
+			builder.addAll(games);
+			entries = builder.write(file.toPath());
+		}
+		catch (IOException e)
+		{
+			log.error("Unable to build book {} from {}", file, archive, e);
+			return;
+		}
+		log.info("Wrote {} book entries to {} in {} ms", entries, file, (System.nanoTime() - start) / 1_000_000);
+	}
+
+	private static void importPgn(final File file, final File archive)
+	{
+		final long start = System.nanoTime();
+		final long games;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			GameArchiveWriter writer = new GameArchiveWriter(archive.toPath()))
+		{
+			final long before = writer.getGameCount();
+			new PgnReader(channel).readAll(game ->
+			{
+				try
+				{
+					writer.append(game);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			});
+			games = writer.getGameCount() - before;
+		}
+		catch (IOException | UncheckedIOException e)
+		{
+			log.error("Unable to import {} into {}", file, archive, e);
+			return;
+		}
+
+		log.info("Added {} games from {} to {} in {} ms", games, file, archive, (System.nanoTime() - start) / 1_000_000);
+	}
+
+	private static void rateArchive(final File file, final int periodGames, final int threads)
+	{
+		final long start = System.nanoTime();
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		try (GameArchive games = new GameArchive(file.toPath()))
+		{
+			final RatingTable ratings = RatingRebuild.rebuild(games, periodGames, pool);
+			final long elapsed = Math.max(1, System.nanoTime() - start);
+			log.info("Rated {} games between {} players in {} ms ({} games/s)", games.getGameCount(), ratings.size(),
+				elapsed / 1_000_000, games.getGameCount() * 1_000_000_000L / elapsed);
+			// Names are read out of the archive so it stays open until they have been logged
+			for (final int id : ratings.topPlayers(10))
+			{
+				log.info("{} {} after {} games", ratings.getName(id), ratings.getRating(id),
+					ratings.getGamesPlayed(id));
+			}
+		}
+		catch (IOException e)
+		{
+			log.error("Unable to open {}", file, e);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	private static void scanArchive(final File file)
+	{
+		final long start = System.nanoTime();
+		final long[] moves = new long[1];
+		final long gameCount;
+		try (GameArchive games = new GameArchive(file.toPath()))
+		{
+			gameCount = games.getGameCount();
+			games.forEach(game ->
+			{
+				// Read every move rather than trusting the count so the scan touches the whole file
+				final int count = game.getMoveCount();
+				for (int i = 0; i < count; i++)
+				{
+					if (game.getMove(i) != 0)
+					{
+						moves[0]++;
+					}
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			log.error("Unable to open {}", file, e);
+			return;
+		}
+
+		final long elapsed = Math.max(1, System.nanoTime() - start);
+		log.info("Read {} games with {} moves from {} in {} ms ({} MB/s)", gameCount, moves[0], file,
+			elapsed / 1_000_000, file.length() * 1000L / elapsed);
+	}
+
+	private static void readPgn(final File file, final boolean parallel, final boolean readTags, final boolean readMoves)
+	{
+		final long start = System.nanoTime();
+		final LongSummaryStatistics moves;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			moves = PgnReader.games(channel, parallel, readTags, readMoves)
+				.mapToLong(game -> game.getMoves().length)
+				.summaryStatistics();
+		}
+		catch (IOException e)
+		{
+			log.error("Unable to read {}", file, e);
+			return;
+		}
 
+		final long elapsed = Math.max(1, System.nanoTime() - start);
+		log.info("Read {} games with {} moves from {} in {} ms ({} MB/s)", moves.getCount(), moves.getSum(), file,
+			elapsed / 1_000_000, file.length() * 1000L / elapsed);
 	}
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+/**
+ * Static helpers for moves packed into the low 16 bits of an int.
+ * The starting square is stored in bits 0-5, the ending square in bits 6-11 and the move flags in bits 12-15.
+ * Moves are kept in this form everywhere inside the engine and game history, {@link Move} objects are only built
+ * when a caller asks for them.
+ */
+public final class CompactMove
+{
+	// Never a legal move since the starting and ending squares are the same
+	public static final int NONE = 0;
+
+	public static final int QUIET = 0;
+	public static final int DOUBLE_PAWN_PUSH = 1;
+	public static final int KING_CASTLE = 2;
+	public static final int QUEEN_CASTLE = 3;
+	public static final int CAPTURE = 4;
+	public static final int EN_PASSANT = 5;
+	// The lowest two bits of a promotion flag hold the piece being promoted to (0 knight, 1 bishop, 2 rook, 3 queen)
+	public static final int PROMOTION = 8;
+	public static final int PROMOTION_CAPTURE = 12;
+
+	private CompactMove()
+	{
+	}
+
+	public static int move(final int from, final int to, final int flags)
+	{
+		return from | (to << 6) | (flags << 12);
+	}
+
+	public static int from(final int move)
+	{
+		return move & 0x3F;
+	}
+
+	public static int to(final int move)
+	{
+		return (move >>> 6) & 0x3F;
+	}
+
+	public static int flags(final int move)
+	{
+		return (move >>> 12) & 0xF;
+	}
+
+	public static boolean isCapture(final int move)
+	{
+		return (flags(move) & CAPTURE) != 0;
+	}
+
+	public static boolean isPromotion(final int move)
+	{
+		return (flags(move) & PROMOTION) != 0;
+	}
+
+	public static boolean isCastle(final int move)
+	{
+		final int flags = flags(move);
+		return flags == KING_CASTLE || flags == QUEEN_CASTLE;
+	}
+
+	/**
+	 * @param move encoded move
+	 * @return the {@link Position} piece type being promoted to or {@link Position#NO_PIECE}
+	 */
+	public static int promotionType(final int move)
+	{
+		return isPromotion(move) ? Position.KNIGHT + (flags(move) & 3) : Position.NO_PIECE;
+	}
+
+	public static short toShort(final int move)
+	{
+		return (short) move;
+	}
+
+	public static int fromShort(final short move)
+	{
+		return move & 0xFFFF;
+	}
+
+	/**
+	 * @param move encoded move
+	 * @return the move in coordinate notation, e.g. e2e4 or e7e8q
+	 */
+	public static String toString(final int move)
+	{
+		final String notation = Position.squareName(from(move)) + Position.squareName(to(move));
+		if (!isPromotion(move))
+		{
+			return notation;
+		}
+		return notation + "nbrq".charAt(flags(move) & 3);
+	}
+}
@@ -26,7 +26,9 @@ package com.github.michaelgoodwin.chess;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
@@ -34,6 +36,9 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class Game
 {
+	// Enough for almost every game, grows if a game goes on longer
+	private static final int INITIAL_MOVE_CAPACITY = 128;
+
 	private final Player whitePlayer;
 	private final Player blackPlayer;
 
@@ -41,7 +46,10 @@ public class Game
 	private final Duration moveTimeIncrement; // Amount of time given for each move the player does
 
 	private final GameBoard board = new GameBoard();
-	private final List<Move> moves = new ArrayList<>();
+	// Played moves as CompactMoves, Move objects are only built when asked for
+	@Getter(AccessLevel.NONE)
+	private short[] moves = new short[INITIAL_MOVE_CAPACITY];
+	private int moveCount;
 
 	void newGame()
 	{
@@ -51,14 +59,152 @@ public class Game
 		blackPlayer.getCapturedPieces().clear();
 		blackPlayer.setTimeRemaining(startingTime);
 
-		moves.clear();
+		moveCount = 0;
 		board.newGame();
 		board.setActivePlayer(whitePlayer);
 	}
 
+	/**
+	 * Creates a game ready to be played from the standard starting position with full clocks
+	 * @param whitePlayer white player
+	 * @param blackPlayer black player
+	 * @param startingTime time each player starts with
+	 * @param moveTimeIncrement time added for each move
+	 * @return the new game
+	 */
+	public static Game start(final Player whitePlayer, final Player blackPlayer, final Duration startingTime,
+		final Duration moveTimeIncrement)
+	{
+		final Game game = new Game(whitePlayer, blackPlayer, startingTime, moveTimeIncrement);
+		game.newGame();
+		return game;
+	}
+
+	/**
+	 * Creates a game from moves that have already been played, such as a game read from a PGN file.
+	 * The game has no time control and the moves are not checked for legality
+	 * @param whitePlayer white player
+	 * @param blackPlayer black player
+	 * @param fen starting position or null for the standard starting position
+	 * @param moves moves in the order they were played, see {@link CompactMove#toShort(int)}
+	 * @return the game with every move played
+	 */
+	public static Game replay(final Player whitePlayer, final Player blackPlayer, final String fen, final short[] moves)
+	{
+		return replay(whitePlayer, blackPlayer, Duration.ZERO, Duration.ZERO, fen, moves);
+	}
+
+	/**
+	 * Creates a game with a time control from moves that have already been played, such as a game from an archive.
+	 * The moves are not checked for legality
+	 * @param whitePlayer white player
+	 * @param blackPlayer black player
+	 * @param startingTime time each player started with
+	 * @param moveTimeIncrement time added for each move
+	 * @param fen starting position or null for the standard starting position
+	 * @param moves moves in the order they were played, see {@link CompactMove#toShort(int)}
+	 * @return the game with every move played
+	 */
+	public static Game replay(final Player whitePlayer, final Player blackPlayer, final Duration startingTime,
+		final Duration moveTimeIncrement, final String fen, final short[] moves)
+	{
+		final Game game = new Game(whitePlayer, blackPlayer, startingTime, moveTimeIncrement);
+		game.newGame();
+		if (fen != null)
+		{
+			game.board.setFen(fen);
+			game.board.setActivePlayer(game.getPlayer(game.board.getPosition().getSideToMove()));
+		}
+
+		for (final short move : moves)
+		{
+			game.playMove(CompactMove.fromShort(move));
+		}
+		return game;
+	}
+
+	/**
+	 * @param index move number starting from 0 for whites first move
+	 * @return the move as a {@link CompactMove}
+	 */
+	public int getMove(final int index)
+	{
+		if (index < 0 || index >= moveCount)
+		{
+			throw new IndexOutOfBoundsException("Move " + index + " of " + moveCount);
+		}
+		return CompactMove.fromShort(moves[index]);
+	}
+
+	/**
+	 * Builds {@link Move} objects for every move played by replaying the game, should not be used on hot paths
+	 * @return list of moves in the order they were played
+	 */
+	public List<Move> getMoves()
+	{
+		final GameBoard replay = new GameBoard();
+		final Position position = replay.getPosition();
+		position.copyFrom(board.getPosition());
+		for (int i = 0; i < moveCount; i++)
+		{
+			position.unmakeMove();
+		}
+
+		final List<Move> list = new ArrayList<>(moveCount);
+		for (int i = 0; i < moveCount; i++)
+		{
+			final int move = CompactMove.fromShort(moves[i]);
+			list.add(replay.createMove(move, getPlayer(position.getSideToMove())));
+			replay.playMove(move);
+		}
+		return list;
+	}
+
+	private Player getPlayer(final int team)
+	{
+		return team == Position.WHITE ? whitePlayer : blackPlayer;
+	}
+
 	void playMove(Move move)
 	{
-		moves.add(move);
+		final int encoded = board.encodeMove(move);
+		board.playMove(move);
+		addMove(encoded);
+	}
+
+	/**
+	 * Plays a {@link CompactMove}, the move is not checked for legality.
+	 * Games are not thread safe, a game shared between threads must only be changed by one of them
+	 * @param move encoded move
+	 */
+	public void playMove(int move)
+	{
 		board.playMove(move);
+		addMove(move);
+	}
+
+	private void addMove(final int move)
+	{
+		if (moveCount == moves.length)
+		{
+			moves = Arrays.copyOf(moves, moveCount * 2);
+		}
+		moves[moveCount++] = CompactMove.toShort(move);
+	}
+
+	/**
+	 * Takes back the last move played
+	 * @return the move taken back or null if no moves have been played
+	 */
+	Move takeback()
+	{
+		if (moveCount == 0)
+		{
+			return null;
+		}
+
+		final int move = CompactMove.fromShort(moves[--moveCount]);
+		board.undoMove();
+		return board.createMove(move, getPlayer(board.getPosition().getSideToMove()));
 	}
 }
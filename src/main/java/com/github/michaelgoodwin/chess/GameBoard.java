@@ -24,14 +24,7 @@
  */
 package com.github.michaelgoodwin.chess;
 
-import com.github.michaelgoodwin.chess.pieces.Bishop;
-import com.github.michaelgoodwin.chess.pieces.King;
-import com.github.michaelgoodwin.chess.pieces.Knight;
-import com.github.michaelgoodwin.chess.pieces.Pawn;
 import com.github.michaelgoodwin.chess.pieces.Piece;
-import com.github.michaelgoodwin.chess.pieces.Queen;
-import com.github.michaelgoodwin.chess.pieces.Rook;
-import java.awt.Point;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -45,21 +38,69 @@ public class GameBoard
 
 	private static final int WHITE_BACK_ROW = 0; // 1st row
 	private static final int BLACK_BACK_ROW = 7; // 8th row
+	private static final int[] BACK_ROW_PIECES = {
+		Position.ROOK, Position.KNIGHT, Position.BISHOP, Position.QUEEN,
+		Position.KING, Position.BISHOP, Position.KNIGHT, Position.ROOK
+	};
 
-	public Piece[][] board = new Piece[SIZE][SIZE];
-	public Move lastMove;
+	private final Position position = new Position();
 	@Setter
 	public Player activePlayer;
 
+	public static boolean isOnBoard(final int x, final int y)
+	{
+		return x >= 0 && x < SIZE && y >= 0 && y < SIZE;
+	}
+
+	/**
+	 * Builds a {@link Piece} grid view of the current position, indexed by [x][y].
+	 * The grid is created on each call so it should not be used on hot paths.
+	 * @return current game board
+	 */
+	public Piece[][] getBoard()
+	{
+		return position.toBoard();
+	}
+
+	/**
+	 * Generates every legal move for the side to move, see {@link MoveGenerator}
+	 * @param moves buffer to write the moves into, must have room for {@link MoveGenerator#MAX_MOVES}
+	 * @return number of moves written
+	 */
+	public int generateLegalMoves(final int[] moves)
+	{
+		return MoveGenerator.generate(position, moves);
+	}
+
 	public void newGame()
 	{
-		board = new Piece[SIZE][SIZE];
+		position.clear();
 		createTeamPieces(Team.WHITE);
 		createTeamPieces(Team.BLACK);
-		lastMove = null;
 		activePlayer = null;
 	}
 
+	/**
+	 * Sets up an arbitrary position instead of the standard starting one
+	 * @param fen position in Forsyth-Edwards Notation
+	 * @throws IllegalArgumentException if the FEN is malformed
+	 */
+	public void setFen(final CharSequence fen)
+	{
+		position.setFen(fen);
+		activePlayer = null;
+	}
+
+	/**
+	 * Writes the current position in Forsyth-Edwards Notation
+	 * @param builder builder to append the FEN to, reuse it to avoid creating a String per position
+	 * @return the builder
+	 */
+	public StringBuilder appendFen(final StringBuilder builder)
+	{
+		return position.appendFen(builder);
+	}
+
 	private void createTeamPieces(Team team)
 	{
 		int pawnRow, backRow;
@@ -77,54 +118,85 @@ public class GameBoard
 				return;
 		}
 
+		final int t = Position.team(team);
 		for (int i = 0; i < PAWN_COUNT; i++)
 		{
-			final Pawn p = new Pawn(team);
-			p.setLocation(new Point(i, pawnRow));
-			board[i][pawnRow] = p;
+			position.setPiece(t, Position.PAWN, Position.square(i, pawnRow));
 		}
 
-		// TODO: Find a programmatic approach to creating the back rank
-		final Piece aRook = new Rook(team);
-		aRook.setLocation(new Point(0, backRow));
-		board[0][backRow] = aRook;
-
-		final Piece bKnight = new Knight(team);
-		bKnight.setLocation(new Point(1, backRow));
-		board[1][backRow] = bKnight;
-
-		final Piece cBishop = new Bishop(team);
-		cBishop.setLocation(new Point(2, backRow));
-		board[2][backRow] = cBishop;
+		for (int i = 0; i < BACK_ROW_PIECES.length; i++)
+		{
+			position.setPiece(t, BACK_ROW_PIECES[i], Position.square(i, backRow));
+		}
+	}
 
-		final Piece queen = new Queen(team);
-		queen.setLocation(new Point(3, backRow));
-		board[3][backRow] = queen;
+	/**
+	 * @return 64 bit Zobrist hash identifying the current position
+	 */
+	public long getZobristKey()
+	{
+		return position.getZobristKey();
+	}
 
-		final Piece king = new King(team);
-		king.setLocation(new Point(4, backRow));
-		board[4][backRow] = king;
+	/**
+	 * @return the last move played as a {@link CompactMove}, or {@link CompactMove#NONE}
+	 */
+	public int getLastMove()
+	{
+		return position.getLastMove();
+	}
 
-		final Piece fBishop = new Bishop(team);
-		fBishop.setLocation(new Point(5, backRow));
-		board[5][backRow] = fBishop;
+	/**
+	 * Converts a {@link Move} into a {@link CompactMove} for the current position
+	 * @param move move to convert
+	 * @return encoded move
+	 */
+	int encodeMove(Move move)
+	{
+		final Square start = move.getStartingSquare();
+		final Square end = move.getEndingSquare();
+		return position.encodeMove(start.index, end.index,
+			Position.typeOf(move.getMovedPiece()));
+	}
 
-		final Piece gKnight = new Knight(team);
-		gKnight.setLocation(new Point(6, backRow));
-		board[6][backRow] = gKnight;
+	/**
+	 * Builds a {@link Move} for a {@link CompactMove} that is about to be played in the current position
+	 * @param move encoded move
+	 * @param player player making the move
+	 * @return a new move
+	 */
+	Move createMove(int move, Player player)
+	{
+		final int from = CompactMove.from(move);
+		final int to = CompactMove.to(move);
+		int captured = to;
+		if (CompactMove.flags(move) == CompactMove.EN_PASSANT)
+		{
+			captured = position.getSideToMove() == Position.WHITE ? to - SIZE : to + SIZE;
+		}
 
-		final Piece hRook = new Rook(team);
-		hRook.setLocation(new Point(7, backRow));
-		board[7][backRow] = hRook;
+		return new Move(player, position.pieceAt(from),
+			Square.of(from),
+			Square.of(to),
+			position.pieceAt(captured));
 	}
 
 	void playMove(Move move)
 	{
-		Point start = move.getMovedPiece().getLocation();
-		Point end = move.getMovedPiece().getLocation();
-		board[start.x][start.y] = null;
-		board[end.x][end.y] = move.getMovedPiece();
+		playMove(encodeMove(move));
+		move.getMovedPiece().setLocation(move.getEndingSquare());
+	}
+
+	void playMove(int move)
+	{
+		position.makeMove(move);
+	}
 
-		lastMove = move;
+	/**
+	 * Takes back the last move played
+	 */
+	void undoMove()
+	{
+		position.unmakeMove();
 	}
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+/**
+ * Fully legal move generator for {@link Position}s.
+ * Moves are written into a caller supplied buffer as {@link CompactMove} ints so generating moves never allocates.
+ */
+public final class MoveGenerator
+{
+	// Enough room for the most moves possible in any legal position (218)
+	public static final int MAX_MOVES = 256;
+
+	private static final long WHITE_KING_SIDE_PATH = 0x60L; // f1, g1
+	private static final long WHITE_QUEEN_SIDE_PATH = 0x0EL; // b1, c1, d1
+	private static final long BLACK_KING_SIDE_PATH = WHITE_KING_SIDE_PATH << 56;
+	private static final long BLACK_QUEEN_SIDE_PATH = WHITE_QUEEN_SIDE_PATH << 56;
+
+	private MoveGenerator()
+	{
+	}
+
+	/**
+	 * Generates every legal move for the side to move
+	 * @param position current position
+	 * @param moves buffer to write moves into, must have room for {@link #MAX_MOVES}
+	 * @return number of moves written
+	 */
+	public static int generate(final Position position, final int[] moves)
+	{
+		return generate(position, moves, 0);
+	}
+
+	/**
+	 * Generates every legal move for the side to move
+	 * @param position current position
+	 * @param moves buffer to write moves into, must have room for {@link #MAX_MOVES} after start
+	 * @param start index of the first move written
+	 * @return index after the last move written
+	 */
+	public static int generate(final Position position, final int[] moves, final int start)
+	{
+		final int us = position.getSideToMove();
+		final int them = us ^ 1;
+		final long own = position.getOccupancy(us);
+		final long enemy = position.getOccupancy(them);
+		final long occupied = own | enemy;
+		final long kingSet = position.getPieces(us, Position.KING);
+		int n = start;
+		if (kingSet == 0)
+		{
+			return n;
+		}
+
+		final int king = Long.numberOfTrailingZeros(kingSet);
+		final long checkers = position.getCheckers();
+
+		// The king can't hide behind itself from a slider so remove it from the occupancy
+		final long withoutKing = occupied ^ kingSet;
+		long targets = Attacks.kingAttacksFrom(king) & ~own;
+		while (targets != 0)
+		{
+			final int to = Long.numberOfTrailingZeros(targets);
+			targets &= targets - 1;
+			if (!position.isSquareAttacked(to, withoutKing, them))
+			{
+				final int flags = (enemy & (1L << to)) != 0 ? CompactMove.CAPTURE : CompactMove.QUIET;
+				moves[n++] = CompactMove.move(king, to, flags);
+			}
+		}
+
+		// Only the king can move out of a double check
+		if (Long.bitCount(checkers) > 1)
+		{
+			return n;
+		}
+
+		// When in check every other piece must capture the checker or block it
+		long checkMask = ~0L;
+		if (checkers != 0)
+		{
+			checkMask = checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers));
+		}
+		else
+		{
+			n = generateCastling(position, moves, n, us, occupied);
+		}
+
+		final long pinned = position.getPinned();
+		final long targetMask = ~own & checkMask;
+
+		n = generatePawnMoves(position, moves, n, us, king, pinned, checkMask, occupied);
+
+		for (int type = Position.KNIGHT; type <= Position.QUEEN; type++)
+		{
+			long pieces = position.getPieces(us, type);
+			if (type == Position.KNIGHT)
+			{
+				// A pinned knight can never stay on the line between the king and the pinning piece
+				pieces &= ~pinned;
+			}
+
+			while (pieces != 0)
+			{
+				final int from = Long.numberOfTrailingZeros(pieces);
+				pieces &= pieces - 1;
+
+				long attacks = Attacks.pieceAttacks(type, from, occupied) & targetMask;
+				if ((pinned & (1L << from)) != 0)
+				{
+					attacks &= Attacks.line(king, from);
+				}
+
+				while (attacks != 0)
+				{
+					final int to = Long.numberOfTrailingZeros(attacks);
+					attacks &= attacks - 1;
+					final int flags = (enemy & (1L << to)) != 0 ? CompactMove.CAPTURE : CompactMove.QUIET;
+					moves[n++] = CompactMove.move(from, to, flags);
+				}
+			}
+		}
+
+		return n;
+	}
+
+	private static int generatePawnMoves(final Position position, final int[] moves, int n, final int us,
+		final int king, final long pinned, final long checkMask, final long occupied)
+	{
+		final int them = us ^ 1;
+		final long enemy = position.getOccupancy(them);
+		final int forward = us == Position.WHITE ? 8 : -8;
+		final int startRow = us == Position.WHITE ? 1 : 6;
+		final int promotionRow = us == Position.WHITE ? 7 : 0;
+		final int enPassant = position.getEnPassantSquare();
+
+		long pawns = position.getPieces(us, Position.PAWN);
+		while (pawns != 0)
+		{
+			final int from = Long.numberOfTrailingZeros(pawns);
+			pawns &= pawns - 1;
+
+			long allowed = checkMask;
+			if ((pinned & (1L << from)) != 0)
+			{
+				allowed &= Attacks.line(king, from);
+			}
+
+			final int oneStep = from + forward;
+			if ((occupied & (1L << oneStep)) == 0)
+			{
+				if ((allowed & (1L << oneStep)) != 0)
+				{
+					n = addPawnMove(moves, n, from, oneStep, Position.row(oneStep) == promotionRow, false);
+				}
+
+				final int twoSteps = oneStep + forward;
+				if (Position.row(from) == startRow && (occupied & (1L << twoSteps)) == 0
+					&& (allowed & (1L << twoSteps)) != 0)
+				{
+					moves[n++] = CompactMove.move(from, twoSteps, CompactMove.DOUBLE_PAWN_PUSH);
+				}
+			}
+
+			final long pawnAttacks = Attacks.pawnAttacksFrom(us, from);
+			long captures = pawnAttacks & enemy & allowed;
+			while (captures != 0)
+			{
+				final int to = Long.numberOfTrailingZeros(captures);
+				captures &= captures - 1;
+				n = addPawnMove(moves, n, from, to, Position.row(to) == promotionRow, true);
+			}
+
+			if (enPassant != Position.NO_SQUARE && (pawnAttacks & (1L << enPassant)) != 0)
+			{
+				// En passant removes two pieces from the same row so pins and checks are easiest to test by
+				// looking for attacks on the king after the move has been made
+				final int captured = enPassant - forward;
+				final long after = (occupied ^ (1L << from) ^ (1L << captured)) | (1L << enPassant);
+				if ((position.attackersTo(king, after, them) & ~(1L << captured)) == 0)
+				{
+					moves[n++] = CompactMove.move(from, enPassant, CompactMove.EN_PASSANT);
+				}
+			}
+		}
+
+		return n;
+	}
+
+	private static int addPawnMove(final int[] moves, int n, final int from, final int to, final boolean promotion,
+		final boolean capture)
+	{
+		if (!promotion)
+		{
+			moves[n++] = CompactMove.move(from, to, capture ? CompactMove.CAPTURE : CompactMove.QUIET);
+			return n;
+		}
+
+		final int flags = capture ? CompactMove.PROMOTION_CAPTURE : CompactMove.PROMOTION;
+		// Queen first since it is almost always the best choice
+		for (int piece = 3; piece >= 0; piece--)
+		{
+			moves[n++] = CompactMove.move(from, to, flags | piece);
+		}
+		return n;
+	}
+
+	private static int generateCastling(final Position position, final int[] moves, int n, final int us,
+		final long occupied)
+	{
+		final int rights = position.getCastlingRights();
+		final int them = us ^ 1;
+		final long rooks = position.getPieces(us, Position.ROOK);
+		if (us == Position.WHITE)
+		{
+			if ((rights & Position.WHITE_KING_SIDE) != 0 && (occupied & WHITE_KING_SIDE_PATH) == 0
+				&& (rooks & (1L << 7)) != 0
+				&& !position.isSquareAttacked(5, occupied, them) && !position.isSquareAttacked(6, occupied, them))
+			{
+				moves[n++] = CompactMove.move(4, 6, CompactMove.KING_CASTLE);
+			}
+			if ((rights & Position.WHITE_QUEEN_SIDE) != 0 && (occupied & WHITE_QUEEN_SIDE_PATH) == 0
+				&& (rooks & 1L) != 0
+				&& !position.isSquareAttacked(3, occupied, them) && !position.isSquareAttacked(2, occupied, them))
+			{
+				moves[n++] = CompactMove.move(4, 2, CompactMove.QUEEN_CASTLE);
+			}
+		}
+		else
+		{
+			if ((rights & Position.BLACK_KING_SIDE) != 0 && (occupied & BLACK_KING_SIDE_PATH) == 0
+				&& (rooks & (1L << 63)) != 0
+				&& !position.isSquareAttacked(61, occupied, them) && !position.isSquareAttacked(62, occupied, them))
+			{
+				moves[n++] = CompactMove.move(60, 62, CompactMove.KING_CASTLE);
+			}
+			if ((rights & Position.BLACK_QUEEN_SIDE) != 0 && (occupied & BLACK_QUEEN_SIDE_PATH) == 0
+				&& (rooks & (1L << 56)) != 0
+				&& !position.isSquareAttacked(59, occupied, them) && !position.isSquareAttacked(58, occupied, them))
+			{
+				moves[n++] = CompactMove.move(60, 58, CompactMove.QUEEN_CASTLE);
+			}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import lombok.Setter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth.
+ * The counts are compared against known values to verify move generation and give a throughput figure to track.
+ */
+@Slf4j
+public class Perft
+{
+	public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	private static final int MAX_DEPTH = 32;
+
+	// Well known positions that exercise castling, en passant, promotions and pins
+	private static final PerftCase[] SUITE = {
+		new PerftCase(START_FEN, 5, 4_865_609L),
+		new PerftCase("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 4, 4_085_603L),
+		new PerftCase("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 6, 11_030_083L),
+		new PerftCase("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 5, 15_833_292L),
+		new PerftCase("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 4, 2_103_487L),
+		new PerftCase("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 4, 3_894_594L),
+	};
+
+	@Value
+	private static class PerftCase
+	{
+		String fen;
+		int depth;
+		long nodes;
+	}
+
+	// Moves are played and taken back on one position with a move buffer per ply so searching the tree never allocates
+	private final Position position = new Position();
+	private final int[][] moves = new int[MAX_DEPTH + 1][MoveGenerator.MAX_MOVES];
+
+	// Compare the incremental Zobrist hash with a full recalculation at every node, much slower
+	@Setter
+	private boolean verifyHash;
+
+	/**
+	 * Counts the leaf nodes below a position
+	 * @param position starting position, left unchanged
+	 * @param depth number of plies to search
+	 * @return number of leaf nodes
+	 */
+	public long perft(final Position position, final int depth)
+	{
+		if (depth < 0 || depth > MAX_DEPTH)
+		{
+			throw new IllegalArgumentException("Depth must be between 0 and " + MAX_DEPTH);
+		}
+		this.position.copyFrom(position);
+		return perft(0, depth);
+	}
+
+	private long perft(final int ply, final int depth)
+	{
+		if (verifyHash && position.getZobristKey() != position.computeZobristKey())
+		{
+			throw new IllegalStateException("Incremental Zobrist hash doesn't match the position");
+		}
+
+		if (depth == 0)
+		{
+			return 1;
+		}
+
+		final int[] buffer = moves[ply];
+		final int count = MoveGenerator.generate(position, buffer);
+		// Bulk count, every legal move at the last ply is a leaf
+		if (depth == 1 && !verifyHash)
+		{
+			return count;
+		}
+
+		long nodes = 0;
+		for (int i = 0; i < count; i++)
+		{
+			position.makeMove(buffer[i]);
+			nodes += perft(ply + 1, depth - 1);
+			position.unmakeMove();
+		}
+		return nodes;
+	}
+
+	/**
+	 * Logs the leaf node count below each legal move, useful for finding where two move generators differ
+	 * @param position starting position
+	 * @param depth number of plies to search
+	 * @return total number of leaf nodes
+	 */
+	public long divide(final Position position, final int depth)
+	{
+		final int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+		final int count = MoveGenerator.generate(position, rootMoves);
+		long total = 0;
+		for (int i = 0; i < count; i++)
+		{
+			position.makeMove(rootMoves[i]);
+			final long nodes = depth > 1 ? perft(position, depth - 1) : 1;
+			position.unmakeMove();
+			log.info("{}: {}", CompactMove.toString(rootMoves[i]), nodes);
+			total += nodes;
+		}
+		return total;
+	}
+
+	/**
+	 * Runs perft and logs the node count and throughput
+	 * @param fen starting position
+	 * @param depth number of plies to search
+	 * @param divide whether to log the node count below each root move
+	 * @return number of leaf nodes
+	 */
+	public long run(final String fen, final int depth, final boolean divide)
+	{
+		final Position position = new Position();
+		position.setFen(fen);
+
+		final long start = System.nanoTime();
+		final long nodes = divide ? divide(position, depth) : perft(position, depth);
+		final long elapsed = Math.max(System.nanoTime() - start, 1);
+
+		log.info("perft({}) = {} in {} ms ({} nodes/sec) [{}]", depth, nodes, elapsed / 1_000_000,
+			nodes * 1_000_000_000L / elapsed, fen);
+		return nodes;
+	}
+
+	/**
+	 * Runs every position in the built in suite and checks the node counts
+	 * @return true if every count matched
+	 */
+	public boolean runSuite()
+	{
+		boolean passed = true;
+		long totalNodes = 0;
+		final long start = System.nanoTime();
+		for (final PerftCase perftCase : SUITE)
+		{
+			final long nodes = run(perftCase.getFen(), perftCase.getDepth(), false);
+			totalNodes += nodes;
+			if (nodes != perftCase.getNodes())
+			{
+				log.error("Expected {} nodes but found {} [{}]", perftCase.getNodes(), nodes, perftCase.getFen());
+				passed = false;
+			}
+		}
+
+		final long elapsed = Math.max(System.nanoTime() - start, 1);
+		log.info("Perft suite {}: {} nodes in {} ms ({} nodes/sec)", passed ? "passed" : "failed", totalNodes,
+			elapsed / 1_000_000, totalNodes * 1_000_000_000L / elapsed);
+		return passed;
+	}
+}
@@ -0,0 +1,1050 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import com.github.michaelgoodwin.chess.pieces.Bishop;
+import com.github.michaelgoodwin.chess.pieces.King;
+import com.github.michaelgoodwin.chess.pieces.Knight;
+import com.github.michaelgoodwin.chess.pieces.Pawn;
+import com.github.michaelgoodwin.chess.pieces.Piece;
+import com.github.michaelgoodwin.chess.pieces.Queen;
+import com.github.michaelgoodwin.chess.pieces.Rook;
+import java.util.Arrays;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Bitboard backed chess position.
+ * Each square is a single bit in a long where index = (row * 8) + column, so a1 is bit 0 and h8 is bit 63.
+ * The position is made up of one set per piece type and team plus the occupancy of each team,
+ * which means checking if a tile is occupied is a single AND instead of a walk over {@link Piece} objects.
+ */
+@Getter
+public class Position
+{
+	public static final int WHITE = 0; // Team.WHITE.ordinal()
+	public static final int BLACK = 1; // Team.BLACK.ordinal()
+
+	public static final int PAWN = 0;
+	public static final int KNIGHT = 1;
+	public static final int BISHOP = 2;
+	public static final int ROOK = 3;
+	public static final int QUEEN = 4;
+	public static final int KING = 5;
+	public static final int PIECE_TYPES = 6;
+	public static final int NO_PIECE = -1;
+	public static final int NO_SQUARE = -1;
+
+	public static final int WHITE_KING_SIDE = 1;
+	public static final int WHITE_QUEEN_SIDE = 2;
+	public static final int BLACK_KING_SIDE = 4;
+	public static final int BLACK_QUEEN_SIDE = 8;
+	public static final int ALL_CASTLING = 15;
+
+	// FEN letters for each piece type, black pieces are lower case
+	private static final String PIECE_LETTERS = "pnbrqk";
+
+	// Enough for most games, grows if a game or search goes on longer. Kept small since a server holds a position
+	// for every live game
+	private static final int INITIAL_UNDO_CAPACITY = 128;
+
+	// Piece sets are indexed by (team * PIECE_TYPES) + type
+	@Getter(AccessLevel.NONE)
+	private final long[] pieces = new long[PIECE_TYPES * 2];
+	@Getter(AccessLevel.NONE)
+	private final long[] occupancy = new long[2];
+
+	private int sideToMove = WHITE;
+	private int castlingRights = ALL_CASTLING;
+	// Square a pawn can capture onto via en passant, or NO_SQUARE
+	private int enPassantSquare = NO_SQUARE;
+	private int halfMoveClock;
+	private int fullMoveNumber = 1;
+	// Updated incrementally as pieces and flags change, see computeZobristKey for the full calculation
+	private long zobristKey = Zobrist.castling(ALL_CASTLING);
+
+	// Undo stack, one entry per move played with makeMove. The state packs the move (bits 0-15),
+	// captured piece type + 1 (16-19), castling rights (20-23), en passant square + 1 (24-31) and half move clock (32+)
+	@Getter(AccessLevel.NONE)
+	private long[] undoStates = new long[INITIAL_UNDO_CAPACITY];
+	@Getter(AccessLevel.NONE)
+	private long[] undoKeys = new long[INITIAL_UNDO_CAPACITY];
+	// Number of moves that can be taken back
+	private int undoCount;
+
+	// Check information for the side to move, calculated the first time it's needed after the pieces change.
+	// Checkers are enemy pieces attacking our king and pinned pieces are ours that can't leave the line to our king
+	@Getter(AccessLevel.NONE)
+	private long checkers;
+	@Getter(AccessLevel.NONE)
+	private long pinned;
+	@Getter(AccessLevel.NONE)
+	private boolean checkInfoValid;
+
+	public static int square(final int x, final int y)
+	{
+		return (y << 3) | x;
+	}
+
+	public static int column(final int square)
+	{
+		return square & 7;
+	}
+
+	public static int row(final int square)
+	{
+		return square >>> 3;
+	}
+
+	public static int team(final Team team)
+	{
+		return team.ordinal();
+	}
+
+	/**
+	 * @param square square index
+	 * @return the square in algebraic notation, e.g. e4
+	 */
+	public static String squareName(final int square)
+	{
+		return String.valueOf((char) ('a' + column(square))) + (row(square) + 1);
+	}
+
+	/**
+	 * Replaces this position with the one described by a FEN string
+	 * @param fen position in Forsyth-Edwards Notation
+	 * @throws IllegalArgumentException if the FEN is malformed
+	 */
+	public void setFen(final CharSequence fen)
+	{
+		setFen(fen, 0, fen.length());
+	}
+
+	/**
+	 * Replaces this position with the one described by part of a FEN string.
+	 * The text is read in place so nothing is allocated unless it's malformed. The half move clock and full move number
+	 * can be left out
+	 * @param fen text containing a position in Forsyth-Edwards Notation
+	 * @param start index of the first character of the FEN
+	 * @param end index after the last character of the FEN
+	 * @throws IllegalArgumentException if the FEN is malformed
+	 */
+	public void setFen(final CharSequence fen, final int start, final int end)
+	{
+		clear();
+		int i = skipSpaces(fen, start, end);
+
+		int x = 0;
+		int y = GameBoard.SIZE - 1;
+		for (; i < end && fen.charAt(i) > ' '; i++)
+		{
+			final char c = fen.charAt(i);
+			if (c == '/')
+			{
+				if (x != GameBoard.SIZE || y == 0)
+				{
+					throw invalidFen(fen, start, end);
+				}
+				x = 0;
+				y--;
+			}
+			else if (c >= '1' && c <= '8')
+			{
+				x += c - '0';
+				if (x > GameBoard.SIZE)
+				{
+					throw invalidFen(fen, start, end);
+				}
+			}
+			else
+			{
+				final int type = PIECE_LETTERS.indexOf(Character.toLowerCase(c));
+				if (type == NO_PIECE || x >= GameBoard.SIZE)
+				{
+					throw invalidFen(fen, start, end);
+				}
+				setPiece(Character.isUpperCase(c) ? WHITE : BLACK, type, square(x++, y));
+			}
+		}
+		if (x != GameBoard.SIZE || y != 0)
+		{
+			throw invalidFen(fen, start, end);
+		}
+
+		i = skipSpaces(fen, i, end);
+		if (i >= end)
+		{
+			throw invalidFen(fen, start, end);
+		}
+		final char side = fen.charAt(i++);
+		if (side != 'w' && side != 'b')
+		{
+			throw invalidFen(fen, start, end);
+		}
+		sideToMove = side == 'w' ? WHITE : BLACK;
+
+		i = skipSpaces(fen, i, end);
+		castlingRights = 0;
+		if (i < end && fen.charAt(i) == '-')
+		{
+			i++;
+		}
+		else
+		{
+			for (; i < end && fen.charAt(i) > ' '; i++)
+			{
+				final int right = castlingRight(fen.charAt(i));
+				if (right == 0)
+				{
+					throw invalidFen(fen, start, end);
+				}
+				castlingRights |= right;
+			}
+		}
+
+		i = skipSpaces(fen, i, end);
+		if (i >= end)
+		{
+			throw invalidFen(fen, start, end);
+		}
+		if (fen.charAt(i) == '-')
+		{
+			enPassantSquare = NO_SQUARE;
+			i++;
+		}
+		else
+		{
+			final int column = fen.charAt(i) - 'a';
+			final int row = i + 1 < end ? fen.charAt(i + 1) - '1' : -1;
+			if (!GameBoard.isOnBoard(column, row))
+			{
+				throw invalidFen(fen, start, end);
+			}
+			enPassantSquare = square(column, row);
+			i += 2;
+		}
+
+		// Optional move counters
+		i = skipSpaces(fen, i, end);
+		halfMoveClock = 0;
+		for (; i < end && fen.charAt(i) > ' '; i++)
+		{
+			halfMoveClock = halfMoveClock * 10 + digit(fen, i, start, end);
+		}
+
+		i = skipSpaces(fen, i, end);
+		int fullMoves = 0;
+		for (; i < end && fen.charAt(i) > ' '; i++)
+		{
+			fullMoves = fullMoves * 10 + digit(fen, i, start, end);
+		}
+		fullMoveNumber = Math.max(1, fullMoves);
+
+		if (skipSpaces(fen, i, end) != end)
+		{
+			throw invalidFen(fen, start, end);
+		}
+		zobristKey = computeZobristKey();
+	}
+
+	private static int skipSpaces(final CharSequence text, int index, final int end)
+	{
+		while (index < end && text.charAt(index) <= ' ')
+		{
+			index++;
+		}
+		return index;
+	}
+
+	private static int digit(final CharSequence fen, final int index, final int start, final int end)
+	{
+		final char c = fen.charAt(index);
+		if (c < '0' || c > '9')
+		{
+			throw invalidFen(fen, start, end);
+		}
+		return c - '0';
+	}
+
+	private static int castlingRight(final char c)
+	{
+		switch (c)
+		{
+			case 'K':
+				return WHITE_KING_SIDE;
+			case 'Q':
+				return WHITE_QUEEN_SIDE;
+			case 'k':
+				return BLACK_KING_SIDE;
+			case 'q':
+				return BLACK_QUEEN_SIDE;
+			default:
+				return 0;
+		}
+	}
+
+	private static IllegalArgumentException invalidFen(final CharSequence fen, final int start, final int end)
+	{
+		return new IllegalArgumentException("Invalid FEN: " + fen.subSequence(start, end));
+	}
+
+	/**
+	 * Writes this position in Forsyth-Edwards Notation, reuse the builder to avoid creating a String per position
+	 * @param builder builder to append the FEN to
+	 * @return the builder
+	 */
+	public StringBuilder appendFen(final StringBuilder builder)
+	{
+		for (int y = GameBoard.SIZE - 1; y >= 0; y--)
+		{
+			int empty = 0;
+			for (int x = 0; x < GameBoard.SIZE; x++)
+			{
+				final int square = square(x, y);
+				final int type = typeAt(square);
+				if (type == NO_PIECE)
+				{
+					empty++;
+					continue;
+				}
+				if (empty > 0)
+				{
+					builder.append((char) ('0' + empty));
+					empty = 0;
+				}
+				final char c = PIECE_LETTERS.charAt(type);
+				builder.append(teamAt(square) == WHITE ? Character.toUpperCase(c) : c);
+			}
+			if (empty > 0)
+			{
+				builder.append((char) ('0' + empty));
+			}
+			if (y > 0)
+			{
+				builder.append('/');
+			}
+		}
+
+		builder.append(sideToMove == WHITE ? " w " : " b ");
+		if (castlingRights == 0)
+		{
+			builder.append('-');
+		}
+		else
+		{
+			if ((castlingRights & WHITE_KING_SIDE) != 0)
+			{
+				builder.append('K');
+			}
+			if ((castlingRights & WHITE_QUEEN_SIDE) != 0)
+			{
+				builder.append('Q');
+			}
+			if ((castlingRights & BLACK_KING_SIDE) != 0)
+			{
+				builder.append('k');
+			}
+			if ((castlingRights & BLACK_QUEEN_SIDE) != 0)
+			{
+				builder.append('q');
+			}
+		}
+
+		builder.append(' ');
+		if (enPassantSquare == NO_SQUARE)
+		{
+			builder.append('-');
+		}
+		else
+		{
+			builder.append((char) ('a' + column(enPassantSquare))).append((char) ('1' + row(enPassantSquare)));
+		}
+		return builder.append(' ').append(halfMoveClock).append(' ').append(fullMoveNumber);
+	}
+
+	/**
+	 * Removes all pieces and resets the game state flags
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < pieces.length; i++)
+		{
+			pieces[i] = 0;
+		}
+		occupancy[WHITE] = 0;
+		occupancy[BLACK] = 0;
+		sideToMove = WHITE;
+		castlingRights = ALL_CASTLING;
+		enPassantSquare = NO_SQUARE;
+		halfMoveClock = 0;
+		fullMoveNumber = 1;
+		zobristKey = Zobrist.castling(ALL_CASTLING);
+		undoCount = 0;
+		checkInfoValid = false;
+	}
+
+	/**
+	 * Copies the entire state of another position into this one, including the moves that can be taken back.
+	 * Only allocates if the other position has a longer history than this one has room for
+	 * @param other position to copy
+	 */
+	public void copyFrom(final Position other)
+	{
+		System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+		occupancy[WHITE] = other.occupancy[WHITE];
+		occupancy[BLACK] = other.occupancy[BLACK];
+		sideToMove = other.sideToMove;
+		castlingRights = other.castlingRights;
+		enPassantSquare = other.enPassantSquare;
+		halfMoveClock = other.halfMoveClock;
+		fullMoveNumber = other.fullMoveNumber;
+		zobristKey = other.zobristKey;
+		checkers = other.checkers;
+		pinned = other.pinned;
+		checkInfoValid = other.checkInfoValid;
+
+		if (undoStates.length < other.undoCount)
+		{
+			undoStates = new long[other.undoStates.length];
+			undoKeys = new long[other.undoKeys.length];
+		}
+		System.arraycopy(other.undoStates, 0, undoStates, 0, other.undoCount);
+		System.arraycopy(other.undoKeys, 0, undoKeys, 0, other.undoCount);
+		undoCount = other.undoCount;
+	}
+
+	public long getPieces(final int team, final int type)
+	{
+		return pieces[team * PIECE_TYPES + type];
+	}
+
+	public long getOccupancy(final int team)
+	{
+		return occupancy[team];
+	}
+
+	public long getOccupancy()
+	{
+		return occupancy[WHITE] | occupancy[BLACK];
+	}
+
+	public boolean isOccupied(final int square)
+	{
+		return ((occupancy[WHITE] | occupancy[BLACK]) & (1L << square)) != 0;
+	}
+
+	/**
+	 * @param square square index
+	 * @return the team occupying the square or {@link #NO_PIECE} if empty
+	 */
+	public int teamAt(final int square)
+	{
+		final long bit = 1L << square;
+		if ((occupancy[WHITE] & bit) != 0)
+		{
+			return WHITE;
+		}
+		if ((occupancy[BLACK] & bit) != 0)
+		{
+			return BLACK;
+		}
+		return NO_PIECE;
+	}
+
+	/**
+	 * @param square square index
+	 * @return the piece type on the square or {@link #NO_PIECE} if empty
+	 */
+	public int typeAt(final int square)
+	{
+		final long bit = 1L << square;
+		if (((occupancy[WHITE] | occupancy[BLACK]) & bit) == 0)
+		{
+			return NO_PIECE;
+		}
+
+		for (int type = PAWN; type <= KING; type++)
+		{
+			if (((pieces[type] | pieces[PIECE_TYPES + type]) & bit) != 0)
+			{
+				return type;
+			}
+		}
+		return NO_PIECE;
+	}
+
+	public void setPiece(final int team, final int type, final int square)
+	{
+		final long bit = 1L << square;
+		pieces[team * PIECE_TYPES + type] |= bit;
+		occupancy[team] |= bit;
+		zobristKey ^= Zobrist.piece(team, type, square);
+		checkInfoValid = false;
+	}
+
+	public void removePiece(final int team, final int type, final int square)
+	{
+		final long bit = ~(1L << square);
+		pieces[team * PIECE_TYPES + type] &= bit;
+		occupancy[team] &= bit;
+		zobristKey ^= Zobrist.piece(team, type, square);
+		checkInfoValid = false;
+	}
+
+	/**
+	 * @param team team to find the king of
+	 * @return square the team's king is on or {@link #NO_SQUARE} if it doesn't have one
+	 */
+	public int getKingSquare(final int team)
+	{
+		final long king = pieces[team * PIECE_TYPES + KING];
+		return king == 0 ? NO_SQUARE : Long.numberOfTrailingZeros(king);
+	}
+
+	/**
+	 * Finds every piece of a team attacking a square by looking outwards from the square,
+	 * a knight on the square would attack every knight that attacks it and so on for each piece type
+	 * @param square target square
+	 * @param team attacking team
+	 * @return set of attacking pieces
+	 */
+	public long attackersTo(final int square, final int team)
+	{
+		return attackersTo(square, occupancy[WHITE] | occupancy[BLACK], team);
+	}
+
+	/**
+	 * Finds every piece of a team attacking a square
+	 * @param square target square
+	 * @param occupied occupancy used to block sliding pieces, lets callers ask about a position a move would create
+	 * @param team attacking team
+	 * @return set of attacking pieces
+	 */
+	public long attackersTo(final int square, final long occupied, final int team)
+	{
+		final int offset = team * PIECE_TYPES;
+		final long queens = pieces[offset + QUEEN];
+		return (Attacks.pawnAttacksFrom(team ^ 1, square) & pieces[offset + PAWN])
+			| (Attacks.knightAttacksFrom(square) & pieces[offset + KNIGHT])
+			| (Attacks.kingAttacksFrom(square) & pieces[offset + KING])
+			| (Attacks.bishopAttacks(square, occupied) & (pieces[offset + BISHOP] | queens))
+			| (Attacks.rookAttacks(square, occupied) & (pieces[offset + ROOK] | queens));
+	}
+
+	/**
+	 * Same as checking {@link #attackersTo(int, long, int)} is not empty but stops at the first piece type found
+	 * @param square target square
+	 * @param occupied occupancy used to block sliding pieces
+	 * @param team attacking team
+	 * @return true if any piece of the team attacks the square
+	 */
+	public boolean isSquareAttacked(final int square, final long occupied, final int team)
+	{
+		final int offset = team * PIECE_TYPES;
+		final long queens = pieces[offset + QUEEN];
+		return (Attacks.pawnAttacksFrom(team ^ 1, square) & pieces[offset + PAWN]) != 0
+			|| (Attacks.knightAttacksFrom(square) & pieces[offset + KNIGHT]) != 0
+			|| (Attacks.kingAttacksFrom(square) & pieces[offset + KING]) != 0
+			|| (Attacks.bishopAttacks(square, occupied) & (pieces[offset + BISHOP] | queens)) != 0
+			|| (Attacks.rookAttacks(square, occupied) & (pieces[offset + ROOK] | queens)) != 0;
+	}
+
+	public boolean isSquareAttacked(final int square, final int team)
+	{
+		return isSquareAttacked(square, occupancy[WHITE] | occupancy[BLACK], team);
+	}
+
+	/**
+	 * @return enemy pieces giving check to the side to move
+	 */
+	public long getCheckers()
+	{
+		updateCheckInfo();
+		return checkers;
+	}
+
+	/**
+	 * @return pieces of the side to move that are pinned to their king
+	 */
+	public long getPinned()
+	{
+		updateCheckInfo();
+		return pinned;
+	}
+
+	public boolean isInCheck()
+	{
+		return getCheckers() != 0;
+	}
+
+	private void updateCheckInfo()
+	{
+		if (checkInfoValid)
+		{
+			return;
+		}
+
+		checkInfoValid = true;
+		checkers = 0;
+		pinned = 0;
+		final int king = getKingSquare(sideToMove);
+		if (king == NO_SQUARE)
+		{
+			return;
+		}
+
+		final int them = sideToMove ^ 1;
+		final long occupied = occupancy[WHITE] | occupancy[BLACK];
+		checkers = attackersTo(king, occupied, them);
+
+		// Look through our own pieces to find every slider lined up with the king
+		final long enemy = occupancy[them];
+		final long queens = getPieces(them, QUEEN);
+		long snipers = (Attacks.rookAttacks(king, enemy) & (getPieces(them, ROOK) | queens))
+			| (Attacks.bishopAttacks(king, enemy) & (getPieces(them, BISHOP) | queens));
+		while (snipers != 0)
+		{
+			final int sniper = Long.numberOfTrailingZeros(snipers);
+			snipers &= snipers - 1;
+
+			final long blockers = Attacks.between(king, sniper) & occupied;
+			if (Long.bitCount(blockers) == 1)
+			{
+				pinned |= blockers & occupancy[sideToMove];
+			}
+		}
+	}
+
+	/**
+	 * Builds the encoded move for moving a piece from one square to another in this position.
+	 * Detects captures, en passant captures, double pawn pushes, castling (king moving two columns) and promotion.
+	 * Does not check if the move is legal.
+	 * @param from starting square
+	 * @param to ending square
+	 * @param promotionType piece type a pawn reaching the back row promotes to, queen if not a valid promotion
+	 * @return encoded move, see {@link CompactMove}
+	 */
+	public int encodeMove(final int from, final int to, final int promotionType)
+	{
+		final int type = typeAt(from);
+		final boolean capture = isOccupied(to);
+		int flags = capture ? CompactMove.CAPTURE : CompactMove.QUIET;
+		if (type == KING && Math.abs(from - to) == 2)
+		{
+			flags = to > from ? CompactMove.KING_CASTLE : CompactMove.QUEEN_CASTLE;
+		}
+		else if (type == PAWN)
+		{
+			if (to == enPassantSquare)
+			{
+				flags = CompactMove.EN_PASSANT;
+			}
+			else if (Math.abs(from - to) == 16)
+			{
+				flags = CompactMove.DOUBLE_PAWN_PUSH;
+			}
+			else if (row(to) == 0 || row(to) == 7)
+			{
+				final int promotion = promotionType >= KNIGHT && promotionType <= QUEEN ? promotionType : QUEEN;
+				flags = (capture ? CompactMove.PROMOTION_CAPTURE : CompactMove.PROMOTION) | (promotion - KNIGHT);
+			}
+		}
+		return CompactMove.move(from, to, flags);
+	}
+
+	/**
+	 * Plays a {@link CompactMove} and pushes what is needed to take it back onto the undo stack.
+	 * Does not check if the move is legal.
+	 * @param move encoded move
+	 */
+	public void makeMove(final int move)
+	{
+		final int from = CompactMove.from(move);
+		final int to = CompactMove.to(move);
+		final int flags = CompactMove.flags(move);
+		final int us = sideToMove;
+		final int them = us ^ 1;
+		final int type = typeAt(from);
+
+		int captured = NO_PIECE;
+		int capturedSquare = to;
+		if (flags == CompactMove.EN_PASSANT)
+		{
+			captured = PAWN;
+			// The captured pawn sits behind the target square
+			capturedSquare = us == WHITE ? to - 8 : to + 8;
+		}
+		else if ((flags & CompactMove.CAPTURE) != 0)
+		{
+			captured = typeAt(to);
+		}
+
+		if (undoCount == undoStates.length)
+		{
+			undoStates = Arrays.copyOf(undoStates, undoCount * 2);
+			undoKeys = Arrays.copyOf(undoKeys, undoCount * 2);
+		}
+		undoStates[undoCount] = (move & 0xFFFFL)
+			| ((long) (captured + 1) << 16)
+			| ((long) castlingRights << 20)
+			| ((long) (enPassantSquare + 1) << 24)
+			| ((long) halfMoveClock << 32);
+		undoKeys[undoCount++] = zobristKey;
+
+		halfMoveClock++;
+		if (captured != NO_PIECE)
+		{
+			removePiece(them, captured, capturedSquare);
+			halfMoveClock = 0;
+		}
+
+		removePiece(us, type, from);
+		if ((flags & CompactMove.PROMOTION) != 0)
+		{
+			setPiece(us, KNIGHT + (flags & 3), to);
+		}
+		else
+		{
+			setPiece(us, type, to);
+		}
+
+		if (type == PAWN)
+		{
+			halfMoveClock = 0;
+		}
+		else if (flags == CompactMove.KING_CASTLE || flags == CompactMove.QUEEN_CASTLE)
+		{
+			// Move the rook to the other side of the king
+			final boolean kingSide = flags == CompactMove.KING_CASTLE;
+			removePiece(us, ROOK, kingSide ? from + 3 : from - 4);
+			setPiece(us, ROOK, kingSide ? from + 1 : from - 1);
+		}
+
+		zobristKey ^= Zobrist.enPassant(enPassantSquare) ^ Zobrist.castling(castlingRights);
+		enPassantSquare = flags == CompactMove.DOUBLE_PAWN_PUSH ? (from + to) >>> 1 : NO_SQUARE;
+		castlingRights &= castlingMask(from) & castlingMask(to);
+		zobristKey ^= Zobrist.enPassant(enPassantSquare) ^ Zobrist.castling(castlingRights);
+
+		if (us == BLACK)
+		{
+			fullMoveNumber++;
+		}
+		sideToMove = them;
+		zobristKey ^= Zobrist.sideToMove(WHITE) ^ Zobrist.sideToMove(BLACK);
+		checkInfoValid = false;
+	}
+
+	/**
+	 * Takes back the last move played with {@link #makeMove(int)}
+	 * @throws IllegalStateException if there are no moves to take back
+	 */
+	public void unmakeMove()
+	{
+		if (undoCount == 0)
+		{
+			throw new IllegalStateException("No moves to take back");
+		}
+
+		final long state = undoStates[--undoCount];
+		final int move = (int) (state & 0xFFFF);
+		final int from = CompactMove.from(move);
+		final int to = CompactMove.to(move);
+		final int flags = CompactMove.flags(move);
+		final int captured = (int) ((state >>> 16) & 0xF) - 1;
+
+		final int them = sideToMove;
+		final int us = them ^ 1;
+
+		// Pieces are put back without touching the hash since the old key is restored below
+		if ((flags & CompactMove.PROMOTION) != 0)
+		{
+			toggle(us, KNIGHT + (flags & 3), to);
+			toggle(us, PAWN, from);
+		}
+		else
+		{
+			final int type = typeAt(to);
+			toggle(us, type, to);
+			toggle(us, type, from);
+		}
+
+		if (flags == CompactMove.KING_CASTLE || flags == CompactMove.QUEEN_CASTLE)
+		{
+			final boolean kingSide = flags == CompactMove.KING_CASTLE;
+			toggle(us, ROOK, kingSide ? from + 1 : from - 1);
+			toggle(us, ROOK, kingSide ? from + 3 : from - 4);
+		}
+
+		if (captured != NO_PIECE)
+		{
+			final int capturedSquare = flags != CompactMove.EN_PASSANT ? to : us == WHITE ? to - 8 : to + 8;
+			toggle(them, captured, capturedSquare);
+		}
+
+		castlingRights = (int) ((state >>> 20) & 0xF);
+		enPassantSquare = (int) ((state >>> 24) & 0xFF) - 1;
+		halfMoveClock = (int) (state >>> 32);
+		zobristKey = undoKeys[undoCount];
+		if (us == BLACK)
+		{
+			fullMoveNumber--;
+		}
+		sideToMove = us;
+		checkInfoValid = false;
+	}
+
+	private void toggle(final int team, final int type, final int square)
+	{
+		final long bit = 1L << square;
+		pieces[team * PIECE_TYPES + type] ^= bit;
+		occupancy[team] ^= bit;
+	}
+
+	/**
+	 * @return the last move played with {@link #makeMove(int)} or 0 if there isn't one
+	 */
+	public int getLastMove()
+	{
+		return undoCount == 0 ? 0 : (int) (undoStates[undoCount - 1] & 0xFFFF);
+	}
+
+	/**
+	 * Checks if this position has been seen before with the same side to move since the last capture or pawn move
+	 * @return true if the position is a repetition
+	 */
+	public boolean isRepetition()
+	{
+		final int earliest = Math.max(0, undoCount - halfMoveClock);
+		for (int i = undoCount - 2; i >= earliest; i -= 2)
+		{
+			if (undoKeys[i] == zobristKey)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Calculates the Zobrist hash from scratch, should always equal the incrementally updated {@link #getZobristKey()}
+	 * @return 64 bit Zobrist hash of the position
+	 */
+	public long computeZobristKey()
+	{
+		long key = Zobrist.castling(castlingRights) ^ Zobrist.enPassant(enPassantSquare) ^ Zobrist.sideToMove(sideToMove);
+		for (int team = WHITE; team <= BLACK; team++)
+		{
+			for (int type = PAWN; type <= KING; type++)
+			{
+				long set = pieces[team * PIECE_TYPES + type];
+				while (set != 0)
+				{
+					key ^= Zobrist.piece(team, type, Long.numberOfTrailingZeros(set));
+					set &= set - 1;
+				}
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * @param square square index
+	 * @return the castling rights that survive a piece moving from or to the square
+	 */
+	static int castlingMask(final int square)
+	{
+		switch (square)
+		{
+			case 0: // a1
+				return ALL_CASTLING & ~WHITE_QUEEN_SIDE;
+			case 4: // e1
+				return ALL_CASTLING & ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+			case 7: // h1
+				return ALL_CASTLING & ~WHITE_KING_SIDE;
+			case 56: // a8
+				return ALL_CASTLING & ~BLACK_QUEEN_SIDE;
+			case 60: // e8
+				return ALL_CASTLING & ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+			case 63: // h8
+				return ALL_CASTLING & ~BLACK_KING_SIDE;
+			default:
+				return ALL_CASTLING;
+		}
+	}
+
+	/**
+	 * Builds a {@link Piece} grid view of this position, indexed by [x][y]
+	 * @return a new grid containing newly created pieces
+	 */
+	public Piece[][] toBoard()
+	{
+		final Piece[][] board = new Piece[GameBoard.SIZE][GameBoard.SIZE];
+		for (int team = WHITE; team <= BLACK; team++)
+		{
+			for (int type = PAWN; type <= KING; type++)
+			{
+				long set = pieces[team * PIECE_TYPES + type];
+				while (set != 0)
+				{
+					final int square = Long.numberOfTrailingZeros(set);
+					set &= set - 1;
+
+					final Piece piece = createPiece(team, type, square);
+					piece.setLocation(Square.of(square));
+					board[column(square)][row(square)] = piece;
+				}
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * Replaces this position with the pieces on a {@link Piece} grid, the reverse of {@link #toBoard()}.
+	 * A side can castle if its {@link King#canCastle} is set and the rook is still on its starting square
+	 * @param board game board indexed by [x][y]
+	 * @param sideToMove team to move
+	 * @param enPassantSquare square a pawn can capture onto via en passant, or {@link #NO_SQUARE}
+	 */
+	public void setBoard(final Piece[][] board, final int sideToMove, final int enPassantSquare)
+	{
+		clear();
+		castlingRights = 0;
+		for (int x = 0; x < GameBoard.SIZE; x++)
+		{
+			for (int y = 0; y < GameBoard.SIZE; y++)
+			{
+				final Piece piece = board[x][y];
+				if (piece == null)
+				{
+					continue;
+				}
+
+				final int team = team(piece.getTeam());
+				setPiece(team, typeOf(piece), square(x, y));
+				if (piece instanceof King && ((King) piece).canCastle && x == 4)
+				{
+					final int backRow = team == WHITE ? 0 : GameBoard.SIZE - 1;
+					if (y == backRow && isTeamRook(board[GameBoard.SIZE - 1][y], piece.getTeam()))
+					{
+						castlingRights |= team == WHITE ? WHITE_KING_SIDE : BLACK_KING_SIDE;
+					}
+					if (y == backRow && isTeamRook(board[0][y], piece.getTeam()))
+					{
+						castlingRights |= team == WHITE ? WHITE_QUEEN_SIDE : BLACK_QUEEN_SIDE;
+					}
+				}
+			}
+		}
+
+		this.sideToMove = sideToMove;
+		this.enPassantSquare = enPassantSquare;
+		zobristKey = computeZobristKey();
+	}
+
+	private static boolean isTeamRook(final Piece piece, final Team team)
+	{
+		return piece instanceof Rook && piece.getTeam() == team;
+	}
+
+	/**
+	 * Creates a {@link Piece} for the piece on a square
+	 * @param square square index
+	 * @return a new piece with its location set, or null if the square is empty
+	 */
+	public Piece pieceAt(final int square)
+	{
+		final int team = teamAt(square);
+		if (team == NO_PIECE)
+		{
+			return null;
+		}
+
+		final Piece piece = createPiece(team, typeAt(square), square);
+		piece.setLocation(Square.of(square));
+		return piece;
+	}
+
+	private Piece createPiece(final int team, final int type, final int square)
+	{
+		final Team t = Team.values()[team];
+		switch (type)
+		{
+			case PAWN:
+				final Pawn pawn = new Pawn(t);
+				pawn.setHasMoved(row(square) != (team == WHITE ? 1 : 6));
+				pawn.setCanPassant(team == sideToMove && enPassantSquare != NO_SQUARE
+					&& row(square) == row(enPassantSquare) + (team == WHITE ? -1 : 1)
+					&& Math.abs(column(square) - column(enPassantSquare)) == 1);
+				return pawn;
+			case KNIGHT:
+				return new Knight(t);
+			case BISHOP:
+				return new Bishop(t);
+			case ROOK:
+				return new Rook(t);
+			case QUEEN:
+				return new Queen(t);
+			default:
+				final King king = new King(t);
+				final int rights = team == WHITE ? WHITE_KING_SIDE | WHITE_QUEEN_SIDE : BLACK_KING_SIDE | BLACK_QUEEN_SIDE;
+				king.canCastle = (castlingRights & rights) != 0;
+				return king;
+		}
+	}
+
+	/**
+	 * Converts a {@link Piece} to its piece type
+	 * @param piece piece
+	 * @return piece type or {@link #NO_PIECE}
+	 */
+	public static int typeOf(final Piece piece)
+	{
+		if (piece instanceof Pawn)
+		{
+			return PAWN;
+		}
+		if (piece instanceof Knight)
+		{
+			return KNIGHT;
+		}
+		if (piece instanceof Bishop)
+		{
+			return BISHOP;
+		}
+		if (piece instanceof Rook)
+		{
+			return ROOK;
+		}
+		if (piece instanceof Queen)
+		{
+			return QUEEN;
+		}
+		if (piece instanceof King)
+		{
+			return KING;
+		}
+		return NO_PIECE;
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+/**
+ * Standard Algebraic Notation, the move format used by PGN files.
+ * Moves are appended to a caller supplied {@link StringBuilder} so converting a game never builds a String per move.
+ */
+public final class San
+{
+	private static final String KING_SIDE_CASTLE = "O-O";
+	private static final String QUEEN_SIDE_CASTLE = "O-O-O";
+	private static final char CAPTURE = 'x';
+	private static final char PROMOTION = '=';
+	private static final char CHECK = '+';
+	private static final char MATE = '#';
+	// Indexed by piece type, pawns don't have a letter
+	private static final String PIECE_LETTERS = " NBRQK";
+
+	private San()
+	{
+	}
+
+	/**
+	 * Converts a move to SAN, allocates so it should not be used on hot paths
+	 * @param position position before the move is played
+	 * @param move legal move as a {@link CompactMove}
+	 * @return the move in SAN
+	 */
+	public static String toString(final Position position, final int move)
+	{
+		final StringBuilder builder = new StringBuilder(8);
+		append(position, move, builder, new int[MoveGenerator.MAX_MOVES]);
+		return builder.toString();
+	}
+
+	/**
+	 * Appends a move in SAN.
+	 * The move is played and taken back on the position to find check and mate, it is left as it was before the call.
+	 * @param position position before the move is played
+	 * @param move legal move as a {@link CompactMove}
+	 * @param out builder to append to
+	 * @param moves scratch buffer for move generation, must have room for {@link MoveGenerator#MAX_MOVES}
+	 */
+	public static void append(final Position position, final int move, final StringBuilder out, final int[] moves)
+	{
+		final int from = CompactMove.from(move);
+		final int to = CompactMove.to(move);
+		final int flags = CompactMove.flags(move);
+		final int type = position.typeAt(from);
+
+		if (flags == CompactMove.KING_CASTLE)
+		{
+			out.append(KING_SIDE_CASTLE);
+		}
+		else if (flags == CompactMove.QUEEN_CASTLE)
+		{
+			out.append(QUEEN_SIDE_CASTLE);
+		}
+		else if (type == Position.PAWN)
+		{
+			// Pawn captures always start with the column the pawn came from (exd5)
+			if (CompactMove.isCapture(move))
+			{
+				appendColumn(out, from);
+				out.append(CAPTURE);
+			}
+			appendSquare(out, to);
+			if (CompactMove.isPromotion(move))
+			{
+				out.append(PROMOTION).append(PIECE_LETTERS.charAt(CompactMove.promotionType(move)));
+			}
+		}
+		else
+		{
+			out.append(PIECE_LETTERS.charAt(type));
+			appendDisambiguation(position, type, from, to, out);
+			if (CompactMove.isCapture(move))
+			{
+				out.append(CAPTURE);
+			}
+			appendSquare(out, to);
+		}
+
+		position.makeMove(move);
+		if (position.isInCheck())
+		{
+			out.append(MoveGenerator.generate(position, moves) == 0 ? MATE : CHECK);
+		}
+		position.unmakeMove();
+	}
+
+	/**
+	 * When two (or more) identical pieces can move to the same square the move needs to say which one moved using
+	 * 1) The starting column (if they differ); or
+	 * 2) The starting row (if the columns are the same but the rows differ); or
+	 * 3) Both the column and the row (if neither alone is enough, usually only when pawns have promoted)
+	 */
+	private static void appendDisambiguation(final Position position, final int type, final int from, final int to,
+		final StringBuilder out)
+	{
+		final int us = position.getSideToMove();
+		// Every other piece of the same type that attacks the target square, attacks are symmetric so this is the
+		// attack set of the piece type from the target square
+		long others = Attacks.pieceAttacks(type, to, position.getOccupancy())
+			& position.getPieces(us, type) & ~(1L << from);
+		if (others == 0)
+		{
+			return;
+		}
+
+		// A pinned piece can only ever move along the line to its king so it doesn't need to be told apart
+		final long pinned = others & position.getPinned();
+		if (pinned != 0)
+		{
+			final int king = position.getKingSquare(us);
+			long remaining = pinned;
+			while (remaining != 0)
+			{
+				final int square = Long.numberOfTrailingZeros(remaining);
+				remaining &= remaining - 1;
+				if ((Attacks.line(king, square) & (1L << to)) == 0)
+				{
+					others &= ~(1L << square);
+				}
+			}
+			if (others == 0)
+			{
+				return;
+			}
+		}
+
+		final long column = Attacks.FILE_A << Position.column(from);
+		final long row = 0xFFL << (Position.row(from) * GameBoard.SIZE);
+		if ((others & column) == 0)
+		{
+			appendColumn(out, from);
+		}
+		else if ((others & row) == 0)
+		{
+			out.append((char) ('1' + Position.row(from)));
+		}
+		else
+		{
+			appendSquare(out, from);
+		}
+	}
+
+	private static void appendColumn(final StringBuilder out, final int square)
+	{
+		out.append((char) ('a' + Position.column(square)));
+	}
+
+	private static void appendSquare(final StringBuilder out, final int square)
+	{
+		out.append((char) ('a' + Position.column(square))).append((char) ('1' + Position.row(square)));
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+/**
+ * Immutable board coordinate.
+ * There are exactly 64 instances created once at startup so squares can be compared by reference and looking one up
+ * never allocates. The index matches {@link Position}, a1 = 0 and h8 = 63.
+ */
+public final class Square
+{
+	private static final Square[] SQUARES = new Square[GameBoard.SIZE * GameBoard.SIZE];
+
+	static
+	{
+		for (int i = 0; i < SQUARES.length; i++)
+		{
+			SQUARES[i] = new Square(i);
+		}
+	}
+
+	public final int index;
+	public final int x; // column, 0 = a
+	public final int y; // row, 0 = 1st row
+
+	private Square(final int index)
+	{
+		this.index = index;
+		this.x = Position.column(index);
+		this.y = Position.row(index);
+	}
+
+	/**
+	 * @param index square index between 0 and 63
+	 * @return the square
+	 */
+	public static Square of(final int index)
+	{
+		return SQUARES[index];
+	}
+
+	/**
+	 * @param x column
+	 * @param y row
+	 * @return the square, or null if the coordinates are off the board
+	 */
+	public static Square of(final int x, final int y)
+	{
+		return GameBoard.isOnBoard(x, y) ? SQUARES[Position.square(x, y)] : null;
+	}
+
+	/**
+	 * @param dx columns to move
+	 * @param dy rows to move
+	 * @return the square at the offset from this one, or null if it is off the board
+	 */
+	public Square offset(final int dx, final int dy)
+	{
+		return of(x + dx, y + dy);
+	}
+
+	@Override
+	public String toString()
+	{
+		return Position.squareName(index);
+	}
+}
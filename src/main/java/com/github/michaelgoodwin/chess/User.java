@@ -30,8 +30,10 @@ import lombok.Data;
  * A chess users profile
  */
 @Data
-class User
+public class User
 {
 	private final String username;
 	private int elo;
+	// Rated games played, new players' ratings move faster
+	private int gamesPlayed;
 }
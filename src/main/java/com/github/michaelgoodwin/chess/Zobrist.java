@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys used to build the 64 bit Zobrist hash of a {@link Position}.
+ * The hash is the XOR of one key per piece on its square plus the castling rights, en passant column and side to move,
+ * so any change to the position can be applied or undone by XORing the matching keys.
+ */
+public final class Zobrist
+{
+	// Fixed seed so hashes are stable between runs and can be stored
+	private static final long SEED = 0x5DEECE66DL;
+
+	private static final long[][] PIECES = new long[Position.PIECE_TYPES * 2][64];
+	private static final long[] CASTLING = new long[Position.ALL_CASTLING + 1];
+	private static final long[] EN_PASSANT = new long[GameBoard.SIZE];
+	private static final long BLACK_TO_MOVE;
+
+	static
+	{
+		final SplittableRandom random = new SplittableRandom(SEED);
+		for (final long[] squares : PIECES)
+		{
+			for (int i = 0; i < squares.length; i++)
+			{
+				squares[i] = random.nextLong();
+			}
+		}
+
+		// Each right gets its own key and combinations are the XOR of their parts
+		final long[] rights = new long[4];
+		for (int i = 0; i < rights.length; i++)
+		{
+			rights[i] = random.nextLong();
+		}
+		for (int i = 0; i < CASTLING.length; i++)
+		{
+			for (int bit = 0; bit < rights.length; bit++)
+			{
+				if ((i & (1 << bit)) != 0)
+				{
+					CASTLING[i] ^= rights[bit];
+				}
+			}
+		}
+
+		for (int i = 0; i < EN_PASSANT.length; i++)
+		{
+			EN_PASSANT[i] = random.nextLong();
+		}
+		BLACK_TO_MOVE = random.nextLong();
+	}
+
+	private Zobrist()
+	{
+	}
+
+	public static long piece(final int team, final int type, final int square)
+	{
+		return PIECES[team * Position.PIECE_TYPES + type][square];
+	}
+
+	public static long castling(final int castlingRights)
+	{
+		return CASTLING[castlingRights];
+	}
+
+	/**
+	 * @param enPassantSquare en passant square or {@link Position#NO_SQUARE}
+	 * @return the key for the en passant column, 0 if there is no en passant square
+	 */
+	public static long enPassant(final int enPassantSquare)
+	{
+		return enPassantSquare == Position.NO_SQUARE ? 0 : EN_PASSANT[Position.column(enPassantSquare)];
+	}
+
+	public static long sideToMove(final int team)
+	{
+		return team == Position.BLACK ? BLACK_TO_MOVE : 0;
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.archive;
+
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Team;
+import com.github.michaelgoodwin.chess.User;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import lombok.Getter;
+
+/**
+ * A game record in a {@link GameArchive}.
+ * Values are read from the mapped file every time they're asked for, only the names and starting position create
+ * objects. A view can be pointed at another game with {@link GameArchive#read(long, ArchivedGame)}
+ */
+public class ArchivedGame
+{
+	// No name to hash
+	public static final long NO_NAME = 0;
+
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	// Number of the game in the archive
+	@Getter
+	private long number;
+	@Getter
+	private int moveCount;
+	private ByteBuffer buffer;
+	private int offset;
+	private int movesStart;
+
+	void set(final long number, final ByteBuffer buffer, final int offset)
+	{
+		this.number = number;
+		this.buffer = buffer;
+		this.offset = offset;
+		moveCount = buffer.getInt(offset + GameArchive.MOVE_COUNT);
+		movesStart = offset + GameArchive.movesOffset(whiteNameLength(), blackNameLength(), fenLength());
+	}
+
+	public Duration getStartingTime()
+	{
+		return Duration.ofMillis(buffer.getLong(offset + GameArchive.STARTING_TIME));
+	}
+
+	public Duration getMoveTimeIncrement()
+	{
+		return Duration.ofMillis(buffer.getLong(offset + GameArchive.INCREMENT));
+	}
+
+	public int getWhiteElo()
+	{
+		return buffer.getInt(offset + GameArchive.WHITE_ELO);
+	}
+
+	public int getBlackElo()
+	{
+		return buffer.getInt(offset + GameArchive.BLACK_ELO);
+	}
+
+	/**
+	 * @return one of the {@link com.github.michaelgoodwin.chess.pgn.PgnWriter} result constants
+	 */
+	public String getResult()
+	{
+		return GameArchive.getResult(buffer.get(offset + GameArchive.RESULT));
+	}
+
+	/**
+	 * @return username of the white player, or null if the game was stored without one
+	 */
+	public String getWhiteName()
+	{
+		return decode(GameArchive.HEADER_SIZE, whiteNameLength());
+	}
+
+	/**
+	 * @return username of the black player, or null if the game was stored without one
+	 */
+	public String getBlackName()
+	{
+		return decode(GameArchive.HEADER_SIZE + whiteNameLength(), blackNameLength());
+	}
+
+	/**
+	 * Hashes the white players name straight from the file so players can be looked up without decoding names
+	 * @return 64 bit hash of the name, see {@link #nameHash(String)}, or {@link #NO_NAME} if there is no name
+	 */
+	public long getWhiteNameHash()
+	{
+		return hash(GameArchive.HEADER_SIZE, whiteNameLength());
+	}
+
+	/**
+	 * @return 64 bit hash of the black players name, see {@link #nameHash(String)}, or {@link #NO_NAME}
+	 */
+	public long getBlackNameHash()
+	{
+		return hash(GameArchive.HEADER_SIZE + whiteNameLength(), blackNameLength());
+	}
+
+	/**
+	 * Hashes a name the same way as {@link #getWhiteNameHash()}, collisions between different names are unlikely
+	 * enough at 64 bits to treat the hash as the name
+	 * @param name username or null
+	 * @return 64 bit hash of the name, or {@link #NO_NAME} for no name
+	 */
+	public static long nameHash(final String name)
+	{
+		if (name == null || name.isEmpty())
+		{
+			return NO_NAME;
+		}
+		final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < Math.min(bytes.length, GameArchive.MAX_STRING_LENGTH); i++)
+		{
+			hash = (hash ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+		}
+		return finish(hash);
+	}
+
+	/**
+	 * @return starting position in Forsyth-Edwards Notation, or null for the standard starting position
+	 */
+	public String getFen()
+	{
+		return decode(GameArchive.HEADER_SIZE + whiteNameLength() + blackNameLength(), fenLength());
+	}
+
+	/**
+	 * @param index move number starting from 0 for whites first move
+	 * @return the move as a {@link CompactMove}
+	 */
+	public int getMove(final int index)
+	{
+		if (index < 0 || index >= moveCount)
+		{
+			throw new IndexOutOfBoundsException("Move " + index + " of " + moveCount);
+		}
+		return CompactMove.fromShort(buffer.getShort(movesStart + index * Short.BYTES));
+	}
+
+	/**
+	 * @return a copy of the moves as 16 bit {@link CompactMove}s
+	 */
+	public short[] getMoves()
+	{
+		final short[] moves = new short[moveCount];
+		for (int i = 0; i < moveCount; i++)
+		{
+			moves[i] = buffer.getShort(movesStart + i * Short.BYTES);
+		}
+		return moves;
+	}
+
+	/**
+	 * Replays the game with new players built from the stored names and ratings
+	 * @return the game with every move played
+	 */
+	public Game toGame()
+	{
+		return Game.replay(createPlayer(getWhiteName(), getWhiteElo(), Team.WHITE),
+			createPlayer(getBlackName(), getBlackElo(), Team.BLACK), getStartingTime(), getMoveTimeIncrement(),
+			getFen(), getMoves());
+	}
+
+	private static Player createPlayer(final String name, final int elo, final Team team)
+	{
+		if (name == null)
+		{
+			return new Player(null, team);
+		}
+		final User user = new User(name);
+		user.setElo(elo);
+		return new Player(user, team);
+	}
+
+	private int whiteNameLength()
+	{
+		return Byte.toUnsignedInt(buffer.get(offset + GameArchive.WHITE_NAME_LENGTH));
+	}
+
+	private int blackNameLength()
+	{
+		return Byte.toUnsignedInt(buffer.get(offset + GameArchive.BLACK_NAME_LENGTH));
+	}
+
+	private int fenLength()
+	{
+		return Byte.toUnsignedInt(buffer.get(offset + GameArchive.FEN_LENGTH));
+	}
+
+	private long hash(final int start, final int length)
+	{
+		if (length == 0)
+		{
+			return NO_NAME;
+		}
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < length; i++)
+		{
+			hash = (hash ^ (buffer.get(offset + start + i) & 0xFF)) * FNV_PRIME;
+		}
+		return finish(hash);
+	}
+
+	/**
+	 * FNV-1a leaves the low bits poorly mixed, finish with the MurmurHash3 mixer so the hash can index tables
+	 */
+	private static long finish(long hash)
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash == NO_NAME ? 1 : hash;
+	}
+
+	private String decode(final int start, final int length)
+	{
+		if (length == 0)
+		{
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			bytes[i] = buffer.get(offset + start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.archive;
+
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.Getter;
+
+/**
+ * Read only view of a binary game archive written by {@link GameArchiveWriter}.
+ * The data file holds one record per game and the index file next to it holds the offset of every record, both are
+ * memory mapped so reading a game is an index lookup and the moves are read straight out of the mapping.
+ * The archive is a snapshot of the files when it was opened, games appended afterwards need the archive to be reopened.
+ * Safe to read from any number of threads. Close the archive once it is no longer read, Java can't unmap a file
+ * directly so closing drops the mappings and the memory is released once they are garbage collected, along with any
+ * {@link ArchivedGame} still pointing into them
+ *
+ * <p>Records are little endian and start 8 byte aligned:
+ * <pre>
+ * 0  long  starting time in milliseconds
+ * 8  long  increment in milliseconds
+ * 16 int   move count
+ * 20 int   white elo
+ * 24 int   black elo
+ * 28 byte  result, see {@link #getResult(byte)}
+ * 29 byte  white name length
+ * 30 byte  black name length
+ * 31 byte  starting FEN length, 0 for the standard starting position
+ * 32       UTF-8 white name, black name and starting FEN
+ *          moves as 16 bit {@link com.github.michaelgoodwin.chess.CompactMove}s, 2 byte aligned
+ * </pre>
+ */
+public class GameArchive implements Closeable
+{
+	static final int STARTING_TIME = 0;
+	static final int INCREMENT = 8;
+	static final int MOVE_COUNT = 16;
+	static final int WHITE_ELO = 20;
+	static final int BLACK_ELO = 24;
+	static final int RESULT = 28;
+	static final int WHITE_NAME_LENGTH = 29;
+	static final int BLACK_NAME_LENGTH = 30;
+	static final int FEN_LENGTH = 31;
+	static final int HEADER_SIZE = 32;
+
+	static final int RECORD_ALIGNMENT = 8;
+	static final int MAX_STRING_LENGTH = 255;
+
+	// Indexed by the result byte
+	private static final String[] RESULTS = {
+		PgnWriter.UNFINISHED, PgnWriter.WHITE_WINS, PgnWriter.BLACK_WINS, PgnWriter.DRAW
+	};
+
+	// A single mapping can't be larger than 2GB, bigger files are mapped in regions that each hold whole records
+	private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+	// The index is mapped in chunks of 2^27 entries, 1GB each, as a chunk of 2^28 would be one byte over the limit
+	private static final int INDEX_CHUNK_SHIFT = 27;
+	private static final long INDEX_CHUNK_ENTRIES = 1L << INDEX_CHUNK_SHIFT;
+
+	private final LongBuffer[] index;
+	private final ByteBuffer[] regions;
+	// Number of the first game in each region and the file offset the region was mapped from
+	private final long[] regionFirstGame;
+	private final long[] regionOffset;
+
+	@Getter
+	private final long gameCount;
+	private volatile boolean closed;
+
+	/**
+	 * Maps an archive for reading
+	 * @param path data file, the index is read from {@link #indexPath(Path)}
+	 * @throws IOException if either file can't be opened or a record is too large to map
+	 */
+	public GameArchive(final Path path) throws IOException
+	{
+		// The mappings stay valid after the channels are closed
+		try (FileChannel data = FileChannel.open(path, StandardOpenOption.READ);
+			FileChannel indexFile = FileChannel.open(indexPath(path), StandardOpenOption.READ))
+		{
+			final long count = completeGames(data, indexFile);
+			gameCount = count;
+			index = new LongBuffer[(int) ((count + INDEX_CHUNK_ENTRIES - 1) >>> INDEX_CHUNK_SHIFT)];
+			for (int i = 0; i < index.length; i++)
+			{
+				final long first = (long) i << INDEX_CHUNK_SHIFT;
+				final long entries = Math.min(count - first, INDEX_CHUNK_ENTRIES);
+				index[i] = indexFile.map(FileChannel.MapMode.READ_ONLY, first * Long.BYTES, entries * Long.BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN)
+					.asLongBuffer();
+			}
+
+			final long dataEnd = count == 0 ? 0 : recordEnd(data, offset(count - 1));
+			final List<ByteBuffer> mapped = new ArrayList<>();
+			final List<Long> firstGames = new ArrayList<>();
+			long first = 0;
+			while (first < count)
+			{
+				final long start = offset(first);
+				final long next;
+				final long end;
+				if (dataEnd - start <= MAX_REGION_SIZE)
+				{
+					next = count;
+					end = dataEnd;
+				}
+				else
+				{
+					next = lastGameBefore(first, count, start + MAX_REGION_SIZE);
+					if (next == first)
+					{
+						throw new IOException("Game " + first + " is too large to map");
+					}
+					end = offset(next);
+				}
+
+				mapped.add(data.map(FileChannel.MapMode.READ_ONLY, start, end - start).order(ByteOrder.LITTLE_ENDIAN));
+				firstGames.add(first);
+				first = next;
+			}
+
+			regions = mapped.toArray(new ByteBuffer[0]);
+			regionFirstGame = new long[regions.length];
+			regionOffset = new long[regions.length];
+			for (int i = 0; i < regions.length; i++)
+			{
+				regionFirstGame[i] = firstGames.get(i);
+				regionOffset[i] = offset(regionFirstGame[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param path archive data file
+	 * @return the index file kept next to the data file
+	 */
+	public static Path indexPath(final Path path)
+	{
+		return path.resolveSibling(path.getFileName() + ".idx");
+	}
+
+	/**
+	 * @param number game number starting from 0
+	 * @return a view of the game, valid for as long as this archive
+	 */
+	public ArchivedGame get(final long number)
+	{
+		return read(number, new ArchivedGame());
+	}
+
+	/**
+	 * Points an existing view at a game so scans don't allocate
+	 * @param number game number starting from 0
+	 * @param game view to reuse
+	 * @return the view
+	 */
+	public ArchivedGame read(final long number, final ArchivedGame game)
+	{
+		checkOpen();
+		if (number < 0 || number >= gameCount)
+		{
+			throw new IndexOutOfBoundsException("Game " + number + " of " + gameCount);
+		}
+		final int region = regionOf(number);
+		game.set(number, regions[region], (int) (offset(number) - regionOffset[region]));
+		return game;
+	}
+
+	/**
+	 * Visits every game in order with a single reused view, the view must not be kept after the consumer returns
+	 * @param consumer called for each game
+	 */
+	public void forEach(final Consumer<ArchivedGame> consumer)
+	{
+		checkOpen();
+		final ArchivedGame game = new ArchivedGame();
+		for (int region = 0; region < regions.length; region++)
+		{
+			final ByteBuffer buffer = regions[region];
+			final long last = region + 1 < regions.length ? regionFirstGame[region + 1] : gameCount;
+			for (long number = regionFirstGame[region]; number < last; number++)
+			{
+				game.set(number, buffer, (int) (offset(number) - regionOffset[region]));
+				consumer.accept(game);
+			}
+		}
+	}
+
+	/**
+	 * Drops the mappings, the archive can't be read afterwards
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+		Arrays.fill(index, null);
+		Arrays.fill(regions, null);
+	}
+
+	private void checkOpen()
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("Archive is closed");
+		}
+	}
+
+	private long offset(final long number)
+	{
+		return index[(int) (number >>> INDEX_CHUNK_SHIFT)].get((int) (number & (INDEX_CHUNK_ENTRIES - 1)));
+	}
+
+	private int regionOf(final long number)
+	{
+		int low = 0;
+		int high = regions.length - 1;
+		while (low < high)
+		{
+			final int middle = (low + high + 1) >>> 1;
+			if (regionFirstGame[middle] <= number)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the last game in the range starting before the limit, or the first game if none do after it
+	 */
+	private long lastGameBefore(final long first, final long end, final long limit)
+	{
+		long low = first;
+		long high = end - 1;
+		while (low < high)
+		{
+			final long middle = (low + high + 1) >>> 1;
+			if (offset(middle) <= limit)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	static int movesOffset(final int whiteNameLength, final int blackNameLength, final int fenLength)
+	{
+		final int strings = HEADER_SIZE + whiteNameLength + blackNameLength + fenLength;
+		return (strings + 1) & ~1;
+	}
+
+	static int recordLength(final int whiteNameLength, final int blackNameLength, final int fenLength,
+		final int moveCount)
+	{
+		final int end = movesOffset(whiteNameLength, blackNameLength, fenLength) + moveCount * Short.BYTES;
+		return (end + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+	}
+
+	/**
+	 * Counts the games whose records were completely written, index entries for records that never made it to the
+	 * data file before a crash are left out
+	 * @param data archive data file
+	 * @param index archive index file
+	 * @return number of complete games
+	 * @throws IOException if either file can't be read
+	 */
+	static long completeGames(final FileChannel data, final FileChannel index) throws IOException
+	{
+		final long dataSize = data.size();
+		final ByteBuffer entry = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		long count = index.size() / Long.BYTES;
+		while (count > 0)
+		{
+			entry.clear();
+			if (index.read(entry, (count - 1) * Long.BYTES) == Long.BYTES
+				&& recordEnd(data, entry.getLong(0)) <= dataSize)
+			{
+				break;
+			}
+			count--;
+		}
+		return count;
+	}
+
+	/**
+	 * @return offset just past the record, or past the end of the file if its header is incomplete
+	 */
+	private static long recordEnd(final FileChannel data, final long offset) throws IOException
+	{
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		if (offset < 0 || data.read(header, offset) != HEADER_SIZE)
+		{
+			return Long.MAX_VALUE;
+		}
+		return offset + recordLength(header);
+	}
+
+	/**
+	 * Works out a record length from its header, in a long so a damaged header can't overflow
+	 */
+	private static long recordLength(final ByteBuffer header)
+	{
+		final long end = movesOffset(Byte.toUnsignedInt(header.get(WHITE_NAME_LENGTH)),
+			Byte.toUnsignedInt(header.get(BLACK_NAME_LENGTH)), Byte.toUnsignedInt(header.get(FEN_LENGTH)))
+			+ Integer.toUnsignedLong(header.getInt(MOVE_COUNT)) * Short.BYTES;
+		return (end + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+	}
+
+	static byte encodeResult(final String result)
+	{
+		for (int i = 0; i < RESULTS.length; i++)
+		{
+			if (RESULTS[i].equals(result))
+			{
+				return (byte) i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param result result byte from a record
+	 * @return one of the {@link PgnWriter} result constants
+	 */
+	static String getResult(final byte result)
+	{
+		return result >= 0 && result < RESULTS.length ? RESULTS[result] : PgnWriter.UNFINISHED;
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.archive;
+
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.MoveGenerator;
+import com.github.michaelgoodwin.chess.Perft;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.pgn.PgnGame;
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * Appends games to a {@link GameArchive}.
+ * Records and index entries are collected in reused buffers and written in large blocks, a record is always written
+ * before the index entry pointing at it so a crash can't leave the index pointing past the data.
+ * Not thread safe, and only one writer should have an archive open at a time
+ */
+public class GameArchiveWriter implements Closeable, Flushable
+{
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int INDEX_BUFFER_SIZE = 64 * 1024;
+	private static final byte[] EMPTY = new byte[0];
+
+	private final FileChannel data;
+	private final FileChannel index;
+	private ByteBuffer dataBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	// Offsets the next record and index entry will be written at
+	private long dataSize;
+	private long indexSize;
+	// Position in the data buffer of the record being written
+	private int recordStart;
+	// Number of games in the archive, including ones still in the buffers
+	@Getter
+	private long gameCount;
+
+	private final Position position = new Position();
+	private final int[] generated = new int[MoveGenerator.MAX_MOVES];
+	private final StringBuilder fen = new StringBuilder(128);
+
+	/**
+	 * Opens an archive for appending, creating it if it doesn't exist
+	 * @param path data file, the index is kept next to it, see {@link GameArchive#indexPath(Path)}
+	 * @throws IOException if either file can't be opened
+	 */
+	public GameArchiveWriter(final Path path) throws IOException
+	{
+		// Opened for reading too so the end of the archive can be checked, which rules out APPEND, every write goes to
+		// the end of the files anyway
+		data = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = FileChannel.open(GameArchive.indexPath(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+		dataSize = data.size();
+
+		// Drop index entries that were only partly written, or point at records that were, before a crash
+		gameCount = GameArchive.completeGames(data, index);
+		indexSize = gameCount * Long.BYTES;
+		if (index.size() != indexSize)
+		{
+			index.truncate(indexSize);
+		}
+	}
+
+	/**
+	 * Appends a finished or unfinished game, the result is worked out from the final position
+	 * @param game game to append
+	 * @return number of the game in the archive
+	 * @throws IOException if a full buffer can't be written
+	 */
+	public long append(final Game game) throws IOException
+	{
+		return append(game, PgnWriter.getResult(game.getBoard().getPosition(), generated));
+	}
+
+	/**
+	 * Appends a game with the result it ended with, a resignation or a flag fall can't be told apart from an
+	 * unfinished game by looking at the final position
+	 * @param game game to append
+	 * @param result one of the {@link PgnWriter} result constants
+	 * @return number of the game in the archive
+	 * @throws IOException if a full buffer can't be written
+	 */
+	public long append(final Game game, final String result) throws IOException
+	{
+		// Take back every move on a copy of the final position to find the starting position
+		position.copyFrom(game.getBoard().getPosition());
+		final int moveCount = game.getMoveCount();
+		for (int i = 0; i < moveCount; i++)
+		{
+			position.unmakeMove();
+		}
+		fen.setLength(0);
+		position.appendFen(fen);
+		final boolean standardStart = Perft.START_FEN.contentEquals(fen);
+
+		final Player white = game.getWhitePlayer();
+		final Player black = game.getBlackPlayer();
+		final ByteBuffer record = beginRecord(moveCount,
+			white.getUser() == null ? null : white.getUser().getUsername(),
+			white.getUser() == null ? 0 : white.getUser().getElo(),
+			black.getUser() == null ? null : black.getUser().getUsername(),
+			black.getUser() == null ? 0 : black.getUser().getElo(),
+			toMillis(game.getStartingTime()), toMillis(game.getMoveTimeIncrement()), result,
+			standardStart ? null : fen.toString());
+		for (int i = 0; i < moveCount; i++)
+		{
+			record.putShort(CompactMove.toShort(game.getMove(i)));
+		}
+		return endRecord();
+	}
+
+	/**
+	 * Appends a game read from PGN without replaying it.
+	 * Players, ratings and the time control come from the White, Black, WhiteElo, BlackElo and TimeControl tags
+	 * @param game game to append
+	 * @return number of the game in the archive
+	 * @throws IOException if a full buffer can't be written
+	 */
+	public long append(final PgnGame game) throws IOException
+	{
+		final String timeControl = game.getTag("TimeControl");
+		long startingTime = 0;
+		long increment = 0;
+		if (timeControl != null)
+		{
+			// Seconds with an optional increment, e.g. 300+5
+			final int plus = timeControl.indexOf('+');
+			startingTime = parseLong(plus < 0 ? timeControl : timeControl.substring(0, plus)) * 1000;
+			increment = plus < 0 ? 0 : parseLong(timeControl.substring(plus + 1)) * 1000;
+		}
+
+		final short[] moves = game.getMoves();
+		final ByteBuffer record = beginRecord(moves.length,
+			game.getTag("White"), (int) parseLong(game.getTag("WhiteElo")),
+			game.getTag("Black"), (int) parseLong(game.getTag("BlackElo")),
+			startingTime, increment, game.getResult(), game.getFen());
+		for (final short move : moves)
+		{
+			record.putShort(move);
+		}
+		return endRecord();
+	}
+
+	/**
+	 * Writes the record header and names, leaving the buffer positioned where the moves go
+	 */
+	private ByteBuffer beginRecord(final int moveCount, final String whiteName, final int whiteElo,
+		final String blackName, final int blackElo, final long startingTime, final long increment, final String result,
+		final String startFen) throws IOException
+	{
+		final byte[] white = encode(whiteName);
+		final byte[] black = encode(blackName);
+		final byte[] start = encode(startFen);
+		final int length = GameArchive.recordLength(white.length, black.length, start.length, moveCount);
+		if (dataBuffer.remaining() < length)
+		{
+			flushBuffers();
+			if (dataBuffer.capacity() < length)
+			{
+				dataBuffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+
+		recordStart = dataBuffer.position();
+		dataBuffer.putLong(startingTime)
+			.putLong(increment)
+			.putInt(moveCount)
+			.putInt(whiteElo)
+			.putInt(blackElo)
+			.put(GameArchive.encodeResult(result))
+			.put((byte) white.length)
+			.put((byte) black.length)
+			.put((byte) start.length)
+			.put(white)
+			.put(black)
+			.put(start);
+		dataBuffer.position(recordStart + GameArchive.movesOffset(white.length, black.length, start.length));
+		return dataBuffer;
+	}
+
+	private long endRecord() throws IOException
+	{
+		// Pad so the next record starts 8 byte aligned
+		final int end = (dataBuffer.position() + GameArchive.RECORD_ALIGNMENT - 1) & -GameArchive.RECORD_ALIGNMENT;
+		while (dataBuffer.position() < end)
+		{
+			dataBuffer.put((byte) 0);
+		}
+
+		final long offset = dataSize + recordStart;
+		if (!indexBuffer.hasRemaining())
+		{
+			flushBuffers();
+		}
+		indexBuffer.putLong(offset);
+		return gameCount++;
+	}
+
+	private static byte[] encode(final String value)
+	{
+		if (value == null)
+		{
+			return EMPTY;
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		// Lengths are stored in a byte, longer values are cut short
+		return bytes.length <= GameArchive.MAX_STRING_LENGTH ? bytes : Arrays.copyOf(bytes, GameArchive.MAX_STRING_LENGTH);
+	}
+
+	private static long parseLong(final String value)
+	{
+		if (value == null)
+		{
+			return 0;
+		}
+		try
+		{
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			// PGN uses ? and - for unknown values
+			return 0;
+		}
+	}
+
+	private static long toMillis(final Duration duration)
+	{
+		return duration == null ? 0 : duration.toMillis();
+	}
+
+	/**
+	 * Writes the buffered records and then their index entries
+	 */
+	private void flushBuffers() throws IOException
+	{
+		dataBuffer.flip();
+		while (dataBuffer.hasRemaining())
+		{
+			dataSize += data.write(dataBuffer, dataSize);
+		}
+		dataBuffer.clear();
+
+		indexBuffer.flip();
+		while (indexBuffer.hasRemaining())
+		{
+			indexSize += index.write(indexBuffer, indexSize);
+		}
+		indexBuffer.clear();
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		flushBuffers();
+	}
+
+	/**
+	 * Writes the buffered games and forces them to the storage device, records before the index
+	 * @throws IOException if the files can't be written
+	 */
+	public void sync() throws IOException
+	{
+		flushBuffers();
+		data.force(false);
+		index.force(false);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			flushBuffers();
+		}
+		finally
+		{
+			try
+			{
+				data.close();
+			}
+			finally
+			{
+				index.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.bitbase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.Getter;
+
+/**
+ * One bit per position of an {@link Endgame}, set when the side with the pieces wins with best play.
+ * The lone king can never win these endings so a clear bit is a draw, or a position that can't happen.
+ * Bits are packed into longs that are either generated in memory or memory mapped from a file.
+ * Safe to probe from any number of threads
+ *
+ * <p>Files are little endian, a header of the magic number, the ending and its size followed by the bits
+ */
+public class Bitbase
+{
+	private static final long MAGIC = 0x3130455341424942L; // "BIBASE01"
+	private static final int HEADER_SIZE = 16;
+
+	@Getter
+	private final Endgame endgame;
+	private final LongBuffer bits;
+
+	Bitbase(final Endgame endgame, final long[] bits)
+	{
+		this(endgame, LongBuffer.wrap(bits));
+	}
+
+	private Bitbase(final Endgame endgame, final LongBuffer bits)
+	{
+		this.endgame = endgame;
+		this.bits = bits;
+	}
+
+	static int words(final Endgame endgame)
+	{
+		return (endgame.getSize() + 63) >>> 6;
+	}
+
+	/**
+	 * @param index position index, see {@link Endgame#index(int, int, int, int, int)}
+	 * @return true if the side with the pieces wins
+	 */
+	public boolean isWin(final int index)
+	{
+		return (bits.get(index >>> 6) >>> index & 1) != 0;
+	}
+
+	/**
+	 * Maps a bitbase written by {@link #write(Path)}
+	 * @param path file to map
+	 * @param endgame ending the file should hold
+	 * @return the bitbase
+	 * @throws IOException if the file can't be read or holds a different ending
+	 */
+	public static Bitbase map(final Path path, final Endgame endgame) throws IOException
+	{
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			final long length = HEADER_SIZE + (long) words(endgame) * Long.BYTES;
+			if (file.size() != length || file.read(header, 0) != HEADER_SIZE || header.getLong(0) != MAGIC
+				|| header.getInt(8) != endgame.ordinal() || header.getInt(12) != endgame.getSize())
+			{
+				throw new IOException(path + " is not a " + endgame + " bitbase");
+			}
+			return new Bitbase(endgame, file.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, length - HEADER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.asLongBuffer());
+		}
+	}
+
+	/**
+	 * @param path file to write, replaced if it exists
+	 * @throws IOException if the file can't be written
+	 */
+	public void write(final Path path) throws IOException
+	{
+		final int words = words(endgame);
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + words * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(MAGIC).putInt(endgame.ordinal()).putInt(endgame.getSize());
+		for (int i = 0; i < words; i++)
+		{
+			buffer.putLong(bits.get(i));
+		}
+		buffer.flip();
+
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (buffer.hasRemaining())
+			{
+				file.write(buffer);
+			}
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.bitbase;
+
+import com.github.michaelgoodwin.chess.Attacks;
+import com.github.michaelgoodwin.chess.Position;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Generates a {@link Bitbase} by repeatedly sweeping every position until nothing changes.
+ * A position with the strong side to move is won if any move reaches a won position, and one with the lone king to
+ * move is won if it's mate or every move reaches a won position. Wins only ever get added, so the sweeps run in
+ * parallel with each thread owning whole words of the table and updating them in place, wins found by other threads
+ * during a sweep just make it converge sooner
+ */
+@Slf4j
+final class BitbaseGenerator
+{
+	private final Endgame endgame;
+	private final boolean twoPieces;
+	private final AtomicLongArray bits;
+	// Endings a pawn can promote into
+	private final Bitbase queenEnding;
+	private final Bitbase rookEnding;
+
+	private BitbaseGenerator(final Endgame endgame, final Bitbases bitbases)
+	{
+		this.endgame = endgame;
+		this.twoPieces = endgame.getPieceCount() > 1;
+		this.bits = new AtomicLongArray(Bitbase.words(endgame));
+		this.queenEnding = bitbases.get(Endgame.KQK);
+		this.rookEnding = bitbases.get(Endgame.KRK);
+	}
+
+	/**
+	 * @param endgame ending to generate
+	 * @param bitbases bitbases already generated, endings with pawns need {@link Endgame#KQK} and {@link Endgame#KRK}
+	 * @return the generated bitbase
+	 */
+	static Bitbase generate(final Endgame endgame, final Bitbases bitbases)
+	{
+		final long start = System.nanoTime();
+		final BitbaseGenerator generator = new BitbaseGenerator(endgame, bitbases);
+		if (endgame.getPieceType(0) == Position.PAWN && (generator.queenEnding == null || generator.rookEnding == null))
+		{
+			throw new IllegalStateException(endgame + " needs the KQK and KRK bitbases for promotions");
+		}
+
+		final int words = generator.bits.length();
+		int sweeps = 0;
+		long added;
+		long wins = 0;
+		do
+		{
+			added = IntStream.range(0, words).parallel().mapToLong(generator::sweep).sum();
+			wins += added;
+			sweeps++;
+		}
+		while (added > 0);
+
+		final long[] result = new long[words];
+		for (int i = 0; i < words; i++)
+		{
+			result[i] = generator.bits.get(i);
+		}
+		log.debug("Generated {} with {} wins in {} sweeps and {} ms", endgame, wins, sweeps,
+			(System.nanoTime() - start) / 1_000_000);
+		return new Bitbase(endgame, result);
+	}
+
+	/**
+	 * Looks for new wins in one word of the table
+	 * @return number of wins found
+	 */
+	private long sweep(final int word)
+	{
+		final long old = bits.get(word);
+		if (old == -1L)
+		{
+			return 0;
+		}
+
+		long updated = old;
+		final int first = word << 6;
+		final int last = Math.min(first + 64, endgame.getSize());
+		for (int index = first; index < last; index++)
+		{
+			if ((updated >>> index & 1) == 0 && isWin(index))
+			{
+				updated |= 1L << index;
+			}
+		}
+
+		if (updated == old)
+		{
+			return 0;
+		}
+		bits.set(word, updated);
+		return Long.bitCount(updated ^ old);
+	}
+
+	private boolean isWin(final int index)
+	{
+		final int strongKing = endgame.strongKing(index);
+		final int weakKing = endgame.weakKing(index);
+		final int piece1 = endgame.pieceSquare(index, 0);
+		final int piece2 = twoPieces ? endgame.pieceSquare(index, 1) : piece1;
+
+		final long strong = 1L << strongKing | 1L << piece1 | 1L << piece2;
+		final long weak = 1L << weakKing;
+		if (Long.bitCount(strong) != endgame.getPieceCount() + 1 || (strong & weak) != 0
+			|| (Attacks.kingAttacksFrom(strongKing) & weak) != 0
+			|| !isValidSquare(0, piece1) || twoPieces && !isValidSquare(1, piece2))
+		{
+			return false;
+		}
+
+		// Sliders see through the lone king so it can't step back along the line it's attacked on
+		final long occupied = strong | weak;
+		long attacks = Attacks.kingAttacksFrom(strongKing) | attacks(0, piece1, occupied ^ weak);
+		if (twoPieces)
+		{
+			attacks |= attacks(1, piece2, occupied ^ weak);
+		}
+
+		if (endgame.sideToMove(index) == Endgame.STRONG)
+		{
+			// The side that just moved can't be in check
+			return (attacks & weak) == 0 && isStrongWin(strongKing, weakKing, piece1, piece2, occupied);
+		}
+		return isWeakLoss(strongKing, weakKing, piece1, piece2, strong, attacks);
+	}
+
+	private boolean isValidSquare(final int piece, final int square)
+	{
+		// Pawns can't be on the first rank and promote on the last
+		return endgame.getPieceType(piece) != Position.PAWN || Position.row(square) != 0 && Position.row(square) != 7;
+	}
+
+	private long attacks(final int piece, final int square, final long occupied)
+	{
+		final int type = endgame.getPieceType(piece);
+		return type == Position.PAWN ? Attacks.pawnAttacksFrom(Position.WHITE, square)
+			: Attacks.pieceAttacks(type, square, occupied);
+	}
+
+	/**
+	 * @return true if any move for the strong side reaches a won position
+	 */
+	private boolean isStrongWin(final int strongKing, final int weakKing, final int piece1, final int piece2,
+		final long occupied)
+	{
+		long kingMoves = Attacks.kingAttacksFrom(strongKing) & ~occupied & ~Attacks.kingAttacksFrom(weakKing);
+		while (kingMoves != 0)
+		{
+			if (isWon(Endgame.WEAK, Long.numberOfTrailingZeros(kingMoves), weakKing, piece1, piece2))
+			{
+				return true;
+			}
+			kingMoves &= kingMoves - 1;
+		}
+
+		if (isPieceWin(0, piece1, strongKing, weakKing, piece2, occupied))
+		{
+			return true;
+		}
+		return twoPieces && isPieceWin(1, piece2, strongKing, weakKing, piece1, occupied);
+	}
+
+	/**
+	 * @param piece piece number of the piece to move
+	 * @param square square the piece is on
+	 * @param other square of the other piece, which stays where it is
+	 * @return true if any move of the piece reaches a won position
+	 */
+	private boolean isPieceWin(final int piece, final int square, final int strongKing, final int weakKing,
+		final int other, final long occupied)
+	{
+		if (endgame.getPieceType(piece) == Position.PAWN)
+		{
+			final int push = square + 8;
+			if ((occupied & 1L << push) != 0)
+			{
+				return false;
+			}
+			if (Position.row(push) == 7)
+			{
+				// Promotions leave a queen or rook, a rook avoids the stalemates a queen would give
+				return queenEnding.isWin(Endgame.KQK.index(Endgame.WEAK, strongKing, weakKing, push, 0))
+					|| rookEnding.isWin(Endgame.KRK.index(Endgame.WEAK, strongKing, weakKing, push, 0));
+			}
+			if (isWonAfter(piece, push, strongKing, weakKing, other))
+			{
+				return true;
+			}
+			final int doublePush = square + 16;
+			return Position.row(square) == 1 && (occupied & 1L << doublePush) == 0
+				&& isWonAfter(piece, doublePush, strongKing, weakKing, other);
+		}
+
+		// The lone king is never attacked here so every target is an empty square
+		long targets = attacks(piece, square, occupied) & ~occupied;
+		while (targets != 0)
+		{
+			if (isWonAfter(piece, Long.numberOfTrailingZeros(targets), strongKing, weakKing, other))
+			{
+				return true;
+			}
+			targets &= targets - 1;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the lone king is mated, or every move it has reaches a won position
+	 */
+	private boolean isWeakLoss(final int strongKing, final int weakKing, final int piece1, final int piece2,
+		final long strong, final long attacks)
+	{
+		final long moves = Attacks.kingAttacksFrom(weakKing) & ~attacks;
+		if (moves == 0)
+		{
+			// Mate, or stalemate
+			return (attacks & 1L << weakKing) != 0;
+		}
+		if ((moves & strong) != 0)
+		{
+			// Taking an undefended piece leaves too little to win with
+			return false;
+		}
+
+		long remaining = moves;
+		while (remaining != 0)
+		{
+			if (!isWon(Endgame.STRONG, strongKing, Long.numberOfTrailingZeros(remaining), piece1, piece2))
+			{
+				return false;
+			}
+			remaining &= remaining - 1;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the position after a piece moved is won, with the lone king to move
+	 */
+	private boolean isWonAfter(final int piece, final int to, final int strongKing, final int weakKing, final int other)
+	{
+		return piece == 0 ? isWon(Endgame.WEAK, strongKing, weakKing, to, other)
+			: isWon(Endgame.WEAK, strongKing, weakKing, other, to);
+	}
+
+	private boolean isWon(final int sideToMove, final int strongKing, final int weakKing, final int piece1,
+		final int piece2)
+	{
+		final int index = endgame.index(sideToMove, strongKing, weakKing, piece1, piece2);
+		return (bits.get(index >>> 6) >>> index & 1) != 0;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.bitbase;
+
+import com.github.michaelgoodwin.chess.Position;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The bitbases available to the engine, probed with any {@link Position}.
+ * Probing works out the ending from the material, mirrors the position so the side with the pieces plays up the board
+ * and reads a single bit, so it's cheap enough to call at every node of a search
+ */
+@Slf4j
+public class Bitbases
+{
+	// Probe results from the point of view of the side to move
+	public static final int UNKNOWN = 0;
+	public static final int WIN = 1;
+	public static final int DRAW = 2;
+	public static final int LOSS = 3;
+
+	// Most pieces on the board, kings included, in any ending
+	public static final int MAX_PIECES = 4;
+
+	private static final String FILE_EXTENSION = ".bitbase";
+
+	private final Bitbase[] bitbases = new Bitbase[Endgame.values().length];
+
+	public void add(final Bitbase bitbase)
+	{
+		bitbases[bitbase.getEndgame().ordinal()] = bitbase;
+	}
+
+	/**
+	 * @param endgame ending to look up
+	 * @return the bitbase for the ending or null if it isn't available
+	 */
+	public Bitbase get(final Endgame endgame)
+	{
+		return bitbases[endgame.ordinal()];
+	}
+
+	/**
+	 * Generates bitbases in memory, endings the requested ones depend on are generated too
+	 * @param endgames endings to generate
+	 * @return the generated bitbases
+	 */
+	public static Bitbases generate(final Endgame... endgames)
+	{
+		final Bitbases generated = new Bitbases();
+		for (final Endgame endgame : withDependencies(endgames))
+		{
+			generated.add(BitbaseGenerator.generate(endgame, generated));
+		}
+		return generated;
+	}
+
+	/**
+	 * Maps bitbases from a directory, generating and writing any that are missing
+	 * @param directory directory holding one file per ending, created if it doesn't exist
+	 * @param endgames endings to load
+	 * @return the loaded bitbases
+	 * @throws IOException if a file can't be read or written
+	 */
+	public static Bitbases load(final Path directory, final Endgame... endgames) throws IOException
+	{
+		Files.createDirectories(directory);
+		final Bitbases loaded = new Bitbases();
+		for (final Endgame endgame : withDependencies(endgames))
+		{
+			final Path path = directory.resolve(endgame + FILE_EXTENSION);
+			if (Files.exists(path))
+			{
+				loaded.add(Bitbase.map(path, endgame));
+				continue;
+			}
+
+			log.info("Generating the {} bitbase", endgame);
+			final Bitbase bitbase = BitbaseGenerator.generate(endgame, loaded);
+			bitbase.write(path);
+			loaded.add(bitbase);
+		}
+		return loaded;
+	}
+
+	private static Set<Endgame> withDependencies(final Endgame... endgames)
+	{
+		// EnumSet iterates in declaration order, which puts the promotion endings before the pawn endings
+		final Set<Endgame> set = endgames.length == 0 ? EnumSet.allOf(Endgame.class)
+			: EnumSet.copyOf(Arrays.asList(endgames));
+		for (final Endgame endgame : endgames)
+		{
+			if (endgame.getPieceType(0) == Position.PAWN)
+			{
+				set.add(Endgame.KQK);
+				set.add(Endgame.KRK);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * @param position position to look up
+	 * @return {@link #WIN}, {@link #DRAW} or {@link #LOSS} for the side to move, or {@link #UNKNOWN} if no bitbase
+	 * covers the position
+	 */
+	public int probe(final Position position)
+	{
+		final int pieces = Long.bitCount(position.getOccupancy());
+		if (pieces < 3 || pieces > MAX_PIECES)
+		{
+			return UNKNOWN;
+		}
+
+		final int strong;
+		if (position.getOccupancy(Position.BLACK) == position.getPieces(Position.BLACK, Position.KING))
+		{
+			strong = Position.WHITE;
+		}
+		else if (position.getOccupancy(Position.WHITE) == position.getPieces(Position.WHITE, Position.KING))
+		{
+			strong = Position.BLACK;
+		}
+		else
+		{
+			return UNKNOWN;
+		}
+
+		final Endgame endgame = Endgame.forPieces(strong, position);
+		final Bitbase bitbase = endgame == null ? null : bitbases[endgame.ordinal()];
+		if (bitbase == null)
+		{
+			return UNKNOWN;
+		}
+
+		// Flip the ranks when black has the pieces so they play up the board
+		final int flip = strong == Position.WHITE ? 0 : 56;
+		final long first = position.getPieces(strong, endgame.getPieceType(0));
+		final int piece1 = Long.numberOfTrailingZeros(first) ^ flip;
+		int piece2 = piece1;
+		if (endgame.getPieceCount() > 1)
+		{
+			final int type = endgame.getPieceType(1);
+			// Skip the first piece when both are the same type
+			final long second = type == endgame.getPieceType(0) ? first & first - 1 : position.getPieces(strong, type);
+			piece2 = Long.numberOfTrailingZeros(second) ^ flip;
+		}
+
+		final int sideToMove = position.getSideToMove() == strong ? Endgame.STRONG : Endgame.WEAK;
+		final int index = endgame.index(sideToMove, position.getKingSquare(strong) ^ flip,
+			position.getKingSquare(1 - strong) ^ flip, piece1, piece2);
+		if (!bitbase.isWin(index))
+		{
+			return DRAW;
+		}
+		return sideToMove == Endgame.STRONG ? WIN : LOSS;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.bitbase;
+
+import com.github.michaelgoodwin.chess.Position;
+import lombok.Getter;
+
+/**
+ * Endings covered by a {@link Bitbase}, a king and one or two pieces against a lone king.
+ * Positions are indexed from the point of view of the side with the pieces, which is always treated as white moving
+ * up the board. Symmetry keeps the tables small: the strong king is mirrored onto the a1-d1-d4 triangle, or onto the
+ * a-d files when pawns are on the board as they can only be mirrored left to right.
+ * Index layout from the most significant part: side to move (0 for the strong side), strong king slot, weak king
+ * square, then the square of each piece
+ */
+public enum Endgame
+{
+	KQK(Position.QUEEN),
+	KRK(Position.ROOK),
+	// Promotions are looked up in KQK and KRK so those are generated first
+	KPK(Position.PAWN),
+	KBNK(Position.BISHOP, Position.KNIGHT),
+	KBBK(Position.BISHOP, Position.BISHOP);
+
+	static final int STRONG = 0;
+	static final int WEAK = 1;
+
+	private static final int FLIP_X = 1;
+	private static final int FLIP_Y = 2;
+	private static final int TRANSPOSE = 4;
+
+	private final int[] pieceTypes;
+	private final boolean pawns;
+	// Number of squares the strong king can be on after mirroring
+	private final int kingSlots;
+	// Number of indexed positions, including illegal ones
+	@Getter
+	private final int size;
+	// Count of each piece type in 4 bits per type so positions can be matched to an ending
+	private final int signature;
+
+	Endgame(final int... pieceTypes)
+	{
+		this.pieceTypes = pieceTypes;
+		boolean hasPawns = false;
+		int counts = 0;
+		for (final int type : pieceTypes)
+		{
+			hasPawns |= type == Position.PAWN;
+			counts += 1 << (type * 4);
+		}
+		pawns = hasPawns;
+		kingSlots = pawns ? 32 : 10;
+		size = (2 * kingSlots) << (6 * (pieceTypes.length + 1));
+		signature = counts;
+	}
+
+	public int getPieceCount()
+	{
+		return pieceTypes.length;
+	}
+
+	/**
+	 * @param piece piece number, see the order the ending lists its pieces in
+	 * @return piece type of the piece
+	 */
+	public int getPieceType(final int piece)
+	{
+		return pieceTypes[piece];
+	}
+
+	/**
+	 * @param team team to look at
+	 * @param position position to look at
+	 * @return the ending with the teams pieces other than its king, or null if there isn't one
+	 */
+	static Endgame forPieces(final int team, final Position position)
+	{
+		int counts = 0;
+		for (int type = Position.PAWN; type < Position.KING; type++)
+		{
+			counts += Long.bitCount(position.getPieces(team, type)) << (type * 4);
+		}
+		for (final Endgame endgame : Slots.ENDGAMES)
+		{
+			if (endgame.signature == counts)
+			{
+				return endgame;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Works out the index of a position, squares are as seen by the strong side playing up the board
+	 * @param sideToMove {@link #STRONG} or {@link #WEAK}
+	 * @param strongKing strong king square
+	 * @param weakKing weak king square
+	 * @param piece1 square of the first piece
+	 * @param piece2 square of the second piece, ignored in three piece endings
+	 * @return index of the position
+	 */
+	public int index(final int sideToMove, final int strongKing, final int weakKing, final int piece1,
+		final int piece2)
+	{
+		int x = Position.column(strongKing);
+		int y = Position.row(strongKing);
+		int flags = 0;
+		if (x > 3)
+		{
+			flags |= FLIP_X;
+			x = 7 - x;
+		}
+		if (!pawns)
+		{
+			if (y > 3)
+			{
+				flags |= FLIP_Y;
+				y = 7 - y;
+			}
+			if (y > x)
+			{
+				flags |= TRANSPOSE;
+			}
+		}
+
+		final int slot = pawns ? y * 4 + x : Slots.TRIANGLE[transform(strongKing, flags)];
+		int index = (sideToMove * kingSlots + slot) << 6 | transform(weakKing, flags);
+		index = index << 6 | transform(piece1, flags);
+		if (pieceTypes.length > 1)
+		{
+			index = index << 6 | transform(piece2, flags);
+		}
+		return index;
+	}
+
+	int sideToMove(final int index)
+	{
+		return (index >>> (6 * (pieceTypes.length + 1))) / kingSlots;
+	}
+
+	int strongKing(final int index)
+	{
+		final int slot = (index >>> (6 * (pieceTypes.length + 1))) % kingSlots;
+		return pawns ? Position.square(slot & 3, slot >>> 2) : Slots.TRIANGLE_SQUARES[slot];
+	}
+
+	int weakKing(final int index)
+	{
+		return (index >>> (6 * pieceTypes.length)) & 63;
+	}
+
+	/**
+	 * @param index position index
+	 * @param piece piece number
+	 * @return square of the piece
+	 */
+	int pieceSquare(final int index, final int piece)
+	{
+		return (index >>> (6 * (pieceTypes.length - 1 - piece))) & 63;
+	}
+
+	private static int transform(final int square, final int flags)
+	{
+		int x = Position.column(square);
+		int y = Position.row(square);
+		if ((flags & FLIP_X) != 0)
+		{
+			x = 7 - x;
+		}
+		if ((flags & FLIP_Y) != 0)
+		{
+			y = 7 - y;
+		}
+		if ((flags & TRANSPOSE) != 0)
+		{
+			final int swap = x;
+			x = y;
+			y = swap;
+		}
+		return Position.square(x, y);
+	}
+
+	/**
+	 * Enum constants are created before the enums static fields, so the tables live in their own class
+	 */
+	private static final class Slots
+	{
+		// values() copies the array on every call
+		static final Endgame[] ENDGAMES = values();
+
+		// Slot of each square in the a1-d1-d4 triangle, -1 outside it
+		static final int[] TRIANGLE = new int[64];
+		static final int[] TRIANGLE_SQUARES = new int[10];
+
+		static
+		{
+			int slot = 0;
+			for (int square = 0; square < 64; square++)
+			{
+				final int x = Position.column(square);
+				final int y = Position.row(square);
+				if (x <= 3 && y <= x)
+				{
+					TRIANGLE_SQUARES[slot] = square;
+					TRIANGLE[square] = slot++;
+				}
+				else
+				{
+					TRIANGLE[square] = -1;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.book;
+
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.MoveGenerator;
+import com.github.michaelgoodwin.chess.Position;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import lombok.Getter;
+
+/**
+ * Polyglot opening book read straight from a memory mapped .bin file.
+ * The file is a list of 16 byte big endian entries sorted by key, each holding the position key, a move, a weight and
+ * learning data that is ignored. Looking up a position is a binary search over the mapping.
+ * Safe to use from any number of threads
+ */
+public class PolyglotBook
+{
+	static final int ENTRY_SIZE = 16;
+	static final int MOVE_OFFSET = 8;
+	static final int WEIGHT_OFFSET = 10;
+
+	// Polyglot promotion pieces, 0 is no promotion
+	private static final int[] PROMOTION_TYPES = {
+		Position.NO_PIECE, Position.KNIGHT, Position.BISHOP, Position.ROOK, Position.QUEEN
+	};
+
+	private final ByteBuffer entries;
+	@Getter
+	private final PolyglotKey keys;
+	@Getter
+	private final int entryCount;
+
+	/**
+	 * Maps a book keyed with {@link PolyglotKey#DEFAULT}
+	 * @param path book file
+	 * @throws IOException if the file can't be read
+	 */
+	public PolyglotBook(final Path path) throws IOException
+	{
+		this(path, PolyglotKey.DEFAULT);
+	}
+
+	/**
+	 * @param path book file
+	 * @param keys keys the book was built with, use {@link PolyglotKey#load(Path)} for books keyed with a non-standard table
+	 * @throws IOException if the file can't be read or is larger than 2GB
+	 */
+	public PolyglotBook(final Path path, final PolyglotKey keys) throws IOException
+	{
+		this.keys = keys;
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			final long size = file.size() - file.size() % ENTRY_SIZE;
+			if (size > Integer.MAX_VALUE)
+			{
+				throw new IOException(path + " is too large to map");
+			}
+			// Polyglot files are big endian, which is the default byte order
+			entries = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			entryCount = (int) (size / ENTRY_SIZE);
+		}
+	}
+
+	/**
+	 * Finds the book moves for a position, moves that aren't legal in the position are left out
+	 * @param position position to look up
+	 * @param moves buffer for the moves as {@link CompactMove}s, must have room for {@link MoveGenerator#MAX_MOVES}
+	 * @param weights buffer for the weight of each move, the same size as moves
+	 * @return number of moves found
+	 */
+	public int getMoves(final Position position, final int[] moves, final int[] weights)
+	{
+		final long key = keys.key(position);
+		final int first = firstEntry(key);
+		if (first == entryCount || key(first) != key)
+		{
+			return 0;
+		}
+
+		// Book moves are checked against the legal moves in case of a key collision or a broken book
+		final int[] legal = new int[MoveGenerator.MAX_MOVES];
+		final int legalCount = MoveGenerator.generate(position, legal);
+		int count = 0;
+		for (int i = first; i < entryCount && key(i) == key; i++)
+		{
+			final int move = toMove(position, entries.getShort(i * ENTRY_SIZE + MOVE_OFFSET), legal, legalCount);
+			if (move != CompactMove.NONE && count < moves.length)
+			{
+				moves[count] = move;
+				weights[count++] = weight(i);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Picks a book move at random, moves with a higher weight are picked more often
+	 * @param position position to look up
+	 * @param random source of randomness
+	 * @return the move as a {@link CompactMove}, or {@link CompactMove#NONE} if the position isn't in the book
+	 */
+	public int pickMove(final Position position, final Random random)
+	{
+		final int[] moves = new int[MoveGenerator.MAX_MOVES];
+		final int[] weights = new int[MoveGenerator.MAX_MOVES];
+		final int count = getMoves(position, moves, weights);
+
+		int total = 0;
+		for (int i = 0; i < count; i++)
+		{
+			total += weights[i];
+		}
+		if (total == 0)
+		{
+			// Every move has no weight, which books use for moves that shouldn't be played
+			return CompactMove.NONE;
+		}
+
+		int pick = random.nextInt(total);
+		for (int i = 0; i < count; i++)
+		{
+			pick -= weights[i];
+			if (pick < 0)
+			{
+				return moves[i];
+			}
+		}
+		return CompactMove.NONE;
+	}
+
+	/**
+	 * @return index of the first entry with the key, or the index it would be at
+	 */
+	private int firstEntry(final long key)
+	{
+		int low = 0;
+		int high = entryCount;
+		while (low < high)
+		{
+			final int middle = (low + high) >>> 1;
+			if (Long.compareUnsigned(key(middle), key) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private long key(final int entry)
+	{
+		return entries.getLong(entry * ENTRY_SIZE);
+	}
+
+	private int weight(final int entry)
+	{
+		return Short.toUnsignedInt(entries.getShort(entry * ENTRY_SIZE + WEIGHT_OFFSET));
+	}
+
+	/**
+	 * Matches a Polyglot move against the legal moves.
+	 * Polyglot writes castling as the king taking its own rook, e.g. e1h1
+	 */
+	private static int toMove(final Position position, final short bookMove, final int[] legal, final int legalCount)
+	{
+		final int to = bookMove & 0x3F;
+		final int from = (bookMove >>> 6) & 0x3F;
+		final int promotion = (bookMove >>> 12) & 7;
+		if (promotion >= PROMOTION_TYPES.length)
+		{
+			return CompactMove.NONE;
+		}
+
+		int target = to;
+		final int us = position.getSideToMove();
+		if (position.typeAt(from) == Position.KING && position.teamAt(to) == us
+			&& position.typeAt(to) == Position.ROOK)
+		{
+			target = to > from ? from + 2 : from - 2;
+		}
+
+		for (int i = 0; i < legalCount; i++)
+		{
+			final int move = legal[i];
+			if (CompactMove.from(move) == from && CompactMove.to(move) == target
+				&& CompactMove.promotionType(move) == PROMOTION_TYPES[promotion])
+			{
+				return move;
+			}
+		}
+		return CompactMove.NONE;
+	}
+
+	/**
+	 * Encodes a move the way Polyglot books store it
+	 * @param move move as a {@link CompactMove}
+	 * @return the Polyglot move
+	 */
+	static short toBookMove(final int move)
+	{
+		final int from = CompactMove.from(move);
+		int to = CompactMove.to(move);
+		final int flags = CompactMove.flags(move);
+		if (flags == CompactMove.KING_CASTLE)
+		{
+			to = from + 3;
+		}
+		else if (flags == CompactMove.QUEEN_CASTLE)
+		{
+			to = from - 4;
+		}
+
+		final int promotion = CompactMove.isPromotion(move) ? CompactMove.promotionType(move) - Position.KNIGHT + 1 : 0;
+		return (short) (to | from << 6 | promotion << 12);
+	}
+}
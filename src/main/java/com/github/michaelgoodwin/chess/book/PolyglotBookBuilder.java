@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.book;
+
+import com.github.michaelgoodwin.chess.Perft;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.archive.ArchivedGame;
+import com.github.michaelgoodwin.chess.archive.GameArchive;
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Builds a Polyglot opening book from finished games.
+ * Every move played in the opening is scored from the side that played it, 2 for a win and 1 for a draw, and the
+ * scores become the move weights. Moves are counted in a primitive open addressing table keyed by position and move so
+ * millions of games can be added without creating objects per move. Not thread safe
+ */
+public class PolyglotBookBuilder
+{
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	private static final int MAX_WEIGHT = 0xFFFF;
+	private static final int WIN_SCORE = 2;
+	private static final int DRAW_SCORE = 1;
+	private static final int WRITE_BUFFER_ENTRIES = 4096;
+
+	private static final Position START = new Position();
+
+	static
+	{
+		START.setFen(Perft.START_FEN);
+	}
+
+	private final PolyglotKey keys;
+	private final Position position = new Position();
+
+	// Moves played after this many plies aren't added
+	@Setter
+	private int maxPly = 24;
+	// Moves played in fewer games than this are left out of the book
+	@Setter
+	private int minGames = 1;
+
+	// Slots are empty when their count is 0
+	private long[] slotKeys = new long[INITIAL_CAPACITY];
+	private short[] slotMoves = new short[INITIAL_CAPACITY];
+	private int[] slotScores = new int[INITIAL_CAPACITY];
+	private int[] slotCounts = new int[INITIAL_CAPACITY];
+	// Number of distinct position and move pairs
+	@Getter
+	private int size;
+
+	public PolyglotBookBuilder()
+	{
+		this(PolyglotKey.DEFAULT);
+	}
+
+	public PolyglotBookBuilder(final PolyglotKey keys)
+	{
+		this.keys = keys;
+	}
+
+	/**
+	 * Adds the opening of every finished game in an archive
+	 * @param archive games to add
+	 */
+	public void addAll(final GameArchive archive)
+	{
+		archive.forEach(this::add);
+	}
+
+	/**
+	 * Adds the opening moves of a game, unfinished games are skipped as their moves can't be scored
+	 * @param game game to add
+	 */
+	public void add(final ArchivedGame game)
+	{
+		final String result = game.getResult();
+		final int whiteScore;
+		final int blackScore;
+		switch (result)
+		{
+			case PgnWriter.WHITE_WINS:
+				whiteScore = WIN_SCORE;
+				blackScore = 0;
+				break;
+			case PgnWriter.BLACK_WINS:
+				whiteScore = 0;
+				blackScore = WIN_SCORE;
+				break;
+			case PgnWriter.DRAW:
+				whiteScore = DRAW_SCORE;
+				blackScore = DRAW_SCORE;
+				break;
+			default:
+				return;
+		}
+
+		final String fen = game.getFen();
+		if (fen == null)
+		{
+			position.copyFrom(START);
+		}
+		else
+		{
+			position.setFen(fen);
+		}
+
+		final int plies = Math.min(maxPly, game.getMoveCount());
+		for (int i = 0; i < plies; i++)
+		{
+			final int move = game.getMove(i);
+			add(keys.key(position), PolyglotBook.toBookMove(move),
+				position.getSideToMove() == Position.WHITE ? whiteScore : blackScore);
+			position.makeMove(move);
+		}
+	}
+
+	private void add(final long key, final short move, final int score)
+	{
+		if (size * 2 >= slotKeys.length)
+		{
+			grow();
+		}
+
+		final int mask = slotKeys.length - 1;
+		int slot = slot(key, move) & mask;
+		while (slotCounts[slot] != 0 && (slotKeys[slot] != key || slotMoves[slot] != move))
+		{
+			slot = (slot + 1) & mask;
+		}
+
+		if (slotCounts[slot] == 0)
+		{
+			slotKeys[slot] = key;
+			slotMoves[slot] = move;
+			size++;
+		}
+		slotScores[slot] += score;
+		slotCounts[slot]++;
+	}
+
+	private static int slot(final long key, final short move)
+	{
+		final long hash = (key ^ move) * 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 32);
+	}
+
+	private void grow()
+	{
+		final long[] oldKeys = slotKeys;
+		final short[] oldMoves = slotMoves;
+		final int[] oldScores = slotScores;
+		final int[] oldCounts = slotCounts;
+
+		final int capacity = oldKeys.length * 2;
+		slotKeys = new long[capacity];
+		slotMoves = new short[capacity];
+		slotScores = new int[capacity];
+		slotCounts = new int[capacity];
+		final int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldCounts[i] == 0)
+			{
+				continue;
+			}
+			int slot = slot(oldKeys[i], oldMoves[i]) & mask;
+			while (slotCounts[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			slotKeys[slot] = oldKeys[i];
+			slotMoves[slot] = oldMoves[i];
+			slotScores[slot] = oldScores[i];
+			slotCounts[slot] = oldCounts[i];
+		}
+	}
+
+	/**
+	 * Writes the book sorted by key with the best scoring moves first.
+	 * Scores are scaled down to fit the 16 bit weights, and moves that never scored are left out
+	 * @param path file to write, replaced if it exists
+	 * @return number of entries written
+	 * @throws IOException if the file can't be written
+	 */
+	public int write(final Path path) throws IOException
+	{
+		int maxScore = 0;
+		for (int i = 0; i < slotKeys.length; i++)
+		{
+			if (slotCounts[i] >= minGames)
+			{
+				maxScore = Math.max(maxScore, slotScores[i]);
+			}
+		}
+
+		// Weight in the upper bits so sorting on the whole value puts the best moves first
+		final long[] entryKeys = new long[size];
+		final long[] entryValues = new long[size];
+		int count = 0;
+		for (int i = 0; i < slotKeys.length; i++)
+		{
+			if (slotCounts[i] == 0 || slotCounts[i] < minGames)
+			{
+				continue;
+			}
+			final int weight = maxScore <= MAX_WEIGHT ? slotScores[i]
+				: (int) ((long) slotScores[i] * MAX_WEIGHT / maxScore);
+			if (weight > 0)
+			{
+				entryKeys[count] = slotKeys[i];
+				entryValues[count++] = (long) weight << 16 | Short.toUnsignedInt(slotMoves[i]);
+			}
+		}
+		sort(entryKeys, entryValues, 0, count - 1);
+
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_ENTRIES * PolyglotBook.ENTRY_SIZE);
+			for (int i = 0; i < count; i++)
+			{
+				buffer.putLong(entryKeys[i])
+					.putShort((short) entryValues[i])
+					.putShort((short) (entryValues[i] >>> 16))
+					.putInt(0);
+				if (!buffer.hasRemaining() || i == count - 1)
+				{
+					buffer.flip();
+					while (buffer.hasRemaining())
+					{
+						file.write(buffer);
+					}
+					buffer.clear();
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sorts by unsigned key and then by descending value
+	 */
+	private static void sort(final long[] keys, final long[] values, int low, int high)
+	{
+		while (low < high)
+		{
+			final int middle = (low + high) >>> 1;
+			final long pivotKey = keys[middle];
+			final long pivotValue = values[middle];
+			int i = low;
+			int j = high;
+			while (i <= j)
+			{
+				while (compare(keys[i], values[i], pivotKey, pivotValue) < 0)
+				{
+					i++;
+				}
+				while (compare(keys[j], values[j], pivotKey, pivotValue) > 0)
+				{
+					j--;
+				}
+				if (i <= j)
+				{
+					swap(keys, values, i++, j--);
+				}
+			}
+
+			// Recurse into the smaller side so the stack stays shallow
+			if (j - low < high - i)
+			{
+				sort(keys, values, low, j);
+				low = i;
+			}
+			else
+			{
+				sort(keys, values, i, high);
+				high = j;
+			}
+		}
+	}
+
+	private static int compare(final long key, final long value, final long otherKey, final long otherValue)
+	{
+		final int byKey = Long.compareUnsigned(key, otherKey);
+		return byKey != 0 ? byKey : Long.compare(otherValue, value);
+	}
+
+	private static void swap(final long[] keys, final long[] values, final int a, final int b)
+	{
+		final long key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+		final long value = values[a];
+		values[a] = values[b];
+		values[b] = value;
+	}
+}
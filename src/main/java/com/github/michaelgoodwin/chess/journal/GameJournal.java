@@ -0,0 +1,462 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.journal;
+
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.Perft;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.Team;
+import com.github.michaelgoodwin.chess.User;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-ahead log of every live game, split over shard files so games appending at the same time spread over several
+ * locks and flusher threads. Every event of a game goes to the same shard, so its records stay in order.
+ * Opening a journal replays the existing shards to rebuild the games that were still being played when the process
+ * stopped, then rewrites the shards with only those games so finished games don't pile up.
+ */
+@Slf4j
+public class GameJournal implements AutoCloseable
+{
+	private static final String PREFIX = "shard-";
+	private static final String SUFFIX = ".journal";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	private final MoveJournal[] shards;
+	@Getter
+	private final List<RecoveredGame> recovered;
+	// Highest game id found in the journal, new games must be given higher ids
+	@Getter
+	private final long maxGameId;
+
+	private GameJournal(final MoveJournal[] shards, final List<RecoveredGame> recovered, final long maxGameId)
+	{
+		this.shards = shards;
+		this.recovered = recovered;
+		this.maxGameId = maxGameId;
+	}
+
+	/**
+	 * Recovers the live games from a journal directory and opens it for appending
+	 * @param directory directory holding the shard files, created if it doesn't exist
+	 * @param shardCount number of shards to write, may differ from the number found
+	 * @param threadFactory creates a flusher thread per shard
+	 * @param users finds the user playing under a name in a recovered game, so rating changes at the end of the game
+	 * reach the same user object as the rest of the server. May return null for a player without a user
+	 * @return the open journal, see {@link #getRecovered()} for the games that were still being played
+	 * @throws IOException if the journal can't be read or rewritten
+	 */
+	public static GameJournal open(final Path directory, final int shardCount, final ThreadFactory threadFactory,
+		final Function<String, User> users) throws IOException
+	{
+		if (shardCount < 1)
+		{
+			throw new IllegalArgumentException("At least one shard is required");
+		}
+		Files.createDirectories(directory);
+
+		final long start = System.nanoTime();
+		final Recovery recovery = new Recovery();
+		final List<Path> existing = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX))
+		{
+			for (final Path file : files)
+			{
+				existing.add(file);
+				MoveJournal.read(file, recovery);
+			}
+		}
+
+		final long maxGameId = recovery.maxGameId;
+		final List<JournaledGame> live = new ArrayList<>();
+		for (final JournaledGame game : recovery.games.values())
+		{
+			if (!game.ended)
+			{
+				live.add(game);
+			}
+		}
+
+		final int shardsRead = existing.size();
+		compact(directory, shardCount, threadFactory, live, maxGameId, existing);
+
+		final MoveJournal[] shards = new MoveJournal[shardCount];
+		try
+		{
+			for (int i = 0; i < shardCount; i++)
+			{
+				shards[i] = new MoveJournal(shardPath(directory, i), threadFactory);
+			}
+		}
+		catch (IOException e)
+		{
+			closeAll(shards);
+			throw e;
+		}
+
+		final List<RecoveredGame> recovered = new ArrayList<>(live.size());
+		for (final JournaledGame game : live)
+		{
+			recovered.add(new RecoveredGame(game.id, game.toGame(users)));
+		}
+		log.info("Recovered {} live games from {} journal shards in {} ms", recovered.size(), shardsRead,
+			(System.nanoTime() - start) / 1_000_000);
+		return new GameJournal(shards, Collections.unmodifiableList(recovered), maxGameId);
+	}
+
+	/**
+	 * Writes the live games to new shard files and swaps them in, each file is replaced atomically so a crash leaves
+	 * either the old or the new version of it. Every shard starts with a mark of the highest id given out, as the
+	 * games that had the highest ids may have ended and not be copied
+	 */
+	private static void compact(final Path directory, final int shardCount, final ThreadFactory threadFactory,
+		final List<JournaledGame> live, final long maxGameId, final List<Path> existing) throws IOException
+	{
+		final MoveJournal[] rewritten = new MoveJournal[shardCount];
+		try
+		{
+			for (int i = 0; i < shardCount; i++)
+			{
+				final Path temporary = temporaryPath(directory, i);
+				Files.deleteIfExists(temporary);
+				rewritten[i] = new MoveJournal(temporary, threadFactory);
+				rewritten[i].appendIdMark(maxGameId);
+			}
+			for (final JournaledGame game : live)
+			{
+				game.append(rewritten[shardIndex(game.id, shardCount)]);
+			}
+		}
+		finally
+		{
+			// Closing writes and syncs everything appended
+			closeAll(rewritten);
+		}
+
+		for (int i = 0; i < shardCount; i++)
+		{
+			final Path shard = shardPath(directory, i);
+			Files.move(temporaryPath(directory, i), shard, StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+			existing.remove(shard);
+		}
+		// Shards beyond the new count had their games moved into the ones above
+		for (final Path stale : existing)
+		{
+			Files.deleteIfExists(stale);
+		}
+		syncDirectory(directory);
+	}
+
+	/**
+	 * Makes the renames durable, not every platform can open a directory so failing is only logged
+	 */
+	private static void syncDirectory(final Path directory)
+	{
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+		{
+			channel.force(true);
+		}
+		catch (IOException e)
+		{
+			log.debug("Unable to sync journal directory {}", directory, e);
+		}
+	}
+
+	private static void closeAll(final MoveJournal[] journals) throws IOException
+	{
+		IOException failure = null;
+		for (final MoveJournal journal : journals)
+		{
+			if (journal == null)
+			{
+				continue;
+			}
+			try
+			{
+				journal.close();
+			}
+			catch (IOException e)
+			{
+				failure = e;
+			}
+		}
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+
+	private static Path shardPath(final Path directory, final int shard)
+	{
+		return directory.resolve(PREFIX + shard + SUFFIX);
+	}
+
+	private static Path temporaryPath(final Path directory, final int shard)
+	{
+		return directory.resolve(PREFIX + shard + SUFFIX + TEMPORARY_SUFFIX);
+	}
+
+	private static int shardIndex(final long gameId, final int shardCount)
+	{
+		return (int) Long.remainderUnsigned(gameId, shardCount);
+	}
+
+	private MoveJournal shard(final long gameId)
+	{
+		return shards[shardIndex(gameId, shards.length)];
+	}
+
+	/**
+	 * Journals a game that is about to be hosted, including any moves it already has
+	 * @return completes once the game is on disk
+	 */
+	public CompletableFuture<Void> started(final long gameId, final Game game)
+	{
+		// Take back every move on a copy of the position to find the starting position
+		final Position position = new Position();
+		position.copyFrom(game.getBoard().getPosition());
+		final int moveCount = game.getMoveCount();
+		for (int i = 0; i < moveCount; i++)
+		{
+			position.unmakeMove();
+		}
+		final String fen = position.appendFen(new StringBuilder()).toString();
+
+		final Player white = game.getWhitePlayer();
+		final Player black = game.getBlackPlayer();
+		final MoveJournal journal = shard(gameId);
+		CompletableFuture<Void> written = journal.appendStart(gameId, username(white), elo(white), username(black),
+			elo(black), nanos(game.getStartingTime()), nanos(game.getMoveTimeIncrement()),
+			Perft.START_FEN.equals(fen) ? null : fen);
+		for (int i = 0; i < moveCount; i++)
+		{
+			// Earlier clock readings are gone, the current ones are the best there is
+			final Player mover = position.getSideToMove() == Position.WHITE ? white : black;
+			final int move = game.getMove(i);
+			written = journal.appendMove(gameId, CompactMove.toShort(move), nanos(mover.getTimeRemaining()));
+			position.makeMove(move);
+		}
+		return written;
+	}
+
+	/**
+	 * Journals a move
+	 * @param move move as a {@link CompactMove}
+	 * @param clockNanos time the mover has left after the move, including the increment
+	 * @return completes once the move is on disk
+	 */
+	public CompletableFuture<Void> moved(final long gameId, final int move, final long clockNanos)
+	{
+		return shard(gameId).appendMove(gameId, CompactMove.toShort(move), clockNanos);
+	}
+
+	/**
+	 * Journals the end of a game, it won't be recovered
+	 * @param result one of the {@link com.github.michaelgoodwin.chess.pgn.PgnWriter} result constants
+	 * @return completes once the end is on disk
+	 */
+	public CompletableFuture<Void> ended(final long gameId, final String result)
+	{
+		return shard(gameId).appendEnd(gameId, result);
+	}
+
+	/**
+	 * Writes everything already journaled and closes the shards
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		closeAll(shards);
+	}
+
+	private static String username(final Player player)
+	{
+		return player.getUser() == null ? null : player.getUser().getUsername();
+	}
+
+	private static int elo(final Player player)
+	{
+		return player.getUser() == null ? 0 : player.getUser().getElo();
+	}
+
+	private static long nanos(final Duration duration)
+	{
+		return duration == null ? 0 : duration.toNanos();
+	}
+
+	/**
+	 * Collects the records of every game while the shards are read
+	 */
+	private static final class Recovery implements MoveJournal.Visitor
+	{
+		private final Map<Long, JournaledGame> games = new HashMap<>();
+		private long maxGameId;
+
+		@Override
+		public void start(final long gameId, final String whiteName, final int whiteElo, final String blackName,
+			final int blackElo, final long startingTimeNanos, final long incrementNanos, final String fen)
+		{
+			// A crash part way through compacting to a new shard count can leave the same copy of a game in two
+			// shards, the second start replaces the first and its moves follow
+			maxGameId = Math.max(maxGameId, gameId);
+			games.put(gameId, new JournaledGame(gameId, whiteName, whiteElo, blackName, blackElo, startingTimeNanos,
+				incrementNanos, fen));
+		}
+
+		@Override
+		public void move(final long gameId, final short move, final long clockNanos)
+		{
+			final JournaledGame game = games.get(gameId);
+			if (game != null && !game.ended)
+			{
+				game.addMove(move, clockNanos);
+			}
+		}
+
+		@Override
+		public void end(final long gameId, final String result)
+		{
+			final JournaledGame game = games.get(gameId);
+			if (game != null)
+			{
+				game.ended = true;
+			}
+		}
+
+		@Override
+		public void idMark(final long gameId)
+		{
+			maxGameId = Math.max(maxGameId, gameId);
+		}
+	}
+
+	private static final class JournaledGame
+	{
+		private static final int INITIAL_MOVE_CAPACITY = 64;
+
+		final long id;
+		final String whiteName;
+		final int whiteElo;
+		final String blackName;
+		final int blackElo;
+		final long startingTime;
+		final long increment;
+		final String fen;
+		short[] moves = new short[INITIAL_MOVE_CAPACITY];
+		long[] clocks = new long[INITIAL_MOVE_CAPACITY];
+		int moveCount;
+		boolean ended;
+
+		JournaledGame(final long id, final String whiteName, final int whiteElo, final String blackName,
+			final int blackElo, final long startingTime, final long increment, final String fen)
+		{
+			this.id = id;
+			this.whiteName = whiteName;
+			this.whiteElo = whiteElo;
+			this.blackName = blackName;
+			this.blackElo = blackElo;
+			this.startingTime = startingTime;
+			this.increment = increment;
+			this.fen = fen;
+		}
+
+		void addMove(final short move, final long clock)
+		{
+			if (moveCount == moves.length)
+			{
+				moves = Arrays.copyOf(moves, moveCount * 2);
+				clocks = Arrays.copyOf(clocks, moveCount * 2);
+			}
+			moves[moveCount] = move;
+			clocks[moveCount++] = clock;
+		}
+
+		void append(final MoveJournal journal)
+		{
+			journal.appendStart(id, whiteName, whiteElo, blackName, blackElo, startingTime, increment, fen);
+			for (int i = 0; i < moveCount; i++)
+			{
+				journal.appendMove(id, moves[i], clocks[i]);
+			}
+		}
+
+		Game toGame(final Function<String, User> users)
+		{
+			final Player white = new Player(user(users, whiteName), Team.WHITE);
+			final Player black = new Player(user(users, blackName), Team.BLACK);
+			final Game game = Game.replay(white, black, Duration.ofNanos(startingTime), Duration.ofNanos(increment),
+				fen, Arrays.copyOf(moves, moveCount));
+
+			// Walk back from the side to move to give each player the clock from their last move
+			int mover = game.getBoard().getPosition().getSideToMove() == Position.WHITE ? Position.BLACK : Position.WHITE;
+			boolean whiteSet = false;
+			boolean blackSet = false;
+			for (int i = moveCount - 1; i >= 0 && !(whiteSet && blackSet); i--)
+			{
+				if (mover == Position.WHITE && !whiteSet)
+				{
+					white.setTimeRemaining(Duration.ofNanos(clocks[i]));
+					whiteSet = true;
+				}
+				else if (mover == Position.BLACK && !blackSet)
+				{
+					black.setTimeRemaining(Duration.ofNanos(clocks[i]));
+					blackSet = true;
+				}
+				mover = mover == Position.WHITE ? Position.BLACK : Position.WHITE;
+			}
+			return game;
+		}
+
+		/**
+		 * @param name name from the journal, empty for a player without a user
+		 */
+		private static User user(final Function<String, User> users, final String name)
+		{
+			return name == null || name.isEmpty() ? null : users.apply(name);
+		}
+	}
+}
@@ -0,0 +1,616 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.journal;
+
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of game events in one file.
+ * The file is a 16 byte header followed by records, each record is
+ * <pre>
+ * int   length of the checked part
+ * int   CRC32C of the checked part
+ * byte  record type          \
+ * long  game id               } checked part
+ * ...   type specific fields /
+ * </pre>
+ * all little endian. Appends from any thread are copied into a shared buffer under a short lock, and a single flusher
+ * thread writes the buffer and forces it to disk while the next batch collects in a second buffer. One fsync commits
+ * every record appended while the last one ran, so the cost of a sync is shared by every game writing to the
+ * journal. The future returned by each append completes once the record is on disk.
+ * A crash can leave a torn record at the end of the file, reading stops at the first record that is cut short or fails
+ * its CRC and opening the journal for writing truncates it away.
+ */
+@Slf4j
+public class MoveJournal implements AutoCloseable
+{
+	// "MOVEJRNL" read as a little endian long
+	static final long MAGIC = 0x4C4E524A45564F4DL;
+	// Version 2 added ID_MARK records, version 1 files are still read
+	static final int VERSION = 2;
+	private static final int MIN_VERSION = 1;
+	static final int HEADER_SIZE = 16;
+
+	static final byte START = 1;
+	static final byte MOVE = 2;
+	static final byte END = 3;
+	static final byte ID_MARK = 4;
+
+	// Length and CRC in front of the checked part
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int MIN_CHECKED_LENGTH = 1 + Long.BYTES;
+	private static final int MAX_CHECKED_LENGTH = 4096;
+	private static final int MAX_STRING_LENGTH = 255;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	// Indexed by the result byte of an END record, matches the game archive
+	private static final String[] RESULTS = {
+		PgnWriter.UNFINISHED, PgnWriter.WHITE_WINS, PgnWriter.BLACK_WINS, PgnWriter.DRAW
+	};
+
+	/**
+	 * Receives the records of a journal in the order they were appended
+	 */
+	public interface Visitor
+	{
+		/**
+		 * A game started, followed by its moves and usually an end
+		 * @param fen starting position, or null for the standard starting position
+		 */
+		void start(long gameId, String whiteName, int whiteElo, String blackName, int blackElo, long startingTimeNanos,
+			long incrementNanos, String fen);
+
+		/**
+		 * @param move the move as a 16 bit {@link com.github.michaelgoodwin.chess.CompactMove}
+		 * @param clockNanos time the mover had left after the move, including the increment
+		 */
+		void move(long gameId, short move, long clockNanos);
+
+		/**
+		 * @param result one of the {@link PgnWriter} result constants
+		 */
+		void end(long gameId, String result);
+
+		/**
+		 * Records that ids up to this one have been given out, even if no game with it is left in the journal
+		 */
+		void idMark(long gameId);
+	}
+
+	private final Path path;
+	private final FileChannel channel;
+	private final Thread flusher;
+
+	private final Object lock = new Object();
+	private final CRC32C crc = new CRC32C();
+	// Records collect in the active buffer while the flushing buffer is written, each with the future of its append
+	private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private ByteBuffer flushing = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private List<CompletableFuture<Void>> activeWaiters = new ArrayList<>();
+	private List<CompletableFuture<Void>> flushingWaiters = new ArrayList<>();
+	// Position in the active buffer of the record being appended
+	private int recordStart;
+	private boolean flusherIdle;
+	private boolean closed;
+	// Set once a write fails, every later append fails with it
+	private IOException failure;
+	// Only used by the flusher thread
+	private long size;
+
+	/**
+	 * Opens a journal for appending, creating it if it doesn't exist and cutting off a torn record at the end
+	 * @param path journal file
+	 * @param threadFactory creates the flusher thread
+	 * @throws IOException if the file can't be opened or isn't a journal
+	 */
+	public MoveJournal(final Path path, final ThreadFactory threadFactory) throws IOException
+	{
+		this.path = path;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			if (channel.size() == 0)
+			{
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+					.putLong(MAGIC)
+					.putInt(VERSION)
+					.putInt(0);
+				header.flip();
+				while (header.hasRemaining())
+				{
+					channel.write(header, HEADER_SIZE - header.remaining());
+				}
+				channel.force(true);
+				size = HEADER_SIZE;
+			}
+			else
+			{
+				size = read(channel, path, null);
+				if (channel.size() != size)
+				{
+					log.warn("Dropping {} bytes of torn records from the end of {}", channel.size() - size, path);
+					channel.truncate(size);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+
+		flusher = threadFactory.newThread(this::flush);
+		flusher.start();
+	}
+
+	/**
+	 * Reads every intact record of a journal
+	 * @param path journal file, a missing file has no records
+	 * @param visitor receives the records
+	 * @throws IOException if the file can't be read or isn't a journal
+	 */
+	public static void read(final Path path, final Visitor visitor) throws IOException
+	{
+		if (!path.toFile().exists())
+		{
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			read(channel, path, visitor);
+		}
+	}
+
+	/**
+	 * @return offset just past the last intact record
+	 */
+	private static long read(final FileChannel channel, final Path path, final Visitor visitor) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.limit(0);
+		if (fill(channel, buffer, 0) < HEADER_SIZE || buffer.getLong(0) != MAGIC)
+		{
+			throw new IOException(path + " is not a move journal");
+		}
+		final int version = buffer.getInt(Long.BYTES);
+		if (version < MIN_VERSION || version > VERSION)
+		{
+			throw new IOException(path + " is journal version " + version);
+		}
+		buffer.position(HEADER_SIZE);
+		long offset = HEADER_SIZE;
+
+		final CRC32C crc = new CRC32C();
+		while (true)
+		{
+			if (buffer.remaining() < RECORD_HEADER_SIZE + MAX_CHECKED_LENGTH)
+			{
+				// Slide what is left to the front and read more, records never straddle the end of the buffer
+				buffer.compact();
+				buffer.flip();
+				fill(channel, buffer, offset + buffer.limit());
+			}
+			if (buffer.remaining() < RECORD_HEADER_SIZE)
+			{
+				return offset;
+			}
+
+			final int start = buffer.position();
+			final int length = buffer.getInt(start);
+			if (length < MIN_CHECKED_LENGTH || length > MAX_CHECKED_LENGTH
+				|| buffer.remaining() < RECORD_HEADER_SIZE + length)
+			{
+				return offset;
+			}
+
+			final ByteBuffer checked = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			checked.position(start + RECORD_HEADER_SIZE).limit(start + RECORD_HEADER_SIZE + length);
+			crc.reset();
+			crc.update(checked.duplicate());
+			if ((int) crc.getValue() != buffer.getInt(start + Integer.BYTES) || !visit(checked, visitor))
+			{
+				return offset;
+			}
+
+			buffer.position(start + RECORD_HEADER_SIZE + length);
+			offset += RECORD_HEADER_SIZE + length;
+		}
+	}
+
+	/**
+	 * Appends to the buffer from the file until it is full or the file ends
+	 * @param buffer buffer in read mode, left in read mode with the new bytes after the old ones
+	 * @return bytes now in the buffer
+	 */
+	private static int fill(final FileChannel channel, final ByteBuffer buffer, final long offset) throws IOException
+	{
+		final int position = buffer.position();
+		buffer.position(buffer.limit()).limit(buffer.capacity());
+		long read = offset;
+		while (buffer.hasRemaining())
+		{
+			final int count = channel.read(buffer, read);
+			if (count < 0)
+			{
+				break;
+			}
+			read += count;
+		}
+		buffer.flip().position(position);
+		return buffer.remaining();
+	}
+
+	/**
+	 * @return false if the record is malformed
+	 */
+	private static boolean visit(final ByteBuffer record, final Visitor visitor)
+	{
+		try
+		{
+			final byte type = record.get();
+			final long gameId = record.getLong();
+			switch (type)
+			{
+				case START:
+				{
+					final long startingTime = record.getLong();
+					final long increment = record.getLong();
+					final int whiteElo = record.getInt();
+					final int blackElo = record.getInt();
+					final String whiteName = readString(record);
+					final String blackName = readString(record);
+					final String fen = readString(record);
+					if (visitor != null)
+					{
+						visitor.start(gameId, whiteName, whiteElo, blackName, blackElo, startingTime, increment,
+							fen.isEmpty() ? null : fen);
+					}
+					return true;
+				}
+				case MOVE:
+				{
+					final short move = record.getShort();
+					final long clock = record.getLong();
+					if (visitor != null)
+					{
+						visitor.move(gameId, move, clock);
+					}
+					return true;
+				}
+				case END:
+				{
+					final byte result = record.get();
+					if (visitor != null)
+					{
+						visitor.end(gameId, result >= 0 && result < RESULTS.length ? RESULTS[result]
+							: PgnWriter.UNFINISHED);
+					}
+					return true;
+				}
+				case ID_MARK:
+				{
+					if (visitor != null)
+					{
+						visitor.idMark(gameId);
+					}
+					return true;
+				}
+				default:
+					return false;
+			}
+		}
+		catch (RuntimeException e)
+		{
+			// Lengths inside the record run past its end
+			return false;
+		}
+	}
+
+	private static String readString(final ByteBuffer record)
+	{
+		final byte[] bytes = new byte[Byte.toUnsignedInt(record.get())];
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends the start of a game
+	 * @param fen starting position, or null for the standard starting position
+	 * @return completes once the record is on disk
+	 */
+	public CompletableFuture<Void> appendStart(final long gameId, final String whiteName, final int whiteElo,
+		final String blackName, final int blackElo, final long startingTimeNanos, final long incrementNanos,
+		final String fen)
+	{
+		final byte[] white = encode(whiteName);
+		final byte[] black = encode(blackName);
+		final byte[] start = encode(fen);
+		synchronized (lock)
+		{
+			final ByteBuffer record = beginRecord(START, gameId,
+				Long.BYTES * 2 + Integer.BYTES * 2 + 3 + white.length + black.length + start.length);
+			if (record == null)
+			{
+				return failed();
+			}
+			record.putLong(startingTimeNanos)
+				.putLong(incrementNanos)
+				.putInt(whiteElo)
+				.putInt(blackElo)
+				.put((byte) white.length).put(white)
+				.put((byte) black.length).put(black)
+				.put((byte) start.length).put(start);
+			return endRecord();
+		}
+	}
+
+	/**
+	 * Appends a move
+	 * @param move the move as a 16 bit {@link com.github.michaelgoodwin.chess.CompactMove}
+	 * @param clockNanos time the mover has left after the move, including the increment
+	 * @return completes once the record is on disk
+	 */
+	public CompletableFuture<Void> appendMove(final long gameId, final short move, final long clockNanos)
+	{
+		synchronized (lock)
+		{
+			final ByteBuffer record = beginRecord(MOVE, gameId, Short.BYTES + Long.BYTES);
+			if (record == null)
+			{
+				return failed();
+			}
+			record.putShort(move).putLong(clockNanos);
+			return endRecord();
+		}
+	}
+
+	/**
+	 * Appends the end of a game
+	 * @param result one of the {@link PgnWriter} result constants
+	 * @return completes once the record is on disk
+	 */
+	public CompletableFuture<Void> appendEnd(final long gameId, final String result)
+	{
+		synchronized (lock)
+		{
+			final ByteBuffer record = beginRecord(END, gameId, 1);
+			if (record == null)
+			{
+				return failed();
+			}
+			record.put(encodeResult(result));
+			return endRecord();
+		}
+	}
+
+	/**
+	 * Appends a mark that ids up to the given one have been used, so they aren't given out again once their games are
+	 * compacted away
+	 * @return completes once the record is on disk
+	 */
+	public CompletableFuture<Void> appendIdMark(final long gameId)
+	{
+		synchronized (lock)
+		{
+			final ByteBuffer record = beginRecord(ID_MARK, gameId, 0);
+			if (record == null)
+			{
+				return failed();
+			}
+			return endRecord();
+		}
+	}
+
+	/**
+	 * Makes room for a record in the active buffer and writes its type and game id, must hold the lock
+	 * @return the active buffer, or null if the journal is closed or broken
+	 */
+	private ByteBuffer beginRecord(final byte type, final long gameId, final int fieldsLength)
+	{
+		final int length = RECORD_HEADER_SIZE + MIN_CHECKED_LENGTH + fieldsLength;
+		while (!closed && failure == null && active.remaining() < length)
+		{
+			// Wait for the flusher to swap in the empty buffer
+			lock.notifyAll();
+			try
+			{
+				lock.wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		if (closed || failure != null)
+		{
+			return null;
+		}
+
+		recordStart = active.position();
+		active.putInt(length - RECORD_HEADER_SIZE)
+			.putInt(0)
+			.put(type)
+			.putLong(gameId);
+		return active;
+	}
+
+	/**
+	 * Fills in the CRC of the record just written and queues it for the flusher, must hold the lock
+	 */
+	private CompletableFuture<Void> endRecord()
+	{
+		final ByteBuffer checked = active.duplicate();
+		checked.position(recordStart + RECORD_HEADER_SIZE).limit(active.position());
+		crc.reset();
+		crc.update(checked);
+		active.putInt(recordStart + Integer.BYTES, (int) crc.getValue());
+
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		activeWaiters.add(future);
+		if (flusherIdle)
+		{
+			lock.notifyAll();
+		}
+		return future;
+	}
+
+	private CompletableFuture<Void> failed()
+	{
+		return CompletableFuture.failedFuture(failure != null ? new UncheckedIOException(failure)
+			: new IllegalStateException("Journal " + path + " is closed"));
+	}
+
+	private void flush()
+	{
+		while (true)
+		{
+			synchronized (lock)
+			{
+				while (active.position() == 0 && !closed)
+				{
+					flusherIdle = true;
+					try
+					{
+						lock.wait();
+					}
+					catch (InterruptedException e)
+					{
+						// Only close stops the flusher, records already appended still have to be written
+					}
+				}
+				flusherIdle = false;
+				if (active.position() == 0)
+				{
+					return;
+				}
+
+				final ByteBuffer buffer = flushing;
+				flushing = active;
+				active = buffer;
+				final List<CompletableFuture<Void>> waiters = flushingWaiters;
+				flushingWaiters = activeWaiters;
+				activeWaiters = waiters;
+				// Appenders waiting for room can continue in the empty buffer
+				lock.notifyAll();
+			}
+
+			IOException error = null;
+			try
+			{
+				flushing.flip();
+				while (flushing.hasRemaining())
+				{
+					size += channel.write(flushing, size);
+				}
+				channel.force(false);
+			}
+			catch (IOException e)
+			{
+				error = e;
+				log.error("Unable to write journal {}", path, e);
+				synchronized (lock)
+				{
+					failure = e;
+					lock.notifyAll();
+				}
+			}
+			flushing.clear();
+
+			for (final CompletableFuture<Void> waiter : flushingWaiters)
+			{
+				if (error == null)
+				{
+					waiter.complete(null);
+				}
+				else
+				{
+					waiter.completeExceptionally(new UncheckedIOException(error));
+				}
+			}
+			flushingWaiters.clear();
+		}
+	}
+
+	/**
+	 * Writes everything already appended, then closes the file. Later appends fail
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (lock)
+		{
+			closed = true;
+			lock.notifyAll();
+		}
+		try
+		{
+			flusher.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+
+	private static byte[] encode(final String value)
+	{
+		if (value == null)
+		{
+			return new byte[0];
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		// Lengths are stored in a byte, longer values are cut short
+		return bytes.length <= MAX_STRING_LENGTH ? bytes : Arrays.copyOf(bytes, MAX_STRING_LENGTH);
+	}
+
+	private static byte encodeResult(final String result)
+	{
+		for (int i = 0; i < RESULTS.length; i++)
+		{
+			if (RESULTS[i].equals(result))
+			{
+				return (byte) i;
+			}
+		}
+		return 0;
+	}
+}
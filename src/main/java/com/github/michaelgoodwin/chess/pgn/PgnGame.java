@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.pgn;
+
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.Player;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * A game read by {@link PgnReader}.
+ * Moves are kept as 16 bit {@link com.github.michaelgoodwin.chess.CompactMove}s so millions of games fit in memory
+ */
+@Value
+public class PgnGame
+{
+	// Tag pairs in the order they appeared, empty if the reader skipped them
+	Map<String, String> tags;
+	// Starting position from the FEN tag, null for the standard starting position
+	String fen;
+	// Empty if the reader skipped the movetext
+	short[] moves;
+	// One of the PgnWriter result constants
+	String result;
+
+	public String getTag(final String name)
+	{
+		return tags.get(name);
+	}
+
+	/**
+	 * Replays the moves into a {@link Game}, see {@link Game#replay(Player, Player, String, short[])}
+	 * @param whitePlayer white player
+	 * @param blackPlayer black player
+	 * @return the game with every move played
+	 */
+	public Game toGame(final Player whitePlayer, final Player blackPlayer)
+	{
+		return Game.replay(whitePlayer, blackPlayer, fen, moves);
+	}
+}
@@ -0,0 +1,888 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.pgn;
+
+import com.github.michaelgoodwin.chess.Attacks;
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.MoveGenerator;
+import com.github.michaelgoodwin.chess.Perft;
+import com.github.michaelgoodwin.chess.Position;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streaming Portable Game Notation parser.
+ * Reads the source through a fixed size buffer (which only grows for a single game larger than it) and parses
+ * straight from the bytes, SAN moves are resolved against the live position with attack set lookups instead of
+ * generating every legal move (only moves out of check and en passant captures are checked against the legal moves).
+ * Games that contain a move which can't be played are skipped and counted.
+ * Not thread safe, use {@link #games(FileChannel, boolean, boolean, boolean)} to parse a file on several threads.
+ */
+@Slf4j
+public class PgnReader
+{
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	// No real game comes close, so a buffer this large means the games can't be told apart
+	private static final int MAX_BUFFER_SIZE = 1 << 28;
+	private static final Map<String, String> NO_TAGS = Collections.emptyMap();
+	private static final short[] NO_MOVES = new short[0];
+	private static final Position START = new Position();
+
+	static
+	{
+		START.setFen(Perft.START_FEN);
+	}
+
+	// Either a channel read from start to end, or a range of a file read with positional reads
+	private final ReadableByteChannel channel;
+	private final FileChannel file;
+	private long filePosition;
+	private final long fileEnd;
+	private boolean endOfInput;
+	private boolean finished;
+
+	// Unparsed bytes are kept between index 0 and the buffer position, parsing reads the backing array directly
+	private ByteBuffer buffer;
+	private byte[] bytes;
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * Parse the tag pairs, when false only the FEN tag is read (if moves are read)
+	 */
+	@Setter
+	private boolean readTags = true;
+	/**
+	 * Parse and play the movetext, when false moves are skipped without being looked at
+	 */
+	@Setter
+	private boolean readMoves = true;
+	/**
+	 * Number of games skipped because a move couldn't be played
+	 */
+	@Getter
+	private long skippedGames;
+
+	// State of the game being parsed
+	private final Position position = new Position();
+	private boolean positionReady;
+	private short[] moves = new short[256];
+	private final int[] legalMoves = new int[MoveGenerator.MAX_MOVES];
+	private int moveCount;
+	private Map<String, String> tags;
+	private String fen;
+	private boolean inGame;
+	private boolean inMoveText;
+	private boolean invalid;
+
+	/**
+	 * @param channel channel to read until the end
+	 */
+	public PgnReader(final ReadableByteChannel channel)
+	{
+		this(channel, null, 0, Long.MAX_VALUE, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Reads part of a file, the range should start at the beginning of a game and end at the beginning of another game
+	 * or the end of the file. Uses positional reads so several readers can share the channel
+	 * @param file file to read
+	 * @param start offset of the first byte to read
+	 * @param end offset after the last byte to read
+	 */
+	public PgnReader(final FileChannel file, final long start, final long end)
+	{
+		this(null, file, start, end, DEFAULT_BUFFER_SIZE);
+	}
+
+	private PgnReader(final ReadableByteChannel channel, final FileChannel file, final long start, final long end,
+		final int bufferSize)
+	{
+		this.channel = channel;
+		this.file = file;
+		this.filePosition = start;
+		this.fileEnd = end;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+		this.bytes = buffer.array();
+		resetGame();
+	}
+
+	/**
+	 * Streams every game in a file.
+	 * A parallel stream splits the file at game boundaries and parses each part with its own reader
+	 * @param file file to read
+	 * @param parallel true for a parallel stream
+	 * @param readTags parse the tag pairs
+	 * @param readMoves parse the movetext
+	 * @return stream of games, throws {@link java.io.UncheckedIOException} if reading fails
+	 * @throws IOException if the file size can't be read
+	 */
+	public static Stream<PgnGame> games(final FileChannel file, final boolean parallel, final boolean readTags,
+		final boolean readMoves) throws IOException
+	{
+		return StreamSupport.stream(new PgnSpliterator(file, 0, file.size(), readTags, readMoves), parallel);
+	}
+
+	/**
+	 * Reads every remaining game
+	 * @param consumer called for each game
+	 * @throws IOException if reading fails
+	 */
+	public void readAll(final Consumer<? super PgnGame> consumer) throws IOException
+	{
+		while (readChunk(consumer))
+		{
+			// Keep reading
+		}
+	}
+
+	/**
+	 * Fills the buffer and parses every complete game in it
+	 * @param consumer called for each game
+	 * @return false once the end of the input has been reached and every game has been passed to a consumer
+	 * @throws IOException if reading fails, or no game start was found in {@value #MAX_BUFFER_SIZE} bytes
+	 */
+	public boolean readChunk(final Consumer<? super PgnGame> consumer) throws IOException
+	{
+		if (finished)
+		{
+			return false;
+		}
+
+		while (buffer.hasRemaining() && fill())
+		{
+			// Keep reading until the buffer is full or the input ends
+		}
+
+		final int length = buffer.position();
+		final int cut = endOfInput ? length : lastGameStart(length);
+		if (cut == 0)
+		{
+			// A single game is larger than the buffer
+			if (buffer.capacity() >= MAX_BUFFER_SIZE)
+			{
+				throw new IOException("No game start found in " + buffer.capacity() + " bytes");
+			}
+			buffer.flip();
+			buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer);
+			bytes = buffer.array();
+			return true;
+		}
+
+		parse(cut, consumer);
+		buffer.flip();
+		buffer.position(cut);
+		buffer.compact();
+
+		if (endOfInput)
+		{
+			// The last game might not have a result
+			finishGame(PgnWriter.UNFINISHED, consumer);
+			finished = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if any bytes were read
+	 */
+	private boolean fill() throws IOException
+	{
+		if (endOfInput)
+		{
+			return false;
+		}
+
+		final int read;
+		if (file != null)
+		{
+			final int room = (int) Math.min(buffer.remaining(), fileEnd - filePosition);
+			if (room == 0)
+			{
+				endOfInput = true;
+				return false;
+			}
+
+			final int limit = buffer.limit();
+			buffer.limit(buffer.position() + room);
+			read = file.read(buffer, filePosition);
+			buffer.limit(limit);
+			if (read > 0)
+			{
+				filePosition += read;
+			}
+		}
+		else
+		{
+			read = channel.read(buffer);
+		}
+
+		if (read < 0)
+		{
+			endOfInput = true;
+		}
+		return read > 0;
+	}
+
+	/**
+	 * @return index of the last tag section that starts a game, or 0 if there isn't one
+	 */
+	private int lastGameStart(final int length)
+	{
+		for (int i = length - 1; i > 0; i--)
+		{
+			if (bytes[i] == '[' && isGameStart(bytes, i, 0))
+			{
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Games are separated by a blank line, so a tag at the start of a line after a blank line starts a new game.
+	 * Some writers leave out the blank line, so a tag at the start of a line after one ending in a result also does
+	 * @param bytes bytes to check
+	 * @param index index of a '['
+	 * @param start first index that can be looked at
+	 * @return true if the index starts a game
+	 */
+	static boolean isGameStart(final byte[] bytes, final int index, final int start)
+	{
+		int i = index - 1;
+		if (i < start || bytes[i] != '\n')
+		{
+			return false;
+		}
+		i--;
+		while (i >= start && (bytes[i] == '\r' || bytes[i] == ' ' || bytes[i] == '\t'))
+		{
+			i--;
+		}
+		if (i < start)
+		{
+			return false;
+		}
+		if (bytes[i] == '\n')
+		{
+			return true;
+		}
+
+		// Results are 1-0, 0-1, 1/2-1/2 or *, written after a space or at the start of the line
+		final int end = i + 1;
+		int tokenStart = end;
+		while (tokenStart > start && bytes[tokenStart - 1] != ' ' && bytes[tokenStart - 1] != '\t'
+			&& bytes[tokenStart - 1] != '\n')
+		{
+			tokenStart--;
+		}
+		if (tokenStart == start)
+		{
+			// The line might go on before the part that can be seen
+			return false;
+		}
+		final int length = end - tokenStart;
+		if (length == 1)
+		{
+			return bytes[tokenStart] == '*';
+		}
+		if (length == 3)
+		{
+			return bytes[tokenStart + 1] == '-' && (bytes[tokenStart] == '1' && bytes[tokenStart + 2] == '0'
+				|| bytes[tokenStart] == '0' && bytes[tokenStart + 2] == '1');
+		}
+		return length == 7 && bytes[tokenStart] == '1' && bytes[tokenStart + 1] == '/' && bytes[tokenStart + 3] == '-'
+			&& bytes[tokenStart + 4] == '1' && bytes[tokenStart + 5] == '/';
+	}
+
+	private void parse(final int end, final Consumer<? super PgnGame> consumer)
+	{
+		final byte[] b = bytes;
+		int i = 0;
+		while (i < end)
+		{
+			final byte c = b[i];
+			switch (c)
+			{
+				case ' ':
+				case '\t':
+				case '\r':
+				case '\n':
+					i++;
+					break;
+				case '[':
+					if (inMoveText)
+					{
+						// Previous game ended without a result
+						finishGame(PgnWriter.UNFINISHED, consumer);
+					}
+					i = parseTag(i + 1, end);
+					break;
+				case '{':
+					i = skipPast(i + 1, end, '}');
+					break;
+				case ';':
+				case '%':
+					i = skipPast(i + 1, end, '\n');
+					break;
+				case '(':
+					i = skipVariation(i + 1, end);
+					break;
+				case '*':
+					finishGame(PgnWriter.UNFINISHED, consumer);
+					i++;
+					break;
+				default:
+					final int tokenEnd = tokenEnd(i, end);
+					parseToken(i, tokenEnd, consumer);
+					i = tokenEnd;
+			}
+		}
+	}
+
+	private int skipPast(final int start, final int end, final char terminator)
+	{
+		int i = start;
+		while (i < end && bytes[i] != terminator)
+		{
+			i++;
+		}
+		return i + 1;
+	}
+
+	private int skipVariation(final int start, final int end)
+	{
+		int depth = 1;
+		int i = start;
+		while (i < end && depth > 0)
+		{
+			final byte c = bytes[i++];
+			if (c == '(')
+			{
+				depth++;
+			}
+			else if (c == ')')
+			{
+				depth--;
+			}
+			else if (c == '{')
+			{
+				i = skipPast(i, end, '}');
+			}
+		}
+		return i;
+	}
+
+	private int tokenEnd(final int start, final int end)
+	{
+		int i = start;
+		while (i < end)
+		{
+			final byte c = bytes[i];
+			if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '{' || c == '(' || c == ')' || c == ';'
+				|| c == '[')
+			{
+				break;
+			}
+			i++;
+		}
+		return Math.max(i, start + 1);
+	}
+
+	private void parseToken(final int start, final int end, final Consumer<? super PgnGame> consumer)
+	{
+		final byte first = bytes[start];
+		if (first == '$' || first == ')')
+		{
+			// Numeric annotation glyph or stray variation end
+			return;
+		}
+
+		int san = start;
+		if (first >= '0' && first <= '9')
+		{
+			final String result = result(start, end);
+			if (result != null)
+			{
+				finishGame(result, consumer);
+				return;
+			}
+
+			// Move number, possibly with the move attached (12.e4). Digits without dots are castling written with zeros
+			while (san < end && bytes[san] >= '0' && bytes[san] <= '9')
+			{
+				san++;
+			}
+			if (san < end && bytes[san] == '.')
+			{
+				while (san < end && bytes[san] == '.')
+				{
+					san++;
+				}
+			}
+			else
+			{
+				san = start;
+			}
+		}
+
+		if (san == end)
+		{
+			return;
+		}
+
+		inGame = true;
+		inMoveText = true;
+		if (!readMoves || invalid)
+		{
+			return;
+		}
+
+		if (!positionReady)
+		{
+			positionReady = true;
+			if (fen == null)
+			{
+				position.copyFrom(START);
+			}
+			else
+			{
+				try
+				{
+					position.setFen(fen);
+				}
+				catch (IllegalArgumentException e)
+				{
+					invalid = true;
+					return;
+				}
+			}
+		}
+
+		if (!playSan(san, end))
+		{
+			invalid = true;
+		}
+	}
+
+	private String result(final int start, final int end)
+	{
+		final int length = end - start;
+		if (length == 3 && bytes[start + 1] == '-')
+		{
+			final byte white = bytes[start];
+			final byte black = bytes[start + 2];
+			if (white == '1' && black == '0')
+			{
+				return PgnWriter.WHITE_WINS;
+			}
+			if (white == '0' && black == '1')
+			{
+				return PgnWriter.BLACK_WINS;
+			}
+		}
+		else if (length == 7 && bytes[start] == '1' && bytes[start + 1] == '/' && bytes[start + 3] == '-')
+		{
+			return PgnWriter.DRAW;
+		}
+		return null;
+	}
+
+	private int parseTag(final int start, final int end)
+	{
+		int i = start;
+		while (i < end && bytes[i] == ' ')
+		{
+			i++;
+		}
+		final int nameStart = i;
+		while (i < end && bytes[i] != ' ' && bytes[i] != '"' && bytes[i] != ']')
+		{
+			i++;
+		}
+		final int nameEnd = i;
+
+		while (i < end && bytes[i] != '"' && bytes[i] != ']' && bytes[i] != '\n')
+		{
+			i++;
+		}
+		if (i >= end || bytes[i] != '"')
+		{
+			return skipPast(i, end, '\n');
+		}
+
+		// Copy the value without its escapes
+		int length = 0;
+		i++;
+		while (i < end && bytes[i] != '"')
+		{
+			byte c = bytes[i++];
+			if (c == '\\' && i < end)
+			{
+				c = bytes[i++];
+			}
+			if (length == scratch.length)
+			{
+				scratch = Arrays.copyOf(scratch, length * 2);
+			}
+			scratch[length++] = c;
+		}
+
+		inGame = true;
+		final boolean isFen = nameEnd - nameStart == 3 && bytes[nameStart] == 'F'
+			&& bytes[nameStart + 1] == 'E' && bytes[nameStart + 2] == 'N';
+		if (readTags || (isFen && readMoves))
+		{
+			final String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+			if (isFen)
+			{
+				fen = value;
+			}
+			if (readTags)
+			{
+				if (tags == NO_TAGS)
+				{
+					tags = new LinkedHashMap<>();
+				}
+				tags.put(ascii(nameStart, nameEnd), value);
+			}
+		}
+		return skipPast(i, end, ']');
+	}
+
+	private String ascii(final int start, final int end)
+	{
+		final char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++)
+		{
+			chars[i] = (char) bytes[start + i];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Resolves a SAN move to the piece that made it and plays it
+	 * @return false if no piece can make the move
+	 */
+	private boolean playSan(final int start, final int tokenEnd)
+	{
+		// Drop check, mate and annotation suffixes (Nf3+, e4!?)
+		int end = tokenEnd;
+		while (end > start)
+		{
+			final byte c = bytes[end - 1];
+			if (c != '+' && c != '#' && c != '!' && c != '?')
+			{
+				break;
+			}
+			end--;
+		}
+
+		final int us = position.getSideToMove();
+		final byte first = bytes[start];
+		if (first == 'O' || first == '0')
+		{
+			// O-O or O-O-O, the king moving two squares is castling
+			final int king = position.getKingSquare(us);
+			if (king == Position.NO_SQUARE)
+			{
+				return false;
+			}
+			final boolean queenSide = end - start >= 5;
+			final int right = us == Position.WHITE
+				? queenSide ? Position.WHITE_QUEEN_SIDE : Position.WHITE_KING_SIDE
+				: queenSide ? Position.BLACK_QUEEN_SIDE : Position.BLACK_KING_SIDE;
+			final int rook = queenSide ? king - 4 : king + 3;
+			if ((position.getCastlingRights() & right) == 0
+				|| (Attacks.between(king, rook) & position.getOccupancy()) != 0
+				|| position.isInCheck() || position.isSquareAttacked(queenSide ? king - 1 : king + 1, 1 - us)
+				|| position.isSquareAttacked(queenSide ? king - 2 : king + 2, 1 - us))
+			{
+				return false;
+			}
+			return play(king, queenSide ? king - 2 : king + 2, Position.NO_PIECE);
+		}
+
+		// Promotion is written e8=Q, older files leave out the =
+		int promotion = Position.NO_PIECE;
+		if (end - start >= 3)
+		{
+			final int type = pieceType(bytes[end - 1]);
+			if (type != Position.NO_PIECE)
+			{
+				promotion = type;
+				end--;
+				if (bytes[end - 1] == '=')
+				{
+					end--;
+				}
+			}
+		}
+
+		if (end - start < 2)
+		{
+			return false;
+		}
+		final int toColumn = bytes[end - 2] - 'a';
+		final int toRow = bytes[end - 1] - '1';
+		if (toColumn < 0 || toColumn >= 8 || toRow < 0 || toRow >= 8)
+		{
+			return false;
+		}
+		final int to = Position.square(toColumn, toRow);
+		if ((position.getOccupancy(us) & (1L << to)) != 0)
+		{
+			return false;
+		}
+
+		int type = pieceType(first);
+		int i = start;
+		if (type == Position.NO_PIECE)
+		{
+			type = Position.PAWN;
+		}
+		else
+		{
+			i++;
+		}
+
+		// Whatever is left between the piece and the target square tells apart pieces that can reach it
+		int fromColumn = -1;
+		int fromRow = -1;
+		for (; i < end - 2; i++)
+		{
+			final byte c = bytes[i];
+			if (c >= 'a' && c <= 'h')
+			{
+				fromColumn = c - 'a';
+			}
+			else if (c >= '1' && c <= '8')
+			{
+				fromRow = c - '1';
+			}
+			else if (c != 'x' && c != ':' && c != '-')
+			{
+				return false;
+			}
+		}
+
+		// Only a pawn reaching the last row promotes, one written without the piece becomes a queen
+		if (promotion != Position.NO_PIECE
+			&& (type != Position.PAWN || promotion == Position.KING || toRow != (us == Position.WHITE ? 7 : 0)))
+		{
+			return false;
+		}
+
+		final long own = position.getPieces(us, type);
+		final boolean enPassant = type == Position.PAWN && fromColumn >= 0 && fromColumn != toColumn
+			&& to == position.getEnPassantSquare();
+		long candidates;
+		if (type == Position.PAWN)
+		{
+			if (fromColumn >= 0 && fromColumn != toColumn)
+			{
+				// A pawn only captures diagonally onto an enemy piece or the en passant square
+				if (!enPassant && !position.isOccupied(to))
+				{
+					return false;
+				}
+				candidates = Attacks.pawnAttacksFrom(us ^ 1, to) & own & (Attacks.FILE_A << fromColumn);
+			}
+			else
+			{
+				if (position.isOccupied(to))
+				{
+					return false;
+				}
+				// A pawn push comes from one square behind the target, or two from the starting row over an empty square
+				final int forward = us == Position.WHITE ? -8 : 8;
+				int from = to + forward;
+				if (from >= 0 && from < 64 && (own & (1L << from)) == 0 && !position.isOccupied(from)
+					&& toRow == (us == Position.WHITE ? 3 : 4))
+				{
+					from += forward;
+				}
+				candidates = from >= 0 && from < 64 ? own & (1L << from) : 0;
+			}
+			if (fromRow >= 0)
+			{
+				candidates &= 0xFFL << (fromRow * 8);
+			}
+		}
+		else
+		{
+			candidates = Attacks.pieceAttacks(type, to, position.getOccupancy()) & own;
+			if (fromColumn >= 0)
+			{
+				candidates &= Attacks.FILE_A << fromColumn;
+			}
+			if (fromRow >= 0)
+			{
+				candidates &= 0xFFL << (fromRow * 8);
+			}
+		}
+
+		if (type == Position.KING)
+		{
+			// The king can't hide behind itself from a slider so it leaves the occupancy
+			if (position.isSquareAttacked(to, position.getOccupancy() ^ own, us ^ 1))
+			{
+				return false;
+			}
+		}
+		else
+		{
+			candidates = dropPinned(candidates, to);
+		}
+
+		if (Long.bitCount(candidates) != 1)
+		{
+			return false;
+		}
+		final int from = Long.numberOfTrailingZeros(candidates);
+		if ((enPassant || position.isInCheck()) && !isLegal(from, to))
+		{
+			return false;
+		}
+		return play(from, to, promotion);
+	}
+
+	/**
+	 * Moves out of check have to capture or block the checker, and en passant can uncover a check along the row, so
+	 * those are looked up in the legal moves
+	 */
+	private boolean isLegal(final int from, final int to)
+	{
+		final int count = MoveGenerator.generate(position, legalMoves);
+		for (int i = 0; i < count; i++)
+		{
+			if (CompactMove.from(legalMoves[i]) == from && CompactMove.to(legalMoves[i]) == to)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * SAN only tells apart pieces that can legally move, so pinned pieces that would leave the line to their king
+	 * don't count
+	 */
+	private long dropPinned(final long candidates, final int to)
+	{
+		long pinned = candidates & position.getPinned();
+		long result = candidates;
+		final int king = position.getKingSquare(position.getSideToMove());
+		while (pinned != 0)
+		{
+			final int square = Long.numberOfTrailingZeros(pinned);
+			pinned &= pinned - 1;
+			if ((Attacks.line(king, square) & (1L << to)) == 0)
+			{
+				result &= ~(1L << square);
+			}
+		}
+		return result;
+	}
+
+	private boolean play(final int from, final int to, final int promotion)
+	{
+		if (position.typeAt(from) == Position.NO_PIECE)
+		{
+			return false;
+		}
+
+		final int move = position.encodeMove(from, to, promotion);
+		position.makeMove(move);
+		if (moveCount == moves.length)
+		{
+			moves = Arrays.copyOf(moves, moveCount * 2);
+		}
+		moves[moveCount++] = CompactMove.toShort(move);
+		return true;
+	}
+
+	private static int pieceType(final byte c)
+	{
+		switch (c)
+		{
+			case 'N':
+				return Position.KNIGHT;
+			case 'B':
+				return Position.BISHOP;
+			case 'R':
+				return Position.ROOK;
+			case 'Q':
+				return Position.QUEEN;
+			case 'K':
+				return Position.KING;
+			default:
+				return Position.NO_PIECE;
+		}
+	}
+
+	private void finishGame(final String result, final Consumer<? super PgnGame> consumer)
+	{
+		if (!inGame)
+		{
+			return;
+		}
+
+		if (invalid)
+		{
+			skippedGames++;
+			log.debug("Skipped game with an unplayable move after {} moves, tags {}", moveCount, tags);
+		}
+		else
+		{
+			consumer.accept(new PgnGame(tags, fen, readMoves ? Arrays.copyOf(moves, moveCount) : NO_MOVES, result));
+		}
+		resetGame();
+	}
+
+	private void resetGame()
+	{
+		tags = NO_TAGS;
+		fen = null;
+		moveCount = 0;
+		positionReady = false;
+		inGame = false;
+		inMoveText = false;
+		invalid = false;
+	}
+}
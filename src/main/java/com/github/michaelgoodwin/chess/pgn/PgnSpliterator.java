@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.pgn;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits a PGN file into ranges that start at game boundaries so each range can be parsed on its own thread
+ */
+class PgnSpliterator implements Spliterator<PgnGame>
+{
+	// Ranges smaller than this aren't worth handing to another thread
+	private static final long MIN_SPLIT_SIZE = 4L << 20;
+	// Rough size of a game with its tags, used to estimate how many games are left
+	private static final long AVERAGE_GAME_SIZE = 1024;
+	private static final int SEARCH_WINDOW_SIZE = 64 * 1024;
+
+	private final FileChannel file;
+	private long start;
+	private final long end;
+	private final boolean readTags;
+	private final boolean readMoves;
+
+	private PgnReader reader;
+	private final ArrayDeque<PgnGame> pending = new ArrayDeque<>();
+
+	PgnSpliterator(final FileChannel file, final long start, final long end, final boolean readTags,
+		final boolean readMoves)
+	{
+		this.file = file;
+		this.start = start;
+		this.end = end;
+		this.readTags = readTags;
+		this.readMoves = readMoves;
+	}
+
+	private PgnReader getReader()
+	{
+		if (reader == null)
+		{
+			reader = new PgnReader(file, start, end);
+			reader.setReadTags(readTags);
+			reader.setReadMoves(readMoves);
+		}
+		return reader;
+	}
+
+	@Override
+	public boolean tryAdvance(final Consumer<? super PgnGame> action)
+	{
+		try
+		{
+			boolean more = true;
+			while (pending.isEmpty() && more)
+			{
+				more = getReader().readChunk(pending::add);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+
+		if (pending.isEmpty())
+		{
+			return false;
+		}
+		action.accept(pending.poll());
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(final Consumer<? super PgnGame> action)
+	{
+		while (!pending.isEmpty())
+		{
+			action.accept(pending.poll());
+		}
+
+		try
+		{
+			getReader().readAll(action);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public Spliterator<PgnGame> trySplit()
+	{
+		if (reader != null || end - start < MIN_SPLIT_SIZE * 2)
+		{
+			return null;
+		}
+
+		final long middle;
+		try
+		{
+			middle = findGameStart(start + (end - start) / 2);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+
+		if (middle <= start || middle >= end)
+		{
+			return null;
+		}
+
+		final PgnSpliterator prefix = new PgnSpliterator(file, start, middle, readTags, readMoves);
+		start = middle;
+		return prefix;
+	}
+
+	/**
+	 * @param from offset to start looking from
+	 * @return offset of the first game that starts at or after the offset, or the end of the range
+	 */
+	private long findGameStart(final long from) throws IOException
+	{
+		final ByteBuffer window = ByteBuffer.allocate(SEARCH_WINDOW_SIZE);
+		final byte[] bytes = window.array();
+		// Start a few bytes early so the blank line before a game can be seen
+		long position = Math.max(start, from - 3);
+		while (position < end)
+		{
+			window.clear();
+			window.limit((int) Math.min(window.capacity(), end - position));
+			final int read = file.read(window, position);
+			if (read <= 0)
+			{
+				break;
+			}
+
+			for (int i = 1; i < read; i++)
+			{
+				if (bytes[i] == '[' && position + i >= from && PgnReader.isGameStart(bytes, i, 0))
+				{
+					return position + i;
+				}
+			}
+
+			if (read < 4)
+			{
+				break;
+			}
+			// Overlap the windows so a blank line split between them is still found
+			position += read - 3;
+		}
+		return end;
+	}
+
+	@Override
+	public long estimateSize()
+	{
+		return (end - start) / AVERAGE_GAME_SIZE;
+	}
+
+	@Override
+	public int characteristics()
+	{
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.pgn;
+
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.MoveGenerator;
+import com.github.michaelgoodwin.chess.Perft;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.San;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams games to a {@link Writer} in Portable Game Notation.
+ * Each game is built in a reused buffer and handed to the writer in one call, so exporting thousands of games doesn't
+ * create a String per move or per game. Not thread safe, use one writer per thread.
+ */
+public class PgnWriter implements Closeable, Flushable
+{
+	public static final String WHITE_WINS = "1-0";
+	public static final String BLACK_WINS = "0-1";
+	public static final String DRAW = "1/2-1/2";
+	public static final String UNFINISHED = "*";
+
+	// The PGN export format keeps movetext lines under 80 characters
+	private static final int MAX_LINE_LENGTH = 79;
+	private static final String UNKNOWN = "?";
+	private static final String UNKNOWN_DATE = "????.??.??";
+
+	private final Writer writer;
+	private final Position position = new Position();
+	private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+	private final StringBuilder game = new StringBuilder(4096);
+	private final StringBuilder token = new StringBuilder(16);
+	private final StringBuilder fen = new StringBuilder(128);
+	private char[] chars = new char[4096];
+	private int lineLength;
+
+	public PgnWriter(final Writer writer)
+	{
+		this.writer = writer;
+	}
+
+	/**
+	 * @param channel channel to write UTF-8 encoded PGN to
+	 */
+	public PgnWriter(final WritableByteChannel channel)
+	{
+		this(Channels.newWriter(channel, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes every game, separated by blank lines
+	 * @param games games to write
+	 * @return number of games written
+	 * @throws IOException if the underlying writer fails
+	 */
+	public int writeAll(final Iterable<Game> games) throws IOException
+	{
+		int count = 0;
+		for (final Game g : games)
+		{
+			write(g);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes a game with its tag pairs and movetext, games that don't start from the standard position get SetUp and
+	 * FEN tags. The result is worked out from the final position, games that didn't end in mate, stalemate or the
+	 * fifty move rule are written as unfinished
+	 * @param source game to write
+	 * @throws IOException if the underlying writer fails
+	 */
+	public void write(final Game source) throws IOException
+	{
+		write(source, null);
+	}
+
+	/**
+	 * Writes a game with the result it ended with, a resignation or a flag fall can't be told apart from an unfinished
+	 * game by looking at the final position
+	 * @param source game to write
+	 * @param result one of the result constants, or null to work it out from the final position
+	 * @throws IOException if the underlying writer fails
+	 */
+	public void write(final Game source, final String result) throws IOException
+	{
+		// Replay from the start of the game by taking back every move on a copy of the final position
+		position.copyFrom(source.getBoard().getPosition());
+		final int moveCount = source.getMoveCount();
+		for (int i = 0; i < moveCount; i++)
+		{
+			position.unmakeMove();
+		}
+
+		game.setLength(0);
+		appendTag("Event", UNKNOWN);
+		appendTag("Site", UNKNOWN);
+		appendTag("Date", UNKNOWN_DATE);
+		appendTag("Round", UNKNOWN);
+		appendTag("White", getName(source.getWhitePlayer()));
+		appendTag("Black", getName(source.getBlackPlayer()));
+		// The result is only known at the end so leave room for it and fill it in afterwards
+		final int resultStart = game.length() + "[Result \"".length();
+		appendTag("Result", UNFINISHED);
+		fen.setLength(0);
+		position.appendFen(fen);
+		if (!Perft.START_FEN.contentEquals(fen))
+		{
+			appendTag("SetUp", "1");
+			appendTag("FEN", fen);
+		}
+		game.append('\n');
+
+		lineLength = 0;
+		for (int i = 0; i < moveCount; i++)
+		{
+			final int move = source.getMove(i);
+			token.setLength(0);
+			if (position.getSideToMove() == Position.WHITE)
+			{
+				token.append(position.getFullMoveNumber()).append(". ");
+			}
+			else if (i == 0)
+			{
+				token.append(position.getFullMoveNumber()).append("... ");
+			}
+			San.append(position, move, token, moves);
+			appendToken();
+			position.makeMove(move);
+		}
+
+		final String gameResult = result != null ? result : getResult(position, moves);
+		game.replace(resultStart, resultStart + UNFINISHED.length(), gameResult);
+		token.setLength(0);
+		token.append(gameResult);
+		appendToken();
+		game.append("\n\n");
+
+		final int length = game.length();
+		if (chars.length < length)
+		{
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		game.getChars(0, length, chars, 0);
+		writer.write(chars, 0, length);
+	}
+
+	private static String getName(final Player player)
+	{
+		return player.getUser() == null ? UNKNOWN : player.getUser().getUsername();
+	}
+
+	/**
+	 * Works out the result of a game from its final position.
+	 * Games that didn't end in mate, stalemate or the fifty move rule are unfinished
+	 * @param position final position of the game
+	 * @param moves scratch array with room for {@link MoveGenerator#MAX_MOVES} moves
+	 * @return one of the result constants
+	 */
+	public static String getResult(final Position position, final int[] moves)
+	{
+		if (MoveGenerator.generate(position, moves) == 0)
+		{
+			if (!position.isInCheck())
+			{
+				return DRAW;
+			}
+			return position.getSideToMove() == Position.WHITE ? BLACK_WINS : WHITE_WINS;
+		}
+		return position.getHalfMoveClock() >= 100 ? DRAW : UNFINISHED;
+	}
+
+	private void appendTag(final String name, final CharSequence value)
+	{
+		game.append('[').append(name).append(" \"");
+		for (int i = 0; i < value.length(); i++)
+		{
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				game.append('\\');
+			}
+			game.append(c);
+		}
+		game.append("\"]\n");
+	}
+
+	/**
+	 * Adds the token to the movetext, wrapping onto a new line if it would make the current one too long
+	 */
+	private void appendToken()
+	{
+		if (lineLength > 0 && lineLength + 1 + token.length() > MAX_LINE_LENGTH)
+		{
+			game.append('\n');
+			lineLength = 0;
+		}
+		else if (lineLength > 0)
+		{
+			game.append(' ');
+			lineLength++;
+		}
+		game.append(token);
+		lineLength += token.length();
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		writer.close();
+	}
+}
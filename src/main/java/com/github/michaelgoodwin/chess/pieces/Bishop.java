@@ -24,8 +24,9 @@
  */
 package com.github.michaelgoodwin.chess.pieces;
 
+import com.github.michaelgoodwin.chess.Attacks;
+import com.github.michaelgoodwin.chess.Square;
 import com.github.michaelgoodwin.chess.Team;
-import java.awt.Point;
 import java.util.Set;
 import lombok.EqualsAndHashCode;
 
@@ -38,17 +39,17 @@ public class Bishop extends Piece
 	}
 
 	@Override
-	public boolean canMoveToPoint(Point point, Piece[][] board)
+	public boolean canMoveToPoint(Square square, Piece[][] board)
 	{
-		// Must move to a new point
-		if (getLocation().equals(point))
+		// Must move to a new square
+		if (getLocation().equals(square))
 		{
 			return false;
 		}
 
 		// A bishop can only move diagonally
-		int xDiff = getLocation().x - point.x;
-		int yDiff = getLocation().y - point.y;
+		int xDiff = getLocation().x - square.x;
+		int yDiff = getLocation().y - square.y;
 
 		// Not moving diagonally
 		if (Math.abs(xDiff) != Math.abs(yDiff))
@@ -57,7 +58,7 @@ public class Bishop extends Piece
 		}
 
 		// Check if path to target location is clear
-		if (!canReachDestination(point, board))
+		if (!canReachDestination(square, board))
 		{
 			return false;
 		}
@@ -67,16 +68,10 @@ public class Bishop extends Piece
 	}
 
 	@Override
-	public Set<Point> getPossibleMoves(Point point, Piece[][] board)
+	public Set<Square> getPossibleMoves(Square square, Piece[][] board)
 	{
-		final int[][] offsets = {
-			{1, 1}, // Up & Right
-			{-1, 1}, // Up & Left
-			{1, -1}, // Down & Right
-			{-1, -1} // Down & Left
-		};
-
-		return getPossibleMovesFromOffsets(point, board, offsets);
+		final long occupied = getOccupancy(Attacks.bishopAttacks(square.index, 0), board);
+		return getPossibleMovesFromAttacks(Attacks.bishopAttacks(square.index, occupied), board);
 	}
 
 	@Override
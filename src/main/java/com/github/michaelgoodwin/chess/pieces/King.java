@@ -24,10 +24,9 @@
  */
 package com.github.michaelgoodwin.chess.pieces;
 
-import com.github.michaelgoodwin.chess.GameBoard;
+import com.github.michaelgoodwin.chess.Attacks;
+import com.github.michaelgoodwin.chess.Square;
 import com.github.michaelgoodwin.chess.Team;
-import java.awt.Point;
-import java.util.HashSet;
 import java.util.Set;
 import lombok.EqualsAndHashCode;
 
@@ -43,25 +42,15 @@ public class King extends Piece
 	}
 
 	@Override
-	public boolean canMoveToPoint(Point point, Piece[][] board)
+	public boolean canMoveToPoint(Square square, Piece[][] board)
 	{
-		// Must move to a new point
-		if (getLocation().equals(point))
-		{
-			return false;
-		}
-
 		// A king can move one tile in any direction
-		final int xDiff = Math.abs(getLocation().x - point.x);
-		final int yDiff = Math.abs(getLocation().y - point.y);
-
-		// Moved more than possible
-		if (xDiff > 1 || yDiff > 1)
+		if ((Attacks.kingAttacksFrom(getLocation().index) & (1L << square.index)) == 0)
 		{
 			return false;
 		}
 
-		final Piece targetPiece = board[point.x][point.y];
+		final Piece targetPiece = board[square.x][square.y];
 		if (targetPiece != null)
 		{
 			if (targetPiece.getTeam().equals(getTeam()))
@@ -70,45 +59,16 @@ public class King extends Piece
 			}
 		}
 
-		// TODO: Check if we'd be in check by moving here (or captured piece would be protected)
-		return true;
+		// Can't move into check, which includes capturing a protected piece
+		return !isAttacked(square, getLocation(), board);
 	}
 
-	// Similar to Piece::getPossibleMovesFromOffset but can only move 1 tile and can't move into check
 	@Override
-	public Set<Point> getPossibleMoves(Point point, Piece[][] board)
+	public Set<Square> getPossibleMoves(Square square, Piece[][] board)
 	{
-		final int[][] offsets = {
-			{0, 1}, // Up
-			{0, -1}, // Down
-			{-1, 0}, // Left
-			{1, 0}, // Right
-
-			{1, 1}, // Up & Right
-			{-1, 1}, // Up & Left
-			{1, -1}, // Down & Right
-			{-1, -1} // Down & Left
-		};
-
-		final Set<Point> points = new HashSet<>();
-		for (int[] o : offsets)
-		{
-			final Point p = new Point(point.x + o[0], point.y + o[1]);
-			if (p.x > GameBoard.SIZE || p.y > GameBoard.SIZE)
-			{
-				// Out of bounds
-				continue;
-			}
-
-			final Piece piece = board[p.x][p.y];
-			if (piece == null || !piece.getTeam().equals(getTeam()))
-			{
-				// TODO: Check if this tile is being attacked by another unit (would put us in check)
-				points.add(p);
-			}
-		}
-
-		return points;
+		final Set<Square> squares = getPossibleMovesFromAttacks(Attacks.kingAttacksFrom(square.index), board);
+		squares.removeIf(p -> isAttacked(p, square, board));
+		return squares;
 	}
 
 	@Override
@@ -24,12 +24,10 @@
  */
 package com.github.michaelgoodwin.chess.pieces;
 
-import com.github.michaelgoodwin.chess.GameBoard;
+import com.github.michaelgoodwin.chess.Attacks;
+import com.github.michaelgoodwin.chess.Square;
 import com.github.michaelgoodwin.chess.Team;
-import java.awt.Point;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import lombok.EqualsAndHashCode;
 
 @EqualsAndHashCode(callSuper = true)
@@ -41,25 +39,15 @@ public class Knight extends Piece
 	}
 
 	@Override
-	public boolean canMoveToPoint(Point point, Piece[][] board)
+	public boolean canMoveToPoint(Square square, Piece[][] board)
 	{
-		// Must move to a new point
-		if (getLocation().equals(point))
-		{
-			return false;
-		}
-
 		// A knight moves in an L shape, which means 2 in either X/Y and 1 in either X/Y;
-		final int xDiff = Math.abs(getLocation().x - point.x);
-		final int yDiff = Math.abs(getLocation().y - point.y);
-
-		final boolean validShape = (xDiff == 2 && yDiff == 1) || (xDiff == 1 && yDiff == 2);
-		if (!validShape)
+		if ((Attacks.knightAttacksFrom(getLocation().index) & (1L << square.index)) == 0)
 		{
 			return false;
 		}
 
-		final Piece piece = board[point.x][point.y];
+		final Piece piece = board[square.x][square.y];
 		if (piece != null && piece.getTeam().equals(getTeam()))
 		{
 			return false;
@@ -70,32 +58,10 @@ public class Knight extends Piece
 	}
 
 	@Override
-	public Set<Point> getPossibleMoves(Point point, Piece[][] board)
+	public Set<Square> getPossibleMoves(Square square, Piece[][] board)
 	{
-		return Stream.of(
-			// Possible moves left/right (Horizontal L)
-			new Point(point.x + 2, point.y + 1),
-			new Point(point.x + 2, point.y - 1),
-			new Point(point.x - 2, point.y + 1),
-			new Point(point.x - 2, point.y - 1),
-			// Possible moves up/down (Vertical L)
-			new Point(point.x + 1, point.y + 2),
-			new Point(point.x + 1, point.y - 2),
-			new Point(point.x - 1, point.y + 2),
-			new Point(point.x - 1, point.y - 2)
-		)
-			.filter(p ->
-				{
-					if (p.x >= GameBoard.SIZE || p.y >= GameBoard.SIZE)
-					{
-						return false;
-					}
-
-					final Piece piece = board[p.x][p.y];
-					return piece == null || !piece.getTeam().equals(getTeam());
-				})
-			.collect(Collectors.toSet());
 		// TODO: Check if the king would be in check after moving (Pinned piece)
+		return getPossibleMovesFromAttacks(Attacks.knightAttacksFrom(square.index), board);
 	}
 
 	@Override
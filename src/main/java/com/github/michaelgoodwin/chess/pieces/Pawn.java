@@ -24,10 +24,10 @@
  */
 package com.github.michaelgoodwin.chess.pieces;
 
-import com.github.michaelgoodwin.chess.GameBoard;
+import com.github.michaelgoodwin.chess.Attacks;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.Square;
 import com.github.michaelgoodwin.chess.Team;
-import java.awt.Point;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import lombok.EqualsAndHashCode;
@@ -36,55 +36,34 @@ import lombok.Setter;
 @EqualsAndHashCode(callSuper = true)
 public class Pawn extends Piece
 {
-	private static final int[][] WHITE_ATTACK_OFFSETS = {
-		{1, 1}, // Up & Right
-		{-1, 1} // Up & Left
-	};
-	private static final int[][] BLACK_ATTACK_OFFSETS = {
-		{1, -1}, // Down & Right
-		{-1, -1} // Down & Left
-	};
-	private static final int[] WHITE_MOVE_OFFSET = {0, 1};
-	private static final int[] BLACK_MOVE_OFFSET = {0, -1};
-
 	@Setter
 	private boolean hasMoved = false;
 	@Setter
 	// TODO: Have this be tracked by the game
 	private boolean canPassant = false;
 
+	// Index into the Attacks tables and the direction this pawn moves along the Y axis, fixed by the team
+	private final int teamIndex;
+	private final int forward;
+
 	public Pawn(Team team)
 	{
 		super(team);
+		teamIndex = Position.team(team);
+		forward = team == Team.WHITE ? 1 : -1;
 	}
 
 	@Override
-	public boolean canMoveToPoint(Point point, Piece[][] board)
+	public boolean canMoveToPoint(Square square, Piece[][] board)
 	{
-		int[] forwardOffset;
-		int[][] attackOffsets;
-		switch (getTeam())
-		{
-			case WHITE:
-				forwardOffset = WHITE_MOVE_OFFSET;
-				attackOffsets = WHITE_ATTACK_OFFSETS;
-				break;
-			case BLACK:
-				forwardOffset = BLACK_MOVE_OFFSET;
-				attackOffsets = BLACK_ATTACK_OFFSETS;
-				break;
-			default:
-				return false;
-		}
-
-		final int offset[] = {getLocation().x - point.x, getLocation().y - point.y};
+		final Square location = getLocation();
 
 		// A pawn can only move towards the enemies side of the board on the Y axis unless it is capturing another piece.
 		// If it is capturing another piece it must move diagonally (D5->C6/E6 for white or D5->C4/E4 for black)
 		// If a pawn hasn't moved yet it can move 2 tiles granted the tiles are open
 
 		// Attempting to move forward two squares
-		final boolean jumpForward = offset[0] == forwardOffset[0] && offset[1] == (forwardOffset[1] * 2);
+		final boolean jumpForward = square.x == location.x && square.y - location.y == forward * 2;
 		if (jumpForward)
 		{
 			if (hasMoved)
@@ -93,8 +72,8 @@ public class Pawn extends Piece
 			}
 
 			// Check that the tile we are attempting to skip is empty
-			final Point forwardPoint = new Point(getLocation().x + forwardOffset[0], getLocation().y + forwardOffset[1]);
-			final Piece forwardPiece = board[forwardPoint.x][forwardPoint.y];
+			final Square forwardSquare = location.offset(0, forward);
+			final Piece forwardPiece = board[forwardSquare.x][forwardSquare.y];
 			if (forwardPiece != null)
 			{
 				return false;
@@ -102,7 +81,7 @@ public class Pawn extends Piece
 			// Continue below to check target location
 		}
 
-		Piece targetPiece = board[point.x][point.y];
+		Piece targetPiece = board[square.x][square.y];
 		if (targetPiece != null && targetPiece.getTeam().equals(getTeam()))
 		{
 			// Tile is occupied by an entity that can't be captured
@@ -110,7 +89,7 @@ public class Pawn extends Piece
 		}
 
 		// Attempting to capture a piece
-		if (Arrays.equals(offset, attackOffsets[0]) || Arrays.equals(offset, attackOffsets[1]))
+		if ((Attacks.pawnAttacksFrom(teamIndex, location.index) & (1L << square.index)) != 0)
 		{
 			// A pawn can "en passant capture" an enemy pawn that has moved two tiles on it's last turn.
 			// For Example: White's pawn on d5 can capture the black pawn on c5 if the last move was c7->c5 (blacks pawn)
@@ -123,7 +102,7 @@ public class Pawn extends Piece
 				}
 
 				// Check for target behind target tile
-				final Point passantTarget = new Point(point.x, point.y - forwardOffset[1]);
+				final Square passantTarget = square.offset(0, -forward);
 				targetPiece = board[passantTarget.x][passantTarget.y];
 			}
 
@@ -139,67 +118,50 @@ public class Pawn extends Piece
 	}
 
 	@Override
-	public Set<Point> getPossibleMoves(Point point, Piece[][] board)
+	public Set<Square> getPossibleMoves(Square square, Piece[][] board)
 	{
-		final Set<Point> points = new HashSet<>();
+		final Set<Square> squares = new HashSet<>();
 
-		int[] forwardOffset;
-		int[][] attackOffsets;
-		switch (getTeam())
+		final Square forwardSquare = square.offset(0, forward);
+		if (forwardSquare != null)
 		{
-			case WHITE:
-				forwardOffset = WHITE_MOVE_OFFSET;
-				attackOffsets = WHITE_ATTACK_OFFSETS;
-				break;
-			case BLACK:
-				forwardOffset = BLACK_MOVE_OFFSET;
-				attackOffsets = BLACK_ATTACK_OFFSETS;
-				break;
-			default:
-				return points;
-		}
-
-
-		final Point forward = new Point(point.x + forwardOffset[0], + point.y + forwardOffset[1]);
-		if (forward.x < GameBoard.SIZE && forward.y < GameBoard.SIZE)
-		{
-			final Piece forwardPiece = board[forward.x][forward.y];
+			final Piece forwardPiece = board[forwardSquare.x][forwardSquare.y];
 			if (forwardPiece == null)
 			{
-				points.add(forward);
+				squares.add(forwardSquare);
 			}
 		}
 
-		for (int[] o : attackOffsets)
+		long attacks = Attacks.pawnAttacksFrom(teamIndex, square.index);
+		while (attacks != 0)
 		{
-			final Point attackPoint = new Point(point.x + o[0], point.y + o[1]);
-			if (attackPoint.x < GameBoard.SIZE && attackPoint.y < GameBoard.SIZE)
+			final Square attackSquare = Square.of(Long.numberOfTrailingZeros(attacks));
+			attacks &= attacks - 1;
+
+			final Piece attackedPiece = board[attackSquare.x][attackSquare.y];
+			if (attackedPiece == null)
 			{
-				final Piece attackedPiece = board[attackPoint.x][attackPoint.y];
-				if (attackedPiece == null)
+				if (!canPassant)
 				{
-					if (!canPassant)
-					{
-						continue;
-					}
-
-					// Check for target behind target tile
-					final Point passantTarget = new Point(attackPoint.x, attackPoint.y - forwardOffset[1]);
-					final Piece targetPiece = board[passantTarget.x][passantTarget.y];
-
-					if (targetPiece instanceof Pawn && !targetPiece.getTeam().equals(getTeam()))
-					{
-						points.add(attackPoint);
-					}
+					continue;
 				}
-				else if (!attackedPiece.getTeam().equals(getTeam()))
+
+				// Check for target behind target tile
+				final Square passantTarget = attackSquare.offset(0, -forward);
+				final Piece targetPiece = board[passantTarget.x][passantTarget.y];
+
+				if (targetPiece instanceof Pawn && !targetPiece.getTeam().equals(getTeam()))
 				{
-					points.add(attackPoint);
+					squares.add(attackSquare);
 				}
 			}
+			else if (!attackedPiece.getTeam().equals(getTeam()))
+			{
+				squares.add(attackSquare);
+			}
 		}
 
 		// TODO: Check if piece is pinned
-		return points;
+		return squares;
 	}
 }
@@ -24,9 +24,11 @@
  */
 package com.github.michaelgoodwin.chess.pieces;
 
+import com.github.michaelgoodwin.chess.Attacks;
 import com.github.michaelgoodwin.chess.GameBoard;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.Square;
 import com.github.michaelgoodwin.chess.Team;
-import java.awt.Point;
 import java.util.HashSet;
 import java.util.Set;
 import lombok.Data;
@@ -37,43 +39,44 @@ import lombok.RequiredArgsConstructor;
 public abstract class Piece
 {
 	private final Team team;
-	private Point location;
+	private Square location;
 
 	/**
-	 * Checks if the piece can move to the desired point on the board
-	 * @param point target location
+	 * Checks if the piece can move to the desired square on the board
+	 * @param square target location
 	 * @param board current game board
 	 * @return can it move there
 	 */
-	public abstract boolean canMoveToPoint(final Point point, final Piece[][] board);
+	public abstract boolean canMoveToPoint(final Square square, final Piece[][] board);
 
 	/**
-	 * Calculates all possible moves from the specified point on the board
-	 * @param point current location
+	 * Calculates all possible moves from the specified square on the board.
+	 * Does not account for pins or checks, use {@link com.github.michaelgoodwin.chess.MoveGenerator} for legal moves
+	 * @param square current location
 	 * @param board current game board
-	 * @return Set of {@link Point}s
+	 * @return Set of {@link Square}s
 	 */
-	public abstract Set<Point> getPossibleMoves(final Point point, final Piece[][] board);
+	public abstract Set<Square> getPossibleMoves(final Square square, final Piece[][] board);
 
 	/**
-	 * Calculates all possible moves from the specified point on the board by applying the given offsets
+	 * Calculates all possible moves from the specified square on the board by applying the given offsets
 	 * Continues applying the offset until it reaches the edge of the board, an occupied friendly tile, or would capture an enemy unit
-	 * @param point current location
+	 * @param square current location
 	 * @param board current game board
 	 * @param offsets the offsets to be applied
-	 * @return Set of {@link Point}s
+	 * @return Set of {@link Square}s
 	 */
-	public Set<Point> getPossibleMovesFromOffsets(final Point point, final Piece[][] board, final int[][] offsets)
+	public Set<Square> getPossibleMovesFromOffsets(final Square square, final Piece[][] board, final int[][] offsets)
 	{
-		final Set<Point> points = new HashSet<>();
+		final Set<Square> squares = new HashSet<>();
 
 		for (int[] o : offsets)
 		{
-			Point p = point;
+			Square p = square;
 			for (int i = 0; i < GameBoard.SIZE; i++)
 			{
-				p = new Point(p.x + o[0], p.y + o[1]);
-				if (p.x > GameBoard.SIZE || p.y > GameBoard.SIZE)
+				p = p.offset(o[0], o[1]);
+				if (p == null)
 				{
 					// Out of bounds
 					break;
@@ -82,13 +85,13 @@ public abstract class Piece
 				Piece piece = board[p.x][p.y];
 				if (piece == null)
 				{
-					points.add(p);
+					squares.add(p);
 				}
 				else
 				{
 					if (!piece.getTeam().equals(getTeam()))
 					{
-						points.add(p);
+						squares.add(p);
 					}
 					// Can't go through pieces so can't go any further in this direction
 					break;
@@ -97,72 +100,130 @@ public abstract class Piece
 		}
 
 		// TODO: Account for being pinned
-		return points;
+		return squares;
 	}
 
 	/**
-	 * Checks if the piece can reach the target point, target point should be in a straight line
-	 * Will return false if there are pieces between or on your target point.
-	 * @param point
-	 * @param board
-	 * @return
+	 * Calculates all possible moves from an attack set, such as one from the {@link Attacks} tables
+	 * Every attacked square is kept unless it is occupied by a friendly unit
+	 * @param attacks attacked squares
+	 * @param board current game board
+	 * @return Set of {@link Square}s
 	 */
-	public boolean canReachDestination(final Point point, final Piece[][] board)
+	protected Set<Square> getPossibleMovesFromAttacks(final long attacks, final Piece[][] board)
 	{
-		final int xDiff = getLocation().x - point.x;
-		final int yDiff = getLocation().y - point.y;
+		final Set<Square> squares = new HashSet<>();
 
-		int[] offset;
-		// Moving diagonally?
-		if (Math.abs(xDiff) == Math.abs(yDiff))
-		{
-			offset = new int[]{xDiff > 0 ? 1 : -1, yDiff > 0 ? 1 : -1};
-		}
-		else
+		long targets = attacks;
+		while (targets != 0)
 		{
-			offset = new int[]{0, 0};
-			if (xDiff != 0)
-			{
-				offset[0] = xDiff > 0 ? 1 : -1;
-			}
-			else
+			final Square p = Square.of(Long.numberOfTrailingZeros(targets));
+			targets &= targets - 1;
+
+			final Piece piece = board[p.x][p.y];
+			if (piece == null || !piece.getTeam().equals(getTeam()))
 			{
-				offset[1] = yDiff > 0 ? 1 : -1;
+				squares.add(p);
 			}
 		}
 
-		Point p = getLocation();
-		while (p != null)
+		return squares;
+	}
+
+	/**
+	 * Builds an occupancy set for the {@link Attacks} lookups
+	 * Only the given squares are read from the board, every other square is treated as empty
+	 * @param squares squares to check
+	 * @param board current game board
+	 * @return occupied squares
+	 */
+	protected static long getOccupancy(final long squares, final Piece[][] board)
+	{
+		long occupied = 0;
+		long remaining = squares;
+		while (remaining != 0)
 		{
-			// Reached the target location
-			if (p.equals(point))
-			{
-				p = null;
-				continue;
-			}
+			final Square p = Square.of(Long.numberOfTrailingZeros(remaining));
+			remaining &= remaining - 1;
 
-			p = new Point(p.x + offset[0], p.y + offset[1]);
-			if (p.x > GameBoard.SIZE || p.y > GameBoard.SIZE)
+			if (board[p.x][p.y] != null)
 			{
-				// Out of bounds
-				return false;
+				occupied |= 1L << p.index;
 			}
+		}
+		return occupied;
+	}
+
+	/**
+	 * Checks if an enemy piece attacks a square by looking outwards from the square with the {@link Attacks} tables,
+	 * a knight on the square would attack every knight that attacks it and so on for each piece type
+	 * @param square target square
+	 * @param from square this piece is moving from, it no longer blocks anything so a king can't hide behind itself
+	 * @param board current game board
+	 * @return true if the square is attacked
+	 */
+	protected boolean isAttacked(final Square square, final Square from, final Piece[][] board)
+	{
+		final int target = square.index;
+		final long occupied = getOccupancy(Attacks.queenAttacks(target, 0), board) & ~(1L << from.index);
+		return hasEnemy(Attacks.pawnAttacksFrom(Position.team(getTeam()), target), board, Position.PAWN, Position.PAWN)
+			|| hasEnemy(Attacks.knightAttacksFrom(target), board, Position.KNIGHT, Position.KNIGHT)
+			|| hasEnemy(Attacks.kingAttacksFrom(target), board, Position.KING, Position.KING)
+			|| hasEnemy(Attacks.bishopAttacks(target, occupied), board, Position.BISHOP, Position.QUEEN)
+			|| hasEnemy(Attacks.rookAttacks(target, occupied), board, Position.ROOK, Position.QUEEN);
+	}
+
+	/**
+	 * @param squares squares to check
+	 * @param board current game board
+	 * @param type piece type to look for, see {@link Position}
+	 * @param otherType second piece type to look for, or the same type again
+	 * @return true if any of the squares holds an enemy piece of either type
+	 */
+	private boolean hasEnemy(final long squares, final Piece[][] board, final int type, final int otherType)
+	{
+		long remaining = squares;
+		while (remaining != 0)
+		{
+			final Square p = Square.of(Long.numberOfTrailingZeros(remaining));
+			remaining &= remaining - 1;
 
 			final Piece piece = board[p.x][p.y];
-			if (piece != null)
+			if (piece != null && !piece.getTeam().equals(getTeam()))
 			{
-				// We only care if its occupied by the enemy team and its the ending point
-				if (piece.getTeam().equals(getTeam()) || !p.equals(point))
+				final int pieceType = Position.typeOf(piece);
+				if (pieceType == type || pieceType == otherType)
 				{
-					return false;
+					return true;
 				}
-				p = null;
 			}
 		}
+		return false;
+	}
 
+	/**
+	 * Checks if the piece can reach the target square, target square should be in a straight line
+	 * Will return false if there are pieces between or a friendly piece on your target square.
+	 * @param square target location
+	 * @param board current game board
+	 * @return can it get there
+	 */
+	public boolean canReachDestination(final Square square, final Piece[][] board)
+	{
+		final int from = getLocation().index;
+		if (from == square.index || Attacks.line(from, square.index) == 0)
+		{
+			return false;
+		}
+
+		if (getOccupancy(Attacks.between(from, square.index), board) != 0)
+		{
+			return false;
+		}
 
+		final Piece piece = board[square.x][square.y];
 		//TODO: Check for pinned
-		return true;
+		return piece == null || !piece.getTeam().equals(getTeam());
 	}
 
 	/**
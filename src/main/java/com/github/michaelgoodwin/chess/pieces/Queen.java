@@ -24,8 +24,9 @@
  */
 package com.github.michaelgoodwin.chess.pieces;
 
+import com.github.michaelgoodwin.chess.Attacks;
+import com.github.michaelgoodwin.chess.Square;
 import com.github.michaelgoodwin.chess.Team;
-import java.awt.Point;
 import java.util.Set;
 import lombok.EqualsAndHashCode;
 
@@ -38,20 +39,20 @@ public class Queen extends Piece
 	}
 
 	@Override
-	public boolean canMoveToPoint(Point point, Piece[][] board)
+	public boolean canMoveToPoint(Square square, Piece[][] board)
 	{
-		// Must move to a new point
-		if (getLocation().equals(point))
+		// Must move to a new square
+		if (getLocation().equals(square))
 		{
 			return false;
 		}
 
 		// A queen can move an unlimited number of tiles diagonally(bishop) or in one direction(Rook)
-		final int xDiff = getLocation().x - point.x;
-		final int yDiff = getLocation().y - point.y;
+		final int xDiff = getLocation().x - square.x;
+		final int yDiff = getLocation().y - square.y;
 
 		final boolean oneDirection = yDiff == 0 || xDiff == 0;
-		final boolean diagonalMovement = yDiff == xDiff;
+		final boolean diagonalMovement = Math.abs(yDiff) == Math.abs(xDiff);
 
 		if (!oneDirection && !diagonalMovement)
 		{
@@ -59,7 +60,7 @@ public class Queen extends Piece
 		}
 
 		// Check if path to target location is clear
-		if (!canReachDestination(point, board))
+		if (!canReachDestination(square, board))
 		{
 			return false;
 		}
@@ -69,21 +70,10 @@ public class Queen extends Piece
 	}
 
 	@Override
-	public Set<Point> getPossibleMoves(Point point, Piece[][] board)
+	public Set<Square> getPossibleMoves(Square square, Piece[][] board)
 	{
-		final int[][] offsets = {
-			{0, 1}, // Up
-			{0, -1}, // Down
-			{-1, 0}, // Left
-			{1, 0}, // Right
-
-			{1, 1}, // Up & Right
-			{-1, 1}, // Up & Left
-			{1, -1}, // Down & Right
-			{-1, -1} // Down & Left
-		};
-
-		return getPossibleMovesFromOffsets(point, board, offsets);
+		final long occupied = getOccupancy(Attacks.queenAttacks(square.index, 0), board);
+		return getPossibleMovesFromAttacks(Attacks.queenAttacks(square.index, occupied), board);
 	}
 
 	@Override
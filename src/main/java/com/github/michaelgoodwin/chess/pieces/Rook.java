@@ -24,8 +24,9 @@
  */
 package com.github.michaelgoodwin.chess.pieces;
 
+import com.github.michaelgoodwin.chess.Attacks;
+import com.github.michaelgoodwin.chess.Square;
 import com.github.michaelgoodwin.chess.Team;
-import java.awt.Point;
 import java.util.Set;
 import lombok.EqualsAndHashCode;
 
@@ -38,17 +39,17 @@ public class Rook extends Piece
 	}
 
 	@Override
-	public boolean canMoveToPoint(Point point, Piece[][] board)
+	public boolean canMoveToPoint(Square square, Piece[][] board)
 	{
-		// Must move to a new point
-		if (getLocation().equals(point))
+		// Must move to a new square
+		if (getLocation().equals(square))
 		{
 			return false;
 		}
 
 		// A Rook can move an unlimited number of tiles on one axis only
-		final int xDiff = getLocation().x - point.x;
-		final int yDiff = getLocation().y - point.y;
+		final int xDiff = getLocation().x - square.x;
+		final int yDiff = getLocation().y - square.y;
 
 		final boolean oneDirection = yDiff == 0 || xDiff == 0;
 		if (!oneDirection)
@@ -56,7 +57,7 @@ public class Rook extends Piece
 			return false;
 		}
 
-		if (!canReachDestination(point, board))
+		if (!canReachDestination(square, board))
 		{
 			return false;
 		}
@@ -66,16 +67,10 @@ public class Rook extends Piece
 	}
 
 	@Override
-	public Set<Point> getPossibleMoves(Point point, Piece[][] board)
+	public Set<Square> getPossibleMoves(Square square, Piece[][] board)
 	{
-		final int[][] offsets = {
-			{0, 1}, // Up
-			{0, -1}, // Down
-			{-1, 0}, // Left
-			{1, 0} // Right
-		};
-
-		return getPossibleMovesFromOffsets(point, board, offsets);
+		final long occupied = getOccupancy(Attacks.rookAttacks(square.index, 0), board);
+		return getPossibleMovesFromAttacks(Attacks.rookAttacks(square.index, occupied), board);
 	}
 
 	@Override
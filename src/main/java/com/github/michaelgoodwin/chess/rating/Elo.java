@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.rating;
+
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+
+/**
+ * Elo rating formulas, with the K factors FIDE uses
+ */
+public final class Elo
+{
+	// Rating given to a player before their first rated game
+	public static final int INITIAL_RATING = 1500;
+	// Score of a game that doesn't count, see whiteScore
+	public static final double UNRATED = -1;
+
+	private static final int PROVISIONAL_GAMES = 30;
+	private static final int PROVISIONAL_K = 40;
+	private static final int STANDARD_K = 20;
+	private static final int MASTER_K = 10;
+	private static final int MASTER_RATING = 2400;
+
+	private Elo()
+	{
+	}
+
+	/**
+	 * @return the score the player is expected to make against the opponent, between 0 and 1
+	 */
+	public static double expectedScore(final double rating, final double opponentRating)
+	{
+		return 1 / (1 + Math.pow(10, (opponentRating - rating) / 400));
+	}
+
+	/**
+	 * @param rating current rating
+	 * @param gamesPlayed rated games played before this one
+	 * @return how many points a full point more than expected is worth
+	 */
+	public static int kFactor(final double rating, final int gamesPlayed)
+	{
+		if (gamesPlayed < PROVISIONAL_GAMES)
+		{
+			return PROVISIONAL_K;
+		}
+		return rating < MASTER_RATING ? STANDARD_K : MASTER_K;
+	}
+
+	/**
+	 * @param result one of the {@link PgnWriter} result constants
+	 * @return whites score, or {@link #UNRATED} for an unfinished game
+	 */
+	public static double whiteScore(final String result)
+	{
+		switch (result)
+		{
+			case PgnWriter.WHITE_WINS:
+				return 1;
+			case PgnWriter.BLACK_WINS:
+				return 0;
+			case PgnWriter.DRAW:
+				return 0.5;
+			default:
+				return UNRATED;
+		}
+	}
+
+	/**
+	 * @param rating stored rating, 0 for a player who hasn't been rated yet
+	 * @return the rating to calculate with
+	 */
+	public static int effectiveRating(final int rating)
+	{
+		return rating == 0 ? INITIAL_RATING : rating;
+	}
+}
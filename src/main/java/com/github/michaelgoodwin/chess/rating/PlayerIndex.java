@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.rating;
+
+import com.github.michaelgoodwin.chess.archive.ArchivedGame;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every player a dense id from the hash of their name so per player values can live in primitive arrays.
+ * The table is split into stripes by the top bits of the hash, each an open addressing table with its own lock, so
+ * threads looking up different players rarely wait on each other.
+ */
+final class PlayerIndex
+{
+	static final int NOT_FOUND = -1;
+
+	private static final int STRIPE_BITS = 6;
+	private static final int INITIAL_STRIPE_CAPACITY = 1 << 10;
+
+	private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	PlayerIndex()
+	{
+		for (int i = 0; i < stripes.length; i++)
+		{
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Looks a player up, adding them if they haven't been seen before
+	 * @param hash name hash, never {@link ArchivedGame#NO_NAME}
+	 * @return the players id, or -(id + 1) if the player was just added
+	 */
+	int add(final long hash)
+	{
+		return stripes[(int) (hash >>> (Long.SIZE - STRIPE_BITS))].add(hash, nextId);
+	}
+
+	/**
+	 * @return the players id or {@link #NOT_FOUND}
+	 */
+	int get(final long hash)
+	{
+		return hash == ArchivedGame.NO_NAME ? NOT_FOUND : stripes[(int) (hash >>> (Long.SIZE - STRIPE_BITS))].get(hash);
+	}
+
+	int size()
+	{
+		return nextId.get();
+	}
+
+	private static final class Stripe
+	{
+		// Keys of 0 are empty slots, names never hash to 0
+		private long[] keys = new long[INITIAL_STRIPE_CAPACITY];
+		private int[] ids = new int[INITIAL_STRIPE_CAPACITY];
+		private int count;
+
+		synchronized int add(final long hash, final AtomicInteger nextId)
+		{
+			int slot = (int) hash & (keys.length - 1);
+			while (keys[slot] != 0)
+			{
+				if (keys[slot] == hash)
+				{
+					return ids[slot];
+				}
+				slot = (slot + 1) & (keys.length - 1);
+			}
+
+			final int id = nextId.getAndIncrement();
+			keys[slot] = hash;
+			ids[slot] = id;
+			// Keep at most half full so probe runs stay short
+			if (++count * 2 > keys.length)
+			{
+				grow();
+			}
+			return -(id + 1);
+		}
+
+		synchronized int get(final long hash)
+		{
+			int slot = (int) hash & (keys.length - 1);
+			while (keys[slot] != 0)
+			{
+				if (keys[slot] == hash)
+				{
+					return ids[slot];
+				}
+				slot = (slot + 1) & (keys.length - 1);
+			}
+			return NOT_FOUND;
+		}
+
+		private void grow()
+		{
+			final long[] oldKeys = keys;
+			final int[] oldIds = ids;
+			keys = new long[oldKeys.length * 2];
+			ids = new int[oldIds.length * 2];
+			for (int i = 0; i < oldKeys.length; i++)
+			{
+				if (oldKeys[i] != 0)
+				{
+					int slot = (int) oldKeys[i] & (keys.length - 1);
+					while (keys[slot] != 0)
+					{
+						slot = (slot + 1) & (keys.length - 1);
+					}
+					keys[slot] = oldKeys[i];
+					ids[slot] = oldIds[i];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.rating;
+
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.User;
+
+/**
+ * Updates the ratings of both players as each game finishes.
+ * A player can be in several games at once, so the two users are locked in a fixed order while their ratings are
+ * read and written, concurrent games sharing a player can't lose an update or deadlock.
+ */
+public class RatingEngine
+{
+	private static final Object TIE_LOCK = new Object();
+
+	/**
+	 * Rates a finished game and updates both users
+	 * @param game the finished game
+	 * @param result one of the {@link com.github.michaelgoodwin.chess.pgn.PgnWriter} result constants
+	 * @return false if the game doesn't count: unfinished, a player without a user, or a player against themself
+	 */
+	public boolean update(final Game game, final String result)
+	{
+		final User white = game.getWhitePlayer().getUser();
+		final User black = game.getBlackPlayer().getUser();
+		final double score = Elo.whiteScore(result);
+		if (white == null || black == null || white == black || score == Elo.UNRATED)
+		{
+			return false;
+		}
+
+		final int order = lockOrder(white, black);
+		if (order == 0)
+		{
+			// Identity hashes can collide, such pairs take a shared lock first so either order is safe
+			synchronized (TIE_LOCK)
+			{
+				rateLocked(white, black, score, true);
+			}
+		}
+		else
+		{
+			rateLocked(white, black, score, order < 0);
+		}
+		return true;
+	}
+
+	/**
+	 * Orders two users the same way whichever side each is on, by name and then by identity as separate user objects
+	 * can share a name
+	 * @return negative if the first user is locked first, positive if the second is and 0 if they can't be ordered
+	 */
+	private static int lockOrder(final User first, final User second)
+	{
+		final int byName = first.getUsername().compareTo(second.getUsername());
+		return byName != 0 ? byName
+			: Integer.compare(System.identityHashCode(first), System.identityHashCode(second));
+	}
+
+	private static void rateLocked(final User white, final User black, final double score, final boolean whiteFirst)
+	{
+		synchronized (whiteFirst ? white : black)
+		{
+			synchronized (whiteFirst ? black : white)
+			{
+				rate(white, black, score);
+			}
+		}
+	}
+
+	/**
+	 * @param score whites score
+	 */
+	private static void rate(final User white, final User black, final double score)
+	{
+		final int whiteRating = Elo.effectiveRating(white.getElo());
+		final int blackRating = Elo.effectiveRating(black.getElo());
+		final double expected = Elo.expectedScore(whiteRating, blackRating);
+
+		white.setElo((int) Math.round(whiteRating
+			+ Elo.kFactor(whiteRating, white.getGamesPlayed()) * (score - expected)));
+		black.setElo((int) Math.round(blackRating
+			+ Elo.kFactor(blackRating, black.getGamesPlayed()) * (expected - score)));
+		white.setGamesPlayed(white.getGamesPlayed() + 1);
+		black.setGamesPlayed(black.getGamesPlayed() + 1);
+	}
+}
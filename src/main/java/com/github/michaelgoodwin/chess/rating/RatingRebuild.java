@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.rating;
+
+import com.github.michaelgoodwin.chess.archive.ArchivedGame;
+import com.github.michaelgoodwin.chess.archive.GameArchive;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Recomputes every players rating from a full {@link GameArchive}.
+ * The archive is split into rating periods of consecutive games and, as with FIDE rating periods, every game in a
+ * period is rated against the ratings both players had when it started. Games within a period are then independent
+ * of each other so each period is rated by a fork-join pass over its games, followed by a second pass over the same
+ * games that applies the changes to the players in them. Per player values live in primitive arrays indexed by a
+ * dense player id.
+ */
+@Slf4j
+public final class RatingRebuild
+{
+	private static final int LEAF_GAMES = 1 << 13;
+	private static final int NO_PLAYER = -1;
+	// Changes are summed in fixed point so the total doesn't depend on the order threads add them in
+	private static final double FIXED_POINT = 1 << 20;
+
+	private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+	private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private final GameArchive archive;
+	private final PlayerIndex index = new PlayerIndex();
+
+	private double[] ratings = new double[0];
+	private int[] gamesPlayed = new int[0];
+	private long[] firstGames = new long[0];
+	// Accumulated over the current period
+	private long[] changes = new long[0];
+	private int[] periodGames = new int[0];
+	// White and black ids of each game in the period, NO_PLAYER for games that weren't rated
+	private final int[] periodPlayers;
+
+	private RatingRebuild(final GameArchive archive, final int gamesPerPeriod)
+	{
+		this.archive = archive;
+		this.periodPlayers = new int[2 * gamesPerPeriod];
+	}
+
+	/**
+	 * @param archive games to rate, in the order they were played
+	 * @param gamesPerPeriod games in each rating period
+	 * @param pool pool to rate with
+	 * @return the rating of every player with at least one rated game
+	 */
+	public static RatingTable rebuild(final GameArchive archive, final int gamesPerPeriod, final ForkJoinPool pool)
+	{
+		if (gamesPerPeriod < 1)
+		{
+			throw new IllegalArgumentException("Rating periods need at least one game");
+		}
+
+		final long start = System.nanoTime();
+		final RatingRebuild rebuild = new RatingRebuild(archive, gamesPerPeriod);
+		for (long first = 0; first < archive.getGameCount(); first += gamesPerPeriod)
+		{
+			final long end = Math.min(first + gamesPerPeriod, archive.getGameCount());
+			// Each game adds at most two players
+			rebuild.ensureCapacity(rebuild.index.size() + 2 * (int) (end - first));
+			pool.invoke(rebuild.new RateGames(first, first, end));
+			pool.invoke(rebuild.new ApplyChanges(0, 2 * (int) (end - first)));
+		}
+
+		log.debug("Rated {} games between {} players in {} ms", archive.getGameCount(), rebuild.index.size(),
+			(System.nanoTime() - start) / 1_000_000);
+		return new RatingTable(archive, rebuild.index, rebuild.ratings, rebuild.gamesPlayed, rebuild.firstGames);
+	}
+
+	private void ensureCapacity(final int players)
+	{
+		if (players <= ratings.length)
+		{
+			return;
+		}
+
+		final int capacity = Math.max(players, ratings.length + (ratings.length >> 1));
+		final int oldCapacity = ratings.length;
+		ratings = Arrays.copyOf(ratings, capacity);
+		Arrays.fill(ratings, oldCapacity, capacity, Elo.INITIAL_RATING);
+		gamesPlayed = Arrays.copyOf(gamesPlayed, capacity);
+		firstGames = Arrays.copyOf(firstGames, capacity);
+		changes = Arrays.copyOf(changes, capacity);
+		periodGames = Arrays.copyOf(periodGames, capacity);
+	}
+
+	/**
+	 * @param black whether the player is black in the game
+	 * @return id of the player, recording the game as their first if they are new
+	 */
+	private int player(final long hash, final long game, final boolean black)
+	{
+		final int id = index.add(hash);
+		if (id >= 0)
+		{
+			return id;
+		}
+		final int added = -(id + 1);
+		firstGames[added] = game << 1 | (black ? 1 : 0);
+		return added;
+	}
+
+	/**
+	 * Rates a range of games against the ratings at the start of the period
+	 */
+	private final class RateGames extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final long periodStart;
+		private final long first;
+		private final long end;
+
+		RateGames(final long periodStart, final long first, final long end)
+		{
+			this.periodStart = periodStart;
+			this.first = first;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - first > LEAF_GAMES)
+			{
+				final long middle = (first + end) >>> 1;
+				invokeAll(new RateGames(periodStart, first, middle), new RateGames(periodStart, middle, end));
+				return;
+			}
+
+			final ArchivedGame game = new ArchivedGame();
+			for (long number = first; number < end; number++)
+			{
+				final int slot = 2 * (int) (number - periodStart);
+				periodPlayers[slot] = NO_PLAYER;
+				periodPlayers[slot + 1] = NO_PLAYER;
+				archive.read(number, game);
+				final double score = Elo.whiteScore(game.getResult());
+				final long whiteHash = game.getWhiteNameHash();
+				final long blackHash = game.getBlackNameHash();
+				if (score == Elo.UNRATED || whiteHash == ArchivedGame.NO_NAME || blackHash == ArchivedGame.NO_NAME
+					|| whiteHash == blackHash)
+				{
+					continue;
+				}
+
+				final int white = player(whiteHash, number, false);
+				final int black = player(blackHash, number, true);
+				periodPlayers[slot] = white;
+				periodPlayers[slot + 1] = black;
+				final double expected = Elo.expectedScore(ratings[white], ratings[black]);
+				final double whiteChange = Elo.kFactor(ratings[white], gamesPlayed[white]) * (score - expected);
+				final double blackChange = Elo.kFactor(ratings[black], gamesPlayed[black]) * (expected - score);
+				LONGS.getAndAdd(changes, white, Math.round(whiteChange * FIXED_POINT));
+				LONGS.getAndAdd(changes, black, Math.round(blackChange * FIXED_POINT));
+				INTS.getAndAdd(periodGames, white, 1);
+				INTS.getAndAdd(periodGames, black, 1);
+			}
+		}
+	}
+
+	/**
+	 * Applies the changes accumulated over a period to the players of a range of its games.
+	 * A player can appear in many games, whichever thread takes their game count first applies their change.
+	 */
+	private final class ApplyChanges extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int first;
+		private final int end;
+
+		ApplyChanges(final int first, final int end)
+		{
+			this.first = first;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - first > 2 * LEAF_GAMES)
+			{
+				final int middle = (first + end) >>> 1;
+				invokeAll(new ApplyChanges(first, middle), new ApplyChanges(middle, end));
+				return;
+			}
+
+			for (int slot = first; slot < end; slot++)
+			{
+				final int id = periodPlayers[slot];
+				if (id == NO_PLAYER)
+				{
+					continue;
+				}
+				final int games = (int) INTS.getAndSet(periodGames, id, 0);
+				if (games != 0)
+				{
+					ratings[id] += (long) LONGS.getAndSet(changes, id, 0L) / FIXED_POINT;
+					gamesPlayed[id] += games;
+				}
+			}
+		}
+	}
+}
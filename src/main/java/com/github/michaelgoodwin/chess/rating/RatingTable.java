@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.rating;
+
+import com.github.michaelgoodwin.chess.User;
+import com.github.michaelgoodwin.chess.archive.ArchivedGame;
+import com.github.michaelgoodwin.chess.archive.GameArchive;
+
+/**
+ * Ratings rebuilt from a {@link GameArchive}, indexed by a dense player id.
+ * Names aren't copied out of the archive, each player remembers the first game they appeared in and their name is
+ * read from there when asked for, so names and lookups by name need the archive to still be open.
+ */
+public class RatingTable
+{
+	// Rating returned for a player with no rated games, matches an unrated User
+	public static final int NO_RATING = 0;
+
+	private final GameArchive archive;
+	private final PlayerIndex index;
+	private final int size;
+	private final double[] ratings;
+	private final int[] gamesPlayed;
+	// (game number << 1) | 1 if the player was black in it
+	private final long[] firstGames;
+
+	RatingTable(final GameArchive archive, final PlayerIndex index, final double[] ratings, final int[] gamesPlayed,
+		final long[] firstGames)
+	{
+		this.archive = archive;
+		this.index = index;
+		this.size = index.size();
+		this.ratings = ratings;
+		this.gamesPlayed = gamesPlayed;
+		this.firstGames = firstGames;
+	}
+
+	/**
+	 * @return number of players, ids run from 0 to size - 1
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public int getRating(final int id)
+	{
+		return (int) Math.round(ratings[id]);
+	}
+
+	public int getGamesPlayed(final int id)
+	{
+		return gamesPlayed[id];
+	}
+
+	public String getName(final int id)
+	{
+		final ArchivedGame game = archive.get(firstGames[id] >>> 1);
+		return (firstGames[id] & 1) == 0 ? game.getWhiteName() : game.getBlackName();
+	}
+
+	/**
+	 * @return the players id or -1 if they have no rated games
+	 */
+	public int getId(final String name)
+	{
+		return index.get(ArchivedGame.nameHash(name));
+	}
+
+	/**
+	 * @return the players rating or {@link #NO_RATING} if they have no rated games
+	 */
+	public int getRating(final String name)
+	{
+		final int id = getId(name);
+		return id < 0 ? NO_RATING : getRating(id);
+	}
+
+	/**
+	 * Copies a players rebuilt rating and game count onto their user
+	 * @return false if the player has no rated games, the user is left unchanged
+	 */
+	public boolean update(final User user)
+	{
+		final int id = getId(user.getUsername());
+		if (id < 0)
+		{
+			return false;
+		}
+		user.setElo(getRating(id));
+		user.setGamesPlayed(getGamesPlayed(id));
+		return true;
+	}
+
+	/**
+	 * @param count number of players wanted
+	 * @return ids of the highest rated players, best first
+	 */
+	public int[] topPlayers(final int count)
+	{
+		if (count <= 0)
+		{
+			return new int[0];
+		}
+
+		final int[] top = new int[Math.min(count, size)];
+		int found = 0;
+		for (int id = 0; id < size; id++)
+		{
+			if (found == top.length && ratings[id] <= ratings[top[found - 1]])
+			{
+				continue;
+			}
+
+			// Insertion into the short sorted list, dropping the lowest once it is full
+			int i = found < top.length ? found++ : found - 1;
+			while (i > 0 && ratings[top[i - 1]] < ratings[id])
+			{
+				top[i] = top[i - 1];
+				i--;
+			}
+			top[i] = id;
+		}
+		return top;
+	}
+}
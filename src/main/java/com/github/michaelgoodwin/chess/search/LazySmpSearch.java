@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.search;
+
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.bitbase.Bitbases;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lazy SMP parallel search.
+ * Every thread runs its own iterative deepening {@link Search} over the same position and they only cooperate through
+ * the shared {@link TranspositionTable}, helper threads skip some depths so they fill the table with results the main
+ * thread will need next. The main thread runs on the calling thread, owns the clock and its result is returned.
+ */
+@Slf4j
+public class LazySmpSearch implements AutoCloseable
+{
+	private final AtomicBoolean stopSignal = new AtomicBoolean();
+	private final Search[] searches;
+	private final ExecutorService helpers;
+	private final long[] threadNodes;
+
+	/**
+	 * Creates a search using one thread per available processor
+	 * @param table shared transposition table
+	 */
+	public LazySmpSearch(final TranspositionTable table)
+	{
+		this(table, Runtime.getRuntime().availableProcessors(), platformThreads());
+	}
+
+	/**
+	 * @param table shared transposition table
+	 * @param threads total number of search threads including the calling thread
+	 * @param threadFactory creates the helper threads, pass a virtual thread factory on runtimes that support them
+	 */
+	public LazySmpSearch(final TranspositionTable table, final int threads, final ThreadFactory threadFactory)
+	{
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("At least one search thread is required");
+		}
+
+		searches = new Search[threads];
+		for (int i = 0; i < threads; i++)
+		{
+			searches[i] = new Search(table, stopSignal, i);
+		}
+		threadNodes = new long[threads];
+		helpers = threads > 1 ? Executors.newFixedThreadPool(threads - 1, threadFactory) : null;
+	}
+
+	/**
+	 * @return a factory for daemon platform threads named after the search
+	 */
+	public static ThreadFactory platformThreads()
+	{
+		final AtomicInteger count = new AtomicInteger();
+		return runnable ->
+		{
+			final Thread thread = new Thread(runnable, "search-helper-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * @param bitbases endgame bitbases probed by every thread, or null to search without them
+	 */
+	public void setBitbases(final Bitbases bitbases)
+	{
+		for (final Search search : searches)
+		{
+			search.setBitbases(bitbases);
+		}
+	}
+
+	public int getThreads()
+	{
+		return searches.length;
+	}
+
+	/**
+	 * @return nodes searched by each thread during the last search, index 0 is the main thread
+	 */
+	public long[] getThreadNodes()
+	{
+		return threadNodes.clone();
+	}
+
+	/**
+	 * Stops every thread of a running search, the search still returns its best result so far
+	 */
+	public void stop()
+	{
+		stopSignal.set(true);
+	}
+
+	/**
+	 * Searches a position with every thread until the main thread reaches one of the limits
+	 * @param position position to search, left unchanged
+	 * @param limits depth and time limits, only the main thread watches the clock
+	 * @return the main threads result with the node count of every thread
+	 */
+	public SearchResult search(final Position position, final SearchLimits limits)
+	{
+		stopSignal.set(false);
+
+		// Helpers search until told to stop, so they only get the depth limit
+		final SearchLimits helperLimits = SearchLimits.builder()
+			.maxDepth(limits.getMaxDepth())
+			.build();
+		final List<Future<?>> running = new ArrayList<>(searches.length - 1);
+		for (int i = 1; i < searches.length; i++)
+		{
+			final Search helper = searches[i];
+			running.add(helpers.submit(() -> helper.search(position, helperLimits)));
+		}
+
+		SearchResult result;
+		try
+		{
+			result = searches[0].search(position, limits);
+		}
+		finally
+		{
+			stopSignal.set(true);
+			for (final Future<?> future : running)
+			{
+				awaitHelper(future);
+			}
+		}
+
+		long nodes = 0;
+		for (int i = 0; i < searches.length; i++)
+		{
+			threadNodes[i] = searches[i].getNodes();
+			nodes += threadNodes[i];
+		}
+
+		return new SearchResult(result.getBestMove(), result.getPrincipalVariation(), result.getScore(),
+			result.getDepth(), nodes, result.getElapsed());
+	}
+
+	private static void awaitHelper(final Future<?> future)
+	{
+		try
+		{
+			future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			log.warn("Search helper failed", e.getCause());
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		stop();
+		if (helpers != null)
+		{
+			helpers.shutdownNow();
+		}
+	}
+}
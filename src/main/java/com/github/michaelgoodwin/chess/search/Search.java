@@ -0,0 +1,582 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.search;
+
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.MoveGenerator;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.bitbase.Bitbases;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Iterative deepening principal variation search.
+ * Each iteration runs a full width alpha-beta search one ply deeper than the last, reusing the best moves of
+ * earlier iterations through the {@link TranspositionTable} for move ordering. A search stops once it is unlikely to
+ * finish another iteration inside the soft time limit, or immediately when the hard limit is reached.
+ */
+@Slf4j
+public class Search
+{
+	public static final int MAX_PLY = 128;
+	public static final int INFINITY = 32000;
+	// Mate in n plies is scored MATE - n so shorter mates are preferred
+	public static final int MATE = 31000;
+	// Bitbase wins are scored well below any mate so a real mate found by the search is still preferred
+	public static final int KNOWN_WIN = 20000;
+	private static final int NO_SCORE = Integer.MIN_VALUE;
+
+	// How many nodes to search between clock and stop signal checks
+	private static final int TIME_CHECK_INTERVAL = 1024;
+
+	// Lazy SMP helper threads skip some iterations so they spread out over different depths
+	// Helper n skips depth d when ((d + SKIP_PHASE[n]) / SKIP_SIZE[n]) is odd
+	private static final int[] SKIP_SIZE = {1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+	private static final int[] SKIP_PHASE = {0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+
+	private static final int TT_MOVE_SCORE = 1_000_000;
+	private static final int CAPTURE_SCORE = 100_000;
+	private static final int KILLER_SCORE = 90_000;
+
+	private final TranspositionTable table;
+	// Shared with the other threads of a parallel search, only reset here when this search owns it
+	private final AtomicBoolean stopSignal;
+	private final boolean ownsStopSignal;
+	// 0 for the main thread, which is also the only thread that watches the clock
+	private final int threadIndex;
+	// Optional endgame bitbases probed in small positions
+	@Setter
+	private Bitbases bitbases;
+
+	// Moves are played and taken back on one position with a move list and ordering scores per ply
+	// so the search never allocates
+	private final Position position = new Position();
+	private final int[][] moves = new int[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+	private final int[][] moveScores = new int[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+	private final int[][] killers = new int[MAX_PLY + 1][2];
+	private final int[][] history = new int[64][64];
+	private final int[][] principalVariation = new int[MAX_PLY + 1][MAX_PLY + 1];
+	private final int[] principalVariationLength = new int[MAX_PLY + 1];
+
+	private boolean stopped;
+	// Only safe to read from other threads once the search has returned
+	@Getter
+	private long nodes;
+	private long hardDeadline;
+	private int completedDepth;
+
+	public Search(final TranspositionTable table)
+	{
+		this(table, new AtomicBoolean(), true, 0);
+	}
+
+	Search(final TranspositionTable table, final AtomicBoolean stopSignal, final int threadIndex)
+	{
+		this(table, stopSignal, false, threadIndex);
+	}
+
+	private Search(final TranspositionTable table, final AtomicBoolean stopSignal, final boolean ownsStopSignal,
+		final int threadIndex)
+	{
+		this.table = table;
+		this.stopSignal = stopSignal;
+		this.ownsStopSignal = ownsStopSignal;
+		this.threadIndex = threadIndex;
+	}
+
+	/**
+	 * Asks a running search to stop as soon as possible, the search still returns its best result so far
+	 */
+	public void stop()
+	{
+		stopSignal.set(true);
+	}
+
+	/**
+	 * Searches a position until one of the limits is reached
+	 * @param position position to search, left unchanged
+	 * @param limits depth and time limits
+	 * @return the best move found, or a result with a best move of 0 if the side to move has no legal moves
+	 */
+	public SearchResult search(final Position position, final SearchLimits limits)
+	{
+		final long start = System.nanoTime();
+		final long softLimit = limits.softLimitNanos();
+		final long hardLimit = limits.hardLimitNanos();
+		hardDeadline = hardLimit == Long.MAX_VALUE ? Long.MAX_VALUE : start + hardLimit;
+
+		if (ownsStopSignal)
+		{
+			stopSignal.set(false);
+		}
+		stopped = false;
+		nodes = 0;
+		completedDepth = 0;
+		for (final int[] killer : killers)
+		{
+			Arrays.fill(killer, 0);
+		}
+		for (final int[] scores : history)
+		{
+			Arrays.fill(scores, 0);
+		}
+		if (threadIndex == 0)
+		{
+			table.newSearch();
+		}
+		this.position.copyFrom(position);
+
+		SearchResult result = new SearchResult(0, new int[0], 0, 0, 0, Duration.ZERO);
+		final int rootMoveCount = MoveGenerator.generate(this.position, moves[0]);
+		if (rootMoveCount == 0)
+		{
+			return result;
+		}
+
+		final int maxDepth = Math.max(1, Math.min(limits.getMaxDepth(), MAX_PLY - 1));
+		for (int depth = 1; depth <= maxDepth; depth++)
+		{
+			if (skipDepth(depth))
+			{
+				continue;
+			}
+
+			final int score = negamax(0, depth, -INFINITY, INFINITY);
+			if (stopped)
+			{
+				break;
+			}
+
+			completedDepth = depth;
+			final long elapsed = System.nanoTime() - start;
+			result = new SearchResult(principalVariation[0][0],
+				Arrays.copyOf(principalVariation[0], principalVariationLength[0]),
+				score, depth, nodes, Duration.ofNanos(elapsed));
+			if (threadIndex != 0)
+			{
+				continue;
+			}
+			log.debug("depth {} score {} nodes {} time {}ms pv {}", depth, score, nodes, elapsed / 1_000_000,
+				result.principalVariationString());
+
+			// Nothing to think about with a single legal move or once a forced mate has been found
+			if (rootMoveCount == 1 && softLimit != Long.MAX_VALUE || result.isMate() && MATE - Math.abs(score) <= depth)
+			{
+				break;
+			}
+
+			// The next iteration usually takes several times longer than this one so don't start it when short on time
+			if (elapsed > softLimit / 2)
+			{
+				break;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Looks the position up in the bitbases.
+	 * Draws are always exact, but a win is only scored on the capture or promotion that enters the ending, inside
+	 * the ending every position of a won line is a win too and the search has to find the way to mate on its own.
+	 * @return the score for the side to move, or {@link #NO_SCORE} to search the position normally
+	 */
+	private int probeBitbases(final int ply)
+	{
+		if (bitbases == null || Long.bitCount(position.getOccupancy()) > Bitbases.MAX_PIECES)
+		{
+			return NO_SCORE;
+		}
+
+		final int result = bitbases.probe(position);
+		if (result == Bitbases.DRAW)
+		{
+			return 0;
+		}
+		if (result == Bitbases.UNKNOWN || !isTactical(position.getLastMove()))
+		{
+			return NO_SCORE;
+		}
+		return result == Bitbases.WIN ? KNOWN_WIN - ply : -KNOWN_WIN + ply;
+	}
+
+	private boolean skipDepth(final int depth)
+	{
+		if (threadIndex == 0 || depth == 1)
+		{
+			return false;
+		}
+		final int helper = (threadIndex - 1) % SKIP_SIZE.length;
+		return ((depth + SKIP_PHASE[helper]) / SKIP_SIZE[helper]) % 2 != 0;
+	}
+
+	private int negamax(final int ply, int depth, int alpha, final int beta)
+	{
+		principalVariationLength[ply] = 0;
+		if (depth <= 0)
+		{
+			return quiescence(ply, alpha, beta);
+		}
+
+		countNode();
+		if (stopped)
+		{
+			return 0;
+		}
+
+		if (ply > 0)
+		{
+			if (isDraw())
+			{
+				return 0;
+			}
+			if (ply >= MAX_PLY - 1)
+			{
+				return Evaluation.evaluate(position);
+			}
+			final int known = probeBitbases(ply);
+			if (known != NO_SCORE)
+			{
+				return known;
+			}
+		}
+
+		final boolean pvNode = beta - alpha > 1;
+		final long entry = table.probe(position.getZobristKey());
+		int ttMove = 0;
+		if (entry != TranspositionTable.NO_ENTRY)
+		{
+			ttMove = TranspositionTable.move(entry);
+			if (!pvNode && ply > 0 && TranspositionTable.depth(entry) >= depth)
+			{
+				final int score = scoreFromTable(TranspositionTable.score(entry), ply);
+				final int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.BOUND_EXACT
+					|| bound == TranspositionTable.BOUND_LOWER && score >= beta
+					|| bound == TranspositionTable.BOUND_UPPER && score <= alpha)
+				{
+					return score;
+				}
+			}
+		}
+
+		final boolean inCheck = position.isInCheck();
+		if (inCheck)
+		{
+			// Check extension, forcing lines are worth looking at one ply deeper
+			depth++;
+		}
+
+		final int[] buffer = moves[ply];
+		final int count = MoveGenerator.generate(position, buffer);
+		if (count == 0)
+		{
+			return inCheck ? -MATE + ply : 0;
+		}
+		scoreMoves(ply, count, ttMove);
+
+		final int originalAlpha = alpha;
+		int bestScore = -INFINITY;
+		int bestMove = 0;
+		for (int i = 0; i < count; i++)
+		{
+			final int move = pickMove(ply, i, count);
+			position.makeMove(move);
+
+			int score;
+			if (i == 0)
+			{
+				score = -negamax(ply + 1, depth - 1, -beta, -alpha);
+			}
+			else
+			{
+				// Assume the first move is best and prove it with a null window, re-search if the proof fails
+				score = -negamax(ply + 1, depth - 1, -alpha - 1, -alpha);
+				if (score > alpha && score < beta)
+				{
+					score = -negamax(ply + 1, depth - 1, -beta, -alpha);
+				}
+			}
+			position.unmakeMove();
+
+			if (stopped)
+			{
+				return 0;
+			}
+
+			if (score > bestScore)
+			{
+				bestScore = score;
+				bestMove = move;
+				if (score > alpha)
+				{
+					alpha = score;
+					updatePrincipalVariation(ply, move);
+					if (alpha >= beta)
+					{
+						if (!isTactical(move))
+						{
+							updateQuietMoveStats(ply, move, depth);
+						}
+						break;
+					}
+				}
+			}
+		}
+
+		final int bound = bestScore >= beta ? TranspositionTable.BOUND_LOWER
+			: bestScore > originalAlpha ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+		table.store(position.getZobristKey(), bestMove, scoreToTable(bestScore, ply), depth, bound);
+		return bestScore;
+	}
+
+	/**
+	 * Searches captures and promotions only until the position is quiet so the static evaluation isn't
+	 * taken in the middle of an exchange
+	 */
+	private int quiescence(final int ply, int alpha, final int beta)
+	{
+		countNode();
+		if (stopped)
+		{
+			return 0;
+		}
+
+		final int known = probeBitbases(ply);
+		if (known != NO_SCORE)
+		{
+			return known;
+		}
+
+		final boolean inCheck = position.isInCheck();
+		int bestScore = -INFINITY;
+		if (!inCheck)
+		{
+			// Stand pat, the side to move can usually do at least as well as the current evaluation
+			bestScore = Evaluation.evaluate(position);
+			if (bestScore >= beta || ply >= MAX_PLY - 1)
+			{
+				return bestScore;
+			}
+			if (bestScore > alpha)
+			{
+				alpha = bestScore;
+			}
+		}
+
+		final int[] buffer = moves[ply];
+		final int count = MoveGenerator.generate(position, buffer);
+		if (count == 0)
+		{
+			return inCheck ? -MATE + ply : 0;
+		}
+		if (ply >= MAX_PLY - 1)
+		{
+			return Evaluation.evaluate(position);
+		}
+		scoreMoves(ply, count, 0);
+
+		for (int i = 0; i < count; i++)
+		{
+			final int move = pickMove(ply, i, count);
+			// Every evasion is searched when in check, otherwise only moves that change the material
+			if (!inCheck && !isTactical(move))
+			{
+				continue;
+			}
+
+			position.makeMove(move);
+			final int score = -quiescence(ply + 1, -beta, -alpha);
+			position.unmakeMove();
+			if (stopped)
+			{
+				return 0;
+			}
+
+			if (score > bestScore)
+			{
+				bestScore = score;
+				if (score > alpha)
+				{
+					alpha = score;
+					if (alpha >= beta)
+					{
+						break;
+					}
+				}
+			}
+		}
+		return bestScore;
+	}
+
+	private void countNode()
+	{
+		final long count = nodes + 1;
+		nodes = count;
+		if ((count & (TIME_CHECK_INTERVAL - 1)) != 0 || completedDepth == 0)
+		{
+			return;
+		}
+
+		if (stopSignal.get())
+		{
+			stopped = true;
+		}
+		else if (threadIndex == 0 && System.nanoTime() > hardDeadline)
+		{
+			// Out of time, let every other thread know too
+			stopped = true;
+			stopSignal.set(true);
+		}
+	}
+
+	/**
+	 * The position's undo stack includes the moves played before the search started so repetitions of
+	 * earlier game positions are found as well
+	 */
+	private boolean isDraw()
+	{
+		return position.getHalfMoveClock() >= 100 || position.isRepetition();
+	}
+
+	private static boolean isTactical(final int move)
+	{
+		return (CompactMove.flags(move) & (CompactMove.CAPTURE | CompactMove.PROMOTION)) != 0;
+	}
+
+	/**
+	 * Orders moves by the transposition table move, then captures by most valuable victim / least valuable attacker,
+	 * then killer moves and finally the history heuristic
+	 */
+	private void scoreMoves(final int ply, final int count, final int ttMove)
+	{
+		final int[] buffer = moves[ply];
+		final int[] scores = moveScores[ply];
+		for (int i = 0; i < count; i++)
+		{
+			final int move = buffer[i];
+			final int from = CompactMove.from(move);
+			final int to = CompactMove.to(move);
+			if (move == ttMove)
+			{
+				scores[i] = TT_MOVE_SCORE;
+			}
+			else if (isTactical(move))
+			{
+				final int victim = CompactMove.flags(move) == CompactMove.EN_PASSANT ? Position.PAWN : position.typeAt(to);
+				final int victimValue = victim == Position.NO_PIECE ? 0 : Evaluation.PIECE_VALUES[victim];
+				final int promotionValue = CompactMove.isPromotion(move)
+					? Evaluation.PIECE_VALUES[CompactMove.promotionType(move)] : 0;
+				scores[i] = CAPTURE_SCORE + victimValue * 10 + promotionValue - position.typeAt(from);
+			}
+			else if (move == killers[ply][0] || move == killers[ply][1])
+			{
+				scores[i] = KILLER_SCORE;
+			}
+			else
+			{
+				scores[i] = history[from][to];
+			}
+		}
+	}
+
+	/**
+	 * Selection sort one step at a time, most nodes cut off after a couple of moves so sorting the whole list is wasted
+	 */
+	private int pickMove(final int ply, final int index, final int count)
+	{
+		final int[] buffer = moves[ply];
+		final int[] scores = moveScores[ply];
+		int best = index;
+		for (int i = index + 1; i < count; i++)
+		{
+			if (scores[i] > scores[best])
+			{
+				best = i;
+			}
+		}
+
+		final int move = buffer[best];
+		final int score = scores[best];
+		buffer[best] = buffer[index];
+		scores[best] = scores[index];
+		buffer[index] = move;
+		scores[index] = score;
+		return move;
+	}
+
+	private void updateQuietMoveStats(final int ply, final int move, final int depth)
+	{
+		if (killers[ply][0] != move)
+		{
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+
+		final int[] scores = history[CompactMove.from(move)];
+		final int to = CompactMove.to(move);
+		scores[to] = Math.min(scores[to] + depth * depth, KILLER_SCORE - 1);
+	}
+
+	private void updatePrincipalVariation(final int ply, final int move)
+	{
+		final int[] line = principalVariation[ply];
+		line[0] = move;
+		final int childLength = principalVariationLength[ply + 1];
+		System.arraycopy(principalVariation[ply + 1], 0, line, 1, childLength);
+		principalVariationLength[ply] = childLength + 1;
+	}
+
+	// Mate scores are stored relative to the position rather than the root so they stay correct in other searches
+	private static int scoreToTable(final int score, final int ply)
+	{
+		if (score >= MATE - MAX_PLY)
+		{
+			return score + ply;
+		}
+		if (score <= -MATE + MAX_PLY)
+		{
+			return score - ply;
+		}
+		return score;
+	}
+
+	private static int scoreFromTable(final int score, final int ply)
+	{
+		if (score >= MATE - MAX_PLY)
+		{
+			return score - ply;
+		}
+		if (score <= -MATE + MAX_PLY)
+		{
+			return score + ply;
+		}
+		return score;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.search;
+
+import com.github.michaelgoodwin.chess.Player;
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Limits for a single search, either a fixed time per move or a budget worked out from the players clock
+ */
+@Value
+@Builder
+public class SearchLimits
+{
+	// Time kept back for the move to reach the server
+	private static final long MOVE_OVERHEAD_NANOS = Duration.ofMillis(20).toNanos();
+	// Assume the game lasts this many more moves when splitting up the remaining time
+	private static final int MOVES_TO_GO = 40;
+
+	@Builder.Default
+	int maxDepth = Search.MAX_PLY - 1;
+	// Remaining time on the clock of the side to move, null when there is no clock
+	Duration timeRemaining;
+	@Builder.Default
+	Duration increment = Duration.ZERO;
+	// Fixed time for this move, takes priority over the clock
+	Duration moveTime;
+
+	/**
+	 * @param player the player to move
+	 * @param increment time added to the clock after each move
+	 * @return limits budgeting from the players remaining time
+	 */
+	public static SearchLimits forPlayer(final Player player, final Duration increment)
+	{
+		return SearchLimits.builder()
+			.timeRemaining(player.getTimeRemaining())
+			.increment(increment == null ? Duration.ZERO : increment)
+			.build();
+	}
+
+	/**
+	 * @return time after which no new iteration should be started
+	 */
+	long softLimitNanos()
+	{
+		if (moveTime != null)
+		{
+			return moveTime.toNanos();
+		}
+		if (timeRemaining == null)
+		{
+			return Long.MAX_VALUE;
+		}
+
+		final long available = availableNanos();
+		return Math.min(available / MOVES_TO_GO + increment.toNanos() * 3 / 4, available / 4);
+	}
+
+	/**
+	 * @return time at which the search must stop, even mid iteration
+	 */
+	long hardLimitNanos()
+	{
+		if (moveTime != null)
+		{
+			return moveTime.toNanos();
+		}
+		if (timeRemaining == null)
+		{
+			return Long.MAX_VALUE;
+		}
+
+		final long soft = softLimitNanos();
+		return Math.max(soft, Math.min(soft * 4, availableNanos() / 3));
+	}
+
+	private long availableNanos()
+	{
+		return Math.max(timeRemaining.toNanos() - MOVE_OVERHEAD_NANOS, Duration.ofMillis(1).toNanos());
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.search;
+
+import com.github.michaelgoodwin.chess.CompactMove;
+import java.time.Duration;
+import lombok.Value;
+
+/**
+ * Result of a completed search, moves are encoded as {@link CompactMove}s
+ */
+@Value
+public class SearchResult
+{
+	int bestMove;
+	int[] principalVariation;
+	// Centipawns from the point of view of the side to move, see Search.MATE for mate scores
+	int score;
+	int depth;
+	long nodes;
+	Duration elapsed;
+
+	public boolean isMate()
+	{
+		return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+	}
+
+	/**
+	 * @return the principal variation in coordinate notation
+	 */
+	public String principalVariationString()
+	{
+		final StringBuilder builder = new StringBuilder();
+		for (final int move : principalVariation)
+		{
+			if (builder.length() > 0)
+			{
+				builder.append(' ');
+			}
+			builder.append(CompactMove.toString(move));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.search;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size hash table of search results shared between every search thread.
+ * Entries are stored in a primitive long[] as two longs, the Zobrist key XORed with the data followed by the data itself.
+ * Threads read and write without any locking, a torn write from two threads racing on the same entry leaves a pair
+ * of longs that no longer XOR back to the key so the entry is simply treated as a miss.
+ *
+ * The data long is laid out as
+ * <pre>
+ * bits  0-15 best move
+ * bits 16-31 score (signed)
+ * bits 32-39 depth
+ * bits 40-41 bound type
+ * bits 42-47 generation
+ * </pre>
+ */
+public class TranspositionTable
+{
+	public static final int BOUND_NONE = 0;
+	public static final int BOUND_UPPER = 1; // Failed low, the score is at most the stored value
+	public static final int BOUND_LOWER = 2; // Failed high, the score is at least the stored value
+	public static final int BOUND_EXACT = 3;
+
+	// Returned by probe when there isn't an entry for the key, real entries never have BOUND_NONE
+	public static final long NO_ENTRY = 0;
+
+	private static final int ENTRY_LONGS = 2;
+	// Four entries per bucket so one bucket fills a 64 byte cache line
+	private static final int BUCKET_ENTRIES = 4;
+	private static final int BUCKET_LONGS = ENTRY_LONGS * BUCKET_ENTRIES;
+	private static final int BYTES_PER_BUCKET = BUCKET_LONGS * Long.BYTES;
+	private static final int GENERATION_MASK = 0x3F;
+	private static final int MAX_DEPTH = 0xFF;
+
+	private final long[] table;
+	private final int bucketMask;
+	private volatile int generation;
+
+	/**
+	 * @param megabytes size of the table, rounded down to the nearest power of two number of buckets
+	 */
+	public TranspositionTable(final int megabytes)
+	{
+		final long buckets = Math.max(1, (long) megabytes * 1024 * 1024 / BYTES_PER_BUCKET);
+		// Largest power of two that fits in both the requested memory and a java array
+		final long capped = Math.min(Long.highestOneBit(buckets), Integer.highestOneBit(Integer.MAX_VALUE / BUCKET_LONGS));
+		table = new long[(int) capped * BUCKET_LONGS];
+		bucketMask = (int) capped - 1;
+	}
+
+	public static int move(final long data)
+	{
+		return (int) (data & 0xFFFF);
+	}
+
+	public static int score(final long data)
+	{
+		return (short) (data >>> 16);
+	}
+
+	public static int depth(final long data)
+	{
+		return (int) ((data >>> 32) & MAX_DEPTH);
+	}
+
+	public static int bound(final long data)
+	{
+		return (int) ((data >>> 40) & 3);
+	}
+
+	private static int generation(final long data)
+	{
+		return (int) ((data >>> 42) & GENERATION_MASK);
+	}
+
+	private static long pack(final int move, final int score, final int depth, final int bound, final int generation)
+	{
+		return (move & 0xFFFFL)
+			| ((score & 0xFFFFL) << 16)
+			| ((long) Math.max(0, Math.min(depth, MAX_DEPTH)) << 32)
+			| ((long) bound << 40)
+			| ((long) generation << 42);
+	}
+
+	private int bucketIndex(final long key)
+	{
+		return ((int) key & bucketMask) * BUCKET_LONGS;
+	}
+
+	/**
+	 * @return the number of entries the table can hold
+	 */
+	public int capacity()
+	{
+		return table.length / ENTRY_LONGS;
+	}
+
+	/**
+	 * Removes every entry, must not be called while a search is running
+	 */
+	public void clear()
+	{
+		Arrays.fill(table, 0);
+		generation = 0;
+	}
+
+	/**
+	 * Marks entries stored by previous searches as old so they are replaced first
+	 */
+	public void newSearch()
+	{
+		generation = (generation + 1) & GENERATION_MASK;
+	}
+
+	/**
+	 * @param key Zobrist key of the position
+	 * @return the packed entry data or {@link #NO_ENTRY}
+	 */
+	public long probe(final long key)
+	{
+		final int bucket = bucketIndex(key);
+		for (int i = bucket; i < bucket + BUCKET_LONGS; i += ENTRY_LONGS)
+		{
+			final long data = table[i + 1];
+			if ((table[i] ^ data) == key && bound(data) != BOUND_NONE)
+			{
+				return data;
+			}
+		}
+		return NO_ENTRY;
+	}
+
+	/**
+	 * Stores a search result, replacing the existing entry for the key or the least useful entry in its bucket
+	 * @param key Zobrist key of the position
+	 * @param move best move found, 0 to keep the move already stored for this position
+	 * @param score score, must fit in a short
+	 * @param depth remaining depth the position was searched to
+	 * @param bound one of the BOUND constants
+	 */
+	public void store(final long key, int move, final int score, final int depth, final int bound)
+	{
+		final int bucket = bucketIndex(key);
+		final int currentGeneration = generation;
+
+		int replace = bucket;
+		int replaceValue = Integer.MAX_VALUE;
+		for (int i = bucket; i < bucket + BUCKET_LONGS; i += ENTRY_LONGS)
+		{
+			final long data = table[i + 1];
+			if ((table[i] ^ data) == key)
+			{
+				// Keep a deeper result for the same position unless it is from an old search or we have an exact score
+				if (bound != BOUND_EXACT && depth < depth(data) - 2 && generation(data) == currentGeneration)
+				{
+					return;
+				}
+				if (move == 0)
+				{
+					move = move(data);
+				}
+				replace = i;
+				break;
+			}
+
+			// Prefer replacing shallow entries from old searches
+			final int age = (currentGeneration - generation(data)) & GENERATION_MASK;
+			final int value = depth(data) - age * 8;
+			if (value < replaceValue)
+			{
+				replaceValue = value;
+				replace = i;
+			}
+		}
+
+		final long data = pack(move, score, depth, bound, currentGeneration);
+		table[replace + 1] = data;
+		table[replace] = key ^ data;
+	}
+
+	/**
+	 * Samples the start of the table to estimate how full it is
+	 * @return permille of sampled entries written during the current search
+	 */
+	public int hashFull()
+	{
+		final int samples = Math.min(1000, capacity());
+		final int currentGeneration = generation;
+		int used = 0;
+		for (int i = 0; i < samples; i++)
+		{
+			final long data = table[i * ENTRY_LONGS + 1];
+			if (bound(data) != BOUND_NONE && generation(data) == currentGeneration)
+			{
+				used++;
+			}
+		}
+		return used * 1000 / samples;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.server;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches the clocks of every hosted game for flag-fall from one thread.
+ * All deadlines live in a single {@link TimingWheel} owned by the ticker thread. Sessions don't touch the wheel,
+ * they post their new deadline on the {@link GameClock} and queue it, and the ticker moves it in the wheel on its next
+ * tick. A clock is queued at most once however many deadlines are posted, so a move never allocates.
+ */
+@Slf4j
+public class ClockService implements AutoCloseable
+{
+	public static final Duration DEFAULT_TICK = Duration.ofMillis(10);
+	// 64^4 ticks of 10ms is about 19 days, plenty for any time control
+	private static final int LEVELS = 4;
+
+	private final long tickNanos;
+	private final TimingWheel wheel;
+	private final Queue<GameClock> requests = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean running = new AtomicBoolean(true);
+	private final Thread ticker;
+	private final Consumer<TimingWheel.Timer> expired = timer -> ((GameClock) timer).expired();
+
+	/**
+	 * @param threadFactory creates the ticker thread
+	 * @param tick resolution of flag-fall, a flag is noticed up to one tick after it falls
+	 */
+	public ClockService(final ThreadFactory threadFactory, final Duration tick)
+	{
+		tickNanos = tick.toNanos();
+		wheel = new TimingWheel(tickNanos, LEVELS, System.nanoTime());
+		ticker = threadFactory.newThread(this::run);
+		ticker.start();
+	}
+
+	/**
+	 * Queues a clock whose deadline changed, called from any thread
+	 */
+	void requestUpdate(final GameClock clock)
+	{
+		if (clock.markQueued())
+		{
+			requests.add(clock);
+		}
+	}
+
+	/**
+	 * @return number of clocks with a pending flag-fall, only accurate from the ticker thread
+	 */
+	int getScheduledCount()
+	{
+		return wheel.size();
+	}
+
+	private void run()
+	{
+		long nextTick = System.nanoTime() + tickNanos;
+		while (running.get())
+		{
+			final long now = System.nanoTime();
+			if (now < nextTick)
+			{
+				LockSupport.parkNanos(nextTick - now);
+				continue;
+			}
+			nextTick = now + tickNanos;
+
+			try
+			{
+				for (GameClock clock = requests.poll(); clock != null; clock = requests.poll())
+				{
+					// Read the deadline after clearing the flag so a deadline posted meanwhile queues the clock again
+					clock.clearQueued();
+					final long deadline = clock.getRequestedDeadline();
+					if (deadline == GameClock.NO_DEADLINE)
+					{
+						wheel.cancel(clock);
+					}
+					else
+					{
+						wheel.schedule(clock, deadline);
+					}
+				}
+				wheel.advance(now, expired);
+			}
+			catch (RuntimeException e)
+			{
+				log.warn("Clock tick failed", e);
+			}
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		running.set(false);
+		LockSupport.unpark(ticker);
+		try
+		{
+			ticker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(tickNanos) * 10));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
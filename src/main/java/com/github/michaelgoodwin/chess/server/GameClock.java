@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.server;
+
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Position;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Chess clock of one hosted game.
+ * Times are only charged by the sessions worker thread, the {@link ClockService} ticker only sees the flag-fall
+ * deadline posted for the side to move.
+ */
+final class GameClock extends TimingWheel.Timer
+{
+	static final long NO_DEADLINE = Long.MIN_VALUE;
+
+	private final Game game;
+	private final ClockService service;
+	// Called on the ticker thread once the posted deadline passes
+	private final Runnable flagFall;
+	private final AtomicBoolean queued = new AtomicBoolean();
+	private volatile long requestedDeadline = NO_DEADLINE;
+	// System.nanoTime() the side to move started thinking at
+	private long turnStart;
+
+	GameClock(final Game game, final ClockService service, final Runnable flagFall, final long now)
+	{
+		this.game = game;
+		this.service = service;
+		this.flagFall = flagFall;
+		turnStart = now;
+		post(now + remainingNanos(sideToMove(), now));
+	}
+
+	/**
+	 * @return true if the game has a time control
+	 */
+	static boolean isTimed(final Game game)
+	{
+		return game.getStartingTime() != null && !game.getStartingTime().isZero();
+	}
+
+	/**
+	 * @return nanoseconds the team has left at the given time, zero or less once its flag has fallen
+	 */
+	long remainingNanos(final int team, final long now)
+	{
+		final long remaining = player(team).getTimeRemaining().toNanos();
+		return team == sideToMove() ? remaining - (now - turnStart) : remaining;
+	}
+
+	/**
+	 * Charges the mover for the time used, adds the increment and starts the opponents clock
+	 * @param team team that just moved
+	 * @param now time the move was received
+	 */
+	void punch(final int team, final long now)
+	{
+		final Player player = player(team);
+		final Duration increment = game.getMoveTimeIncrement();
+		player.setTimeRemaining(Duration.ofNanos(remainingNanos(team, now)
+			+ (increment == null ? 0 : increment.toNanos())));
+		turnStart = now;
+
+		final int opponent = team == Position.WHITE ? Position.BLACK : Position.WHITE;
+		post(now + player(opponent).getTimeRemaining().toNanos());
+	}
+
+	/**
+	 * Keeps watching the side to move, used when the flag was checked early
+	 */
+	void resume(final long now)
+	{
+		post(now + remainingNanos(sideToMove(), now));
+	}
+
+	/**
+	 * Stops watching the clock once the game is over
+	 */
+	void stop()
+	{
+		post(NO_DEADLINE);
+	}
+
+	private void post(final long deadline)
+	{
+		requestedDeadline = deadline;
+		service.requestUpdate(this);
+	}
+
+	long getRequestedDeadline()
+	{
+		return requestedDeadline;
+	}
+
+	boolean markQueued()
+	{
+		return queued.compareAndSet(false, true);
+	}
+
+	void clearQueued()
+	{
+		queued.set(false);
+	}
+
+	void expired()
+	{
+		flagFall.run();
+	}
+
+	private int sideToMove()
+	{
+		return game.getBoard().getPosition().getSideToMove();
+	}
+
+	private Player player(final int team)
+	{
+		return team == Position.WHITE ? game.getWhitePlayer() : game.getBlackPlayer();
+	}
+}
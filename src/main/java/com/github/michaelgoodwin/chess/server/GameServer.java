@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.server;
+
+import com.github.michaelgoodwin.chess.Adjudicator;
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.bitbase.Bitbases;
+import com.github.michaelgoodwin.chess.journal.GameJournal;
+import com.github.michaelgoodwin.chess.journal.RecoveredGame;
+import com.github.michaelgoodwin.chess.rating.RatingEngine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hosts live games in process.
+ * Each game gets a {@link GameSession} with its own mailbox, and a small pool of worker threads takes turns draining
+ * the mailboxes that have work. A game with nothing queued costs no thread, so one server can hold far more games
+ * than it has threads. One {@link ClockService} thread watches the clocks of every game.
+ */
+@Slf4j
+public class GameServer implements AutoCloseable
+{
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+	private final AtomicLong nextId = new AtomicLong();
+	private final ConcurrentMap<Long, GameSession> sessions = new ConcurrentHashMap<>();
+	private final ExecutorService workers;
+	private final ClockService clocks;
+	private final Adjudicator adjudicator;
+	// Null when games aren't journaled
+	private final GameJournal journal;
+	// Rates games as they finish, null when games aren't rated. Only applies to games hosted after it is set
+	@Setter
+	private volatile RatingEngine ratingEngine;
+
+	/**
+	 * Creates a server using one worker thread per available processor
+	 * @param bitbases endgame bitbases used to adjudicate games, or null to only adjudicate on the rules
+	 */
+	public GameServer(final Bitbases bitbases)
+	{
+		this(Runtime.getRuntime().availableProcessors(), platformThreads(), bitbases);
+	}
+
+	/**
+	 * @param threads number of worker threads applying queued commands
+	 * @param threadFactory creates the worker threads, pass a virtual thread factory on runtimes that support them
+	 * @param bitbases endgame bitbases used to adjudicate games, or null to only adjudicate on the rules
+	 */
+	public GameServer(final int threads, final ThreadFactory threadFactory, final Bitbases bitbases)
+	{
+		this(threads, threadFactory, bitbases, null);
+	}
+
+	/**
+	 * @param threads number of worker threads applying queued commands
+	 * @param threadFactory creates the worker threads, pass a virtual thread factory on runtimes that support them
+	 * @param bitbases endgame bitbases used to adjudicate games, or null to only adjudicate on the rules
+	 * @param journal journal every change is written to before it is acknowledged, or null to keep games in memory
+	 * only. The caller closes it after the server
+	 */
+	public GameServer(final int threads, final ThreadFactory threadFactory, final Bitbases bitbases,
+		final GameJournal journal)
+	{
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("At least one worker thread is required");
+		}
+
+		workers = Executors.newFixedThreadPool(threads, threadFactory);
+		clocks = new ClockService(threadFactory, ClockService.DEFAULT_TICK);
+		adjudicator = new Adjudicator(bitbases);
+		this.journal = journal;
+		if (journal != null)
+		{
+			// Recovered games keep their ids so new games have to start above them
+			nextId.set(journal.getMaxGameId());
+		}
+	}
+
+	/**
+	 * @return a factory for daemon platform threads named after the server
+	 */
+	public static ThreadFactory platformThreads()
+	{
+		final AtomicInteger count = new AtomicInteger();
+		return runnable ->
+		{
+			final Thread thread = new Thread(runnable, "game-server-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Starts hosting a game, the caller must not touch the game afterwards
+	 * @param game a game that has been started, see {@link Game#start}
+	 * @return the session all changes to the game must go through
+	 */
+	public GameSession host(final Game game)
+	{
+		final long id = nextId.incrementAndGet();
+		if (journal != null)
+		{
+			journal.started(id, game);
+		}
+		return host(id, game);
+	}
+
+	/**
+	 * Hosts the games the journal found still being played, with their clocks restarted where they left off
+	 * @return the sessions of the recovered games
+	 */
+	public List<GameSession> recover()
+	{
+		if (journal == null)
+		{
+			return List.of();
+		}
+
+		final List<GameSession> recovered = new ArrayList<>(journal.getRecovered().size());
+		for (final RecoveredGame game : journal.getRecovered())
+		{
+			recovered.add(host(game.getGameId(), game.getGame()));
+		}
+		return recovered;
+	}
+
+	private GameSession host(final long id, final Game game)
+	{
+		final GameSession session = new GameSession(id, game, adjudicator, workers, clocks, journal, ratingEngine);
+		sessions.put(id, session);
+		return session;
+	}
+
+	/**
+	 * @return the session or null if no game with the id is hosted
+	 */
+	public GameSession getSession(final long id)
+	{
+		return sessions.get(id);
+	}
+
+	/**
+	 * Stops hosting a game, commands that were already queued are still applied.
+	 * A game that hasn't finished once they have is abandoned, its clock stops and it is journaled as ended without a
+	 * result so it isn't recovered
+	 * @return the removed session or null if no game with the id is hosted
+	 */
+	public GameSession remove(final long id)
+	{
+		final GameSession session = sessions.remove(id);
+		if (session != null)
+		{
+			// Fails harmlessly if a queued command finishes the game first
+			session.abandon();
+		}
+		return session;
+	}
+
+	public int getSessionCount()
+	{
+		return sessions.size();
+	}
+
+	/**
+	 * Stops the worker threads once the mailbox drains already scheduled have run, commands still queued after that
+	 * and commands submitted afterwards fail
+	 */
+	@Override
+	public void close()
+	{
+		clocks.close();
+		workers.shutdown();
+		try
+		{
+			if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+			{
+				log.warn("Game server workers didn't finish within {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+				workers.shutdownNow();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.server;
+
+import com.github.michaelgoodwin.chess.Adjudicator;
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.MoveGenerator;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.journal.GameJournal;
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+import com.github.michaelgoodwin.chess.rating.RatingEngine;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import lombok.Getter;
+
+/**
+ * A game hosted by a {@link GameServer}.
+ * Every change is queued in the sessions mailbox and applied in the order it was submitted by at most one worker
+ * thread at a time, so the {@link Game} itself needs no locking. Readers never touch the game, they get the immutable
+ * snapshot published after the last change. Games with a time control are charged for the time taken by each move
+ * and lose when their flag falls, see {@link ClockService}.
+ * With a {@link GameJournal} every change is journaled before the future of its command completes, the snapshot is
+ * still published straight away.
+ */
+public class GameSession
+{
+	// Commands applied in one turn on a worker thread before other sessions get a chance to run
+	private static final int MAX_BATCH = 64;
+	// Scratch buffers belong to the worker thread rather than the session so thousands of idle games don't hold them
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	@Getter
+	private final long id;
+	private final Game game;
+	private final Adjudicator adjudicator;
+	private final Executor executor;
+	// Null when the game has no time control
+	private final GameClock clock;
+	// Null when games aren't journaled
+	private final GameJournal journal;
+	// Null when games aren't rated
+	private final RatingEngine ratingEngine;
+	// Journal write made by the command being applied, the command completes once it is on disk
+	private CompletableFuture<Void> pendingWrite;
+	private final Queue<Command> mailbox = new ConcurrentLinkedQueue<>();
+	// Set while a drain of the mailbox is queued or running on the executor
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	// Only touched by the command being applied, an abandoned game is over but its snapshot still reads as unfinished
+	private boolean abandoned;
+	@Getter
+	private volatile GameSnapshot snapshot;
+
+	GameSession(final long id, final Game game, final Adjudicator adjudicator, final Executor executor,
+		final ClockService clocks, final GameJournal journal, final RatingEngine ratingEngine)
+	{
+		this.id = id;
+		this.game = game;
+		this.adjudicator = adjudicator;
+		this.executor = executor;
+		this.journal = journal;
+		this.ratingEngine = ratingEngine;
+		final boolean finished = publish(null).isFinished();
+		this.clock = GameClock.isTimed(game) && !finished
+			? new GameClock(game, clocks, this::checkFlag, System.nanoTime()) : null;
+	}
+
+	/**
+	 * Queues a move, it is checked against the position it is applied to rather than the one the caller last saw
+	 * @param team team making the move
+	 * @param from starting square
+	 * @param to ending square
+	 * @param promotionType piece type to promote to, ignored unless a pawn reaches the back row
+	 * @return completes with the snapshot after the move, or exceptionally with an {@link IllegalArgumentException}
+	 * for an illegal move or an {@link IllegalStateException} when it isn't the teams turn or the game is over
+	 */
+	public CompletableFuture<GameSnapshot> submitMove(final int team, final int from, final int to,
+		final int promotionType)
+	{
+		return enqueue(() -> applyMove(team, from, to, promotionType));
+	}
+
+	/**
+	 * Queues a resignation
+	 * @param team team resigning
+	 * @return completes with the snapshot of the finished game, or exceptionally if the game was already over
+	 */
+	public CompletableFuture<GameSnapshot> resign(final int team)
+	{
+		return enqueue(() ->
+		{
+			checkNotFinished();
+			return finish(team == Position.WHITE ? PgnWriter.BLACK_WINS : PgnWriter.WHITE_WINS);
+		});
+	}
+
+	/**
+	 * Queues abandoning the game, it ends without a result once the commands queued before it have been applied
+	 * @return completes with the last snapshot of the game, or exceptionally if the game was already over
+	 */
+	CompletableFuture<GameSnapshot> abandon()
+	{
+		return enqueue(() ->
+		{
+			checkNotFinished();
+			abandoned = true;
+			return finish(PgnWriter.UNFINISHED);
+		});
+	}
+
+	/**
+	 * Queues a check of the side to moves clock, called by the clock service once its deadline has passed
+	 */
+	private void checkFlag()
+	{
+		enqueue(() ->
+		{
+			if (abandoned || snapshot.isFinished())
+			{
+				return snapshot;
+			}
+
+			final long now = System.nanoTime();
+			final int team = game.getBoard().getPosition().getSideToMove();
+			if (clock.remainingNanos(team, now) > 0)
+			{
+				// A move got in first or the tick came early, watch the new deadline instead
+				clock.resume(now);
+				return snapshot;
+			}
+			return flagFall(team);
+		});
+	}
+
+	private GameSnapshot flagFall(final int team)
+	{
+		final Position position = game.getBoard().getPosition();
+		final int opponent = team == Position.WHITE ? Position.BLACK : Position.WHITE;
+		if (!Adjudicator.canMate(position, opponent))
+		{
+			return finish(PgnWriter.DRAW);
+		}
+		return finish(team == Position.WHITE ? PgnWriter.BLACK_WINS : PgnWriter.WHITE_WINS);
+	}
+
+	private GameSnapshot finish(final String result)
+	{
+		final GameSnapshot published = publish(result);
+		ended(result);
+		return published;
+	}
+
+	/**
+	 * Stops the clock, journals the end of a game that just finished and rates it
+	 */
+	private void ended(final String result)
+	{
+		if (clock != null)
+		{
+			clock.stop();
+		}
+		if (journal != null)
+		{
+			pendingWrite = journal.ended(id, result);
+		}
+		if (ratingEngine != null)
+		{
+			ratingEngine.update(game, result);
+		}
+	}
+
+	private GameSnapshot applyMove(final int team, final int from, final int to, final int promotionType)
+	{
+		checkNotFinished();
+		final Position position = game.getBoard().getPosition();
+		if (team != position.getSideToMove())
+		{
+			throw new IllegalStateException("It is not " + (team == Position.WHITE ? "white" : "black")
+				+ "s turn in game " + id);
+		}
+
+		final long now = System.nanoTime();
+		if (clock != null && clock.remainingNanos(team, now) <= 0)
+		{
+			// The flag fell before the ticker noticed
+			flagFall(team);
+			throw new IllegalStateException("Time ran out in game " + id);
+		}
+
+		final int[] moves = SCRATCH.get().moves;
+		final int move = position.encodeMove(from, to, promotionType);
+		if (!contains(moves, MoveGenerator.generate(position, moves), move))
+		{
+			throw new IllegalArgumentException("Illegal move " + CompactMove.toString(move) + " in game " + id);
+		}
+
+		if (clock != null)
+		{
+			clock.punch(team, now);
+		}
+		game.playMove(move);
+		if (journal != null)
+		{
+			pendingWrite = journal.moved(id, move, clock != null ? timeRemaining(player(team)).toNanos() : 0);
+		}
+		final GameSnapshot published = publish(null);
+		if (published.isFinished())
+		{
+			ended(published.getResult());
+		}
+		return published;
+	}
+
+	private void checkNotFinished()
+	{
+		if (abandoned || snapshot.isFinished())
+		{
+			throw new IllegalStateException("Game " + id + " is over");
+		}
+	}
+
+	private static boolean contains(final int[] moves, final int count, final int move)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if (moves[i] == move)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Publishes a new snapshot of the game
+	 * @param result result of the game, or null to adjudicate the current position
+	 */
+	private GameSnapshot publish(final String result)
+	{
+		final Scratch scratch = SCRATCH.get();
+		final Position position = game.getBoard().getPosition();
+		scratch.fen.setLength(0);
+		final GameSnapshot published = new GameSnapshot(id, position.appendFen(scratch.fen).toString(),
+			game.getMoveCount(), position.getLastMove(), position.getSideToMove(),
+			timeRemaining(game.getWhitePlayer()), timeRemaining(game.getBlackPlayer()),
+			result != null ? result : adjudicator.adjudicate(position, scratch.moves));
+		snapshot = published;
+		return published;
+	}
+
+	private Player player(final int team)
+	{
+		return team == Position.WHITE ? game.getWhitePlayer() : game.getBlackPlayer();
+	}
+
+	private static Duration timeRemaining(final Player player)
+	{
+		return player.getTimeRemaining() == null ? Duration.ZERO : player.getTimeRemaining();
+	}
+
+	private CompletableFuture<GameSnapshot> enqueue(final Supplier<GameSnapshot> action)
+	{
+		final Command command = new Command(action);
+		mailbox.add(command);
+		schedule();
+		return command;
+	}
+
+	private void schedule()
+	{
+		if (mailbox.isEmpty() || !scheduled.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		try
+		{
+			executor.execute(this::drain);
+		}
+		catch (RejectedExecutionException e)
+		{
+			// The server is shutting down, nothing will ever apply the queued commands
+			for (Command command = mailbox.poll(); command != null; command = mailbox.poll())
+			{
+				command.completeExceptionally(e);
+			}
+			scheduled.set(false);
+		}
+	}
+
+	private void drain()
+	{
+		for (int i = 0; i < MAX_BATCH; i++)
+		{
+			final Command command = mailbox.poll();
+			if (command == null)
+			{
+				break;
+			}
+			command.apply();
+		}
+
+		scheduled.set(false);
+		// Commands queued after the last poll but before the flag was cleared would otherwise be stranded
+		schedule();
+	}
+
+	/**
+	 * A queued change that completes itself with the snapshot it produced once any journal write it made is on disk,
+	 * extending the future saves an allocation per command
+	 */
+	private final class Command extends CompletableFuture<GameSnapshot>
+	{
+		private final Supplier<GameSnapshot> action;
+
+		Command(final Supplier<GameSnapshot> action)
+		{
+			this.action = action;
+		}
+
+		void apply()
+		{
+			try
+			{
+				final GameSnapshot applied = action.get();
+				final CompletableFuture<Void> write = pendingWrite;
+				if (write == null)
+				{
+					complete(applied);
+					return;
+				}
+				write.whenComplete((ignored, error) ->
+				{
+					if (error == null)
+					{
+						complete(applied);
+					}
+					else
+					{
+						completeExceptionally(error);
+					}
+				});
+			}
+			catch (RuntimeException e)
+			{
+				completeExceptionally(e);
+			}
+			finally
+			{
+				pendingWrite = null;
+			}
+		}
+	}
+
+	private static final class Scratch
+	{
+		final int[] moves = new int[MoveGenerator.MAX_MOVES];
+		final StringBuilder fen = new StringBuilder(90);
+	}
+}
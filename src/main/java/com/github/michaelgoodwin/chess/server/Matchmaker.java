@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.server;
+
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Team;
+import com.github.michaelgoodwin.chess.User;
+import com.github.michaelgoodwin.chess.rating.Elo;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pairs waiting users into new games with the same time control.
+ * Each time control has a pool of concurrent queues, one per band of ratings. A user joining looks for an opponent
+ * in the nearby bands and only queues if there is none. The range of ratings a waiting user accepts widens the longer
+ * they wait, so a sweeper thread regularly looks again for everyone still queued.
+ * Nothing is locked, a waiting ticket is taken by whichever thread wins a compare and set on its state.
+ */
+@Slf4j
+public class Matchmaker implements AutoCloseable
+{
+	public static final Duration DEFAULT_SWEEP = Duration.ofMillis(100);
+
+	private static final int BAND_WIDTH = 50;
+	private static final int MAX_RATING = 4000;
+	private static final int BANDS = MAX_RATING / BAND_WIDTH + 1;
+	// Rating difference accepted straight away, and how fast it widens while waiting
+	private static final int INITIAL_RANGE = 50;
+	private static final int RANGE_PER_SECOND = 25;
+	private static final int MAX_RANGE = 500;
+
+	// Ticket states
+	private static final int WAITING = 0;
+	// Taken by the sweeper while it looks for an opponent, nobody else can take it meanwhile
+	private static final int SEARCHING = 1;
+	private static final int MATCHED = 2;
+	private static final int CANCELLED = 3;
+
+	private final ConcurrentMap<TimeControl, Pool> pools = new ConcurrentHashMap<>();
+	// Null when nothing needs to know about new games
+	private final Consumer<Game> matched;
+	private final long sweepNanos;
+	private final AtomicBoolean running = new AtomicBoolean(true);
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final Thread sweeper;
+
+	/**
+	 * @param threadFactory creates the sweeper thread
+	 * @param sweep how often waiting users look again for an opponent with their widened range
+	 * @param matched called once with every new game before either ticket completes, e.g. to host it on a
+	 * {@link GameServer}. Called from the thread that made the match and must not block, or null
+	 */
+	public Matchmaker(final ThreadFactory threadFactory, final Duration sweep, final Consumer<Game> matched)
+	{
+		this.sweepNanos = sweep.toNanos();
+		this.matched = matched;
+		sweeper = threadFactory.newThread(this::run);
+		sweeper.start();
+	}
+
+	/**
+	 * @return a factory for daemon platform threads named after the matchmaker
+	 */
+	public static ThreadFactory platformThreads()
+	{
+		final AtomicInteger count = new AtomicInteger();
+		return runnable ->
+		{
+			final Thread thread = new Thread(runnable, "matchmaker-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Looks for an opponent for a user, queuing them until one is found
+	 * @param user user wanting a game, matched by their current rating
+	 * @param startingTime time each player starts with
+	 * @param increment time added for each move
+	 * @return completes with the new game once matched, already started with full clocks. Cancel it to stop waiting
+	 */
+	public Ticket join(final User user, final Duration startingTime, final Duration increment)
+	{
+		if (!running.get())
+		{
+			throw new IllegalStateException("Matchmaker is closed");
+		}
+
+		final Pool pool = pools.computeIfAbsent(new TimeControl(startingTime, increment), Pool::new);
+		final Ticket ticket = new Ticket(user, pool);
+		final Ticket opponent = pool.findOpponent(ticket, INITIAL_RANGE);
+		if (opponent != null)
+		{
+			ticket.state.set(MATCHED);
+			start(ticket, opponent);
+		}
+		else
+		{
+			// Counted before it can be seen so a quick match can't take the count below zero
+			waiting.incrementAndGet();
+			pool.bands[band(ticket.rating)].add(ticket);
+			if (!running.get())
+			{
+				// Closed while joining, close may have already drained the band
+				ticket.cancel(false);
+			}
+		}
+		return ticket;
+	}
+
+	/**
+	 * @return number of users queued waiting for an opponent
+	 */
+	public int getWaitingCount()
+	{
+		return waiting.get();
+	}
+
+	private static int band(final int rating)
+	{
+		return Math.max(0, Math.min(rating, MAX_RATING)) / BAND_WIDTH;
+	}
+
+	/**
+	 * @return rating difference a ticket accepts after waiting for the given time
+	 */
+	private static int range(final long waitedNanos)
+	{
+		return (int) Math.min(MAX_RANGE, INITIAL_RANGE + RANGE_PER_SECOND * waitedNanos / 1_000_000_000L);
+	}
+
+	/**
+	 * Starts a game between two tickets that have both been taken
+	 */
+	private void start(final Ticket first, final Ticket second)
+	{
+		final boolean firstWhite = ThreadLocalRandom.current().nextBoolean();
+		final Ticket white = firstWhite ? first : second;
+		final Ticket black = firstWhite ? second : first;
+		final TimeControl timeControl = first.pool.timeControl;
+		final Game game = Game.start(new Player(white.user, Team.WHITE), new Player(black.user, Team.BLACK),
+			timeControl.getStartingTime(), timeControl.getIncrement());
+		try
+		{
+			if (matched != null)
+			{
+				matched.accept(game);
+			}
+		}
+		catch (RuntimeException e)
+		{
+			first.completeExceptionally(e);
+			second.completeExceptionally(e);
+			return;
+		}
+		first.complete(game);
+		second.complete(game);
+	}
+
+	private void run()
+	{
+		while (running.get())
+		{
+			LockSupport.parkNanos(sweepNanos);
+			try
+			{
+				final long now = System.nanoTime();
+				for (final Pool pool : pools.values())
+				{
+					pool.sweep(now);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				log.warn("Matchmaking sweep failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Stops matching and cancels every ticket still waiting
+	 */
+	@Override
+	public void close()
+	{
+		if (!running.getAndSet(false))
+		{
+			return;
+		}
+		LockSupport.unpark(sweeper);
+		try
+		{
+			sweeper.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(sweepNanos) * 10));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		for (final Pool pool : pools.values())
+		{
+			for (final Queue<Ticket> band : pool.bands)
+			{
+				for (Ticket ticket = band.poll(); ticket != null; ticket = band.poll())
+				{
+					ticket.cancel(false);
+				}
+			}
+		}
+	}
+
+	@Value
+	private static class TimeControl
+	{
+		Duration startingTime;
+		Duration increment;
+	}
+
+	/**
+	 * Users waiting for games with one time control
+	 */
+	private final class Pool
+	{
+		private final TimeControl timeControl;
+		private final Queue<Ticket>[] bands;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Pool(final TimeControl timeControl)
+		{
+			this.timeControl = timeControl;
+			bands = new Queue[BANDS];
+			for (int i = 0; i < bands.length; i++)
+			{
+				bands[i] = new ConcurrentLinkedQueue<>();
+			}
+		}
+
+		/**
+		 * Takes the longest waiting ticket within range, searching outwards from the tickets own band
+		 * @param ticket ticket looking for an opponent, not taken by this search
+		 * @param range largest rating difference accepted, an opponent who has waited longer and accepts more finds
+		 * this ticket on their next sweep
+		 * @return the opponent, already marked matched, or null
+		 */
+		Ticket findOpponent(final Ticket ticket, final int range)
+		{
+			final int reach = (range + BAND_WIDTH - 1) / BAND_WIDTH;
+			final int home = band(ticket.rating);
+			for (int distance = 0; distance <= reach; distance++)
+			{
+				final int below = home - distance;
+				final int above = home + distance;
+				final Ticket lower = below >= 0 ? take(bands[below], ticket, range) : null;
+				if (lower != null)
+				{
+					return lower;
+				}
+				final Ticket higher = distance > 0 && above < BANDS ? take(bands[above], ticket, range) : null;
+				if (higher != null)
+				{
+					return higher;
+				}
+			}
+			return null;
+		}
+
+		private Ticket take(final Queue<Ticket> band, final Ticket ticket, final int range)
+		{
+			for (final Iterator<Ticket> it = band.iterator(); it.hasNext();)
+			{
+				final Ticket other = it.next();
+				final int state = other.state.get();
+				if (state == MATCHED || state == CANCELLED)
+				{
+					// Tickets taken elsewhere are unlinked by whoever next walks past them
+					it.remove();
+				}
+				else if (state == WAITING && other.user != ticket.user && Math.abs(other.rating - ticket.rating) <= range
+					&& other.state.compareAndSet(WAITING, MATCHED))
+				{
+					it.remove();
+					waiting.decrementAndGet();
+					return other;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Looks again for an opponent for every waiting ticket with the range it has widened to
+		 */
+		void sweep(final long now)
+		{
+			for (final Queue<Ticket> band : bands)
+			{
+				for (final Iterator<Ticket> it = band.iterator(); it.hasNext();)
+				{
+					final Ticket ticket = it.next();
+					if (!ticket.state.compareAndSet(WAITING, SEARCHING))
+					{
+						final int state = ticket.state.get();
+						if (state == MATCHED || state == CANCELLED)
+						{
+							it.remove();
+						}
+						continue;
+					}
+
+					final Ticket opponent = findOpponent(ticket, range(now - ticket.joined));
+					if (opponent == null)
+					{
+						ticket.state.set(WAITING);
+						continue;
+					}
+					ticket.state.set(MATCHED);
+					it.remove();
+					waiting.decrementAndGet();
+					start(ticket, opponent);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A user waiting for a game, completes with the game once matched
+	 */
+	public final class Ticket extends CompletableFuture<Game>
+	{
+		@Getter
+		private final User user;
+		private final Pool pool;
+		private final int rating;
+		private final long joined = System.nanoTime();
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+
+		Ticket(final User user, final Pool pool)
+		{
+			this.user = user;
+			this.pool = pool;
+			this.rating = Elo.effectiveRating(user.getElo());
+		}
+
+		/**
+		 * Stops waiting, fails if the ticket has already been matched
+		 */
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning)
+		{
+			while (true)
+			{
+				final int current = state.get();
+				if (current == SEARCHING)
+				{
+					// The sweeper only holds a ticket while it scans a few bands
+					Thread.onSpinWait();
+				}
+				else if (current != WAITING)
+				{
+					return current == CANCELLED && super.cancel(mayInterruptIfRunning);
+				}
+				else if (state.compareAndSet(WAITING, CANCELLED))
+				{
+					waiting.decrementAndGet();
+					return super.cancel(mayInterruptIfRunning);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.server;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel.
+ * Each level is a ring of 64 slots, a slot on level 0 covers one tick and a slot on each level above covers a whole
+ * turn of the level below. Timers are linked into the slot covering their deadline, and when a lower level completes a
+ * turn the next slot of the level above is emptied back down into it. Scheduling and cancelling are O(1), advancing is
+ * O(1) per tick plus the timers that expire or move down a level, and memory is one node per timer whatever the number
+ * of deadlines.
+ * Not thread safe, a wheel belongs to a single thread.
+ */
+public class TimingWheel
+{
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+
+	private final long tickNanos;
+	private final int levels;
+	// Linked list heads indexed by (level * SLOTS) + slot
+	private final Timer[] slots;
+	private final long origin;
+	private long currentTick;
+	private int size;
+
+	/**
+	 * @param tickNanos resolution of the wheel, timers can fire up to one tick late
+	 * @param levels number of levels, deadlines up to tickNanos * 64^levels ahead are placed directly and later ones
+	 * are parked in the top level until they come into range
+	 * @param nowNanos current {@link System#nanoTime()}
+	 */
+	public TimingWheel(final long tickNanos, final int levels, final long nowNanos)
+	{
+		if (tickNanos <= 0 || levels < 1 || levels * SLOT_BITS >= Long.SIZE - 1)
+		{
+			throw new IllegalArgumentException("Invalid timing wheel size " + levels + " levels of " + tickNanos + "ns");
+		}
+		this.tickNanos = tickNanos;
+		this.levels = levels;
+		this.slots = new Timer[levels * SLOTS];
+		this.origin = nowNanos;
+	}
+
+	/**
+	 * A timer linked into the wheel, extend it to carry what the timer is for
+	 */
+	public abstract static class Timer
+	{
+		private Timer previous;
+		private Timer next;
+		private long deadlineTick;
+		// Index into slots, or -1 when the timer isn't scheduled
+		private int slot = -1;
+
+		public boolean isScheduled()
+		{
+			return slot >= 0;
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Schedules a timer, moving it if it was already scheduled
+	 * @param timer timer to schedule
+	 * @param deadlineNanos {@link System#nanoTime()} the timer should fire at, a deadline in the past fires on the
+	 * next tick
+	 */
+	public void schedule(final Timer timer, final long deadlineNanos)
+	{
+		cancel(timer);
+		// Round up so a timer never fires before its deadline
+		final long tick = Math.floorDiv(deadlineNanos - origin + tickNanos - 1, tickNanos);
+		timer.deadlineTick = Math.max(tick, currentTick + 1);
+		insert(timer);
+		size++;
+	}
+
+	/**
+	 * Removes a timer from the wheel, does nothing if it isn't scheduled
+	 */
+	public void cancel(final Timer timer)
+	{
+		if (timer.slot < 0)
+		{
+			return;
+		}
+		unlink(timer);
+		size--;
+	}
+
+	/**
+	 * Moves the wheel forward, firing every timer whose deadline has passed
+	 * @param nowNanos current {@link System#nanoTime()}
+	 * @param expired called with each expired timer after it has been removed, it may schedule the timer again
+	 */
+	public void advance(final long nowNanos, final Consumer<Timer> expired)
+	{
+		final long target = Math.floorDiv(nowNanos - origin, tickNanos);
+		while (currentTick < target)
+		{
+			currentTick++;
+			// Empty higher levels first so timers they pass down are picked up by the levels below on this tick
+			for (int level = levels - 1; level > 0; level--)
+			{
+				if ((currentTick & ((1L << (level * SLOT_BITS)) - 1)) == 0)
+				{
+					cascade(level * SLOTS + (int) (currentTick >>> (level * SLOT_BITS) & SLOT_MASK));
+				}
+			}
+
+			final int slot = (int) (currentTick & SLOT_MASK);
+			for (Timer timer = slots[slot]; timer != null; timer = slots[slot])
+			{
+				unlink(timer);
+				size--;
+				expired.accept(timer);
+			}
+		}
+	}
+
+	private void cascade(final int slot)
+	{
+		Timer timer = slots[slot];
+		slots[slot] = null;
+		while (timer != null)
+		{
+			final Timer next = timer.next;
+			timer.previous = null;
+			timer.next = null;
+			insert(timer);
+			timer = next;
+		}
+	}
+
+	private void insert(final Timer timer)
+	{
+		final long deadline = timer.deadlineTick;
+		int level = 0;
+		while (level < levels - 1 && (deadline >>> (level * SLOT_BITS)) - (currentTick >>> (level * SLOT_BITS)) >= SLOTS)
+		{
+			level++;
+		}
+
+		final int shift = level * SLOT_BITS;
+		long block = deadline >>> shift;
+		if (block - (currentTick >>> shift) >= SLOTS)
+		{
+			// Too far ahead for the wheel, park it in the furthest slot and place it properly once it cascades
+			block = (currentTick >>> shift) + SLOTS - 1;
+		}
+
+		final int slot = level * SLOTS + (int) (block & SLOT_MASK);
+		timer.slot = slot;
+		timer.previous = null;
+		timer.next = slots[slot];
+		if (timer.next != null)
+		{
+			timer.next.previous = timer;
+		}
+		slots[slot] = timer;
+	}
+
+	private void unlink(final Timer timer)
+	{
+		if (timer.previous != null)
+		{
+			timer.previous.next = timer.next;
+		}
+		else
+		{
+			slots[timer.slot] = timer.next;
+		}
+		if (timer.next != null)
+		{
+			timer.next.previous = timer.previous;
+		}
+		timer.previous = null;
+		timer.next = null;
+		timer.slot = -1;
+	}
+}
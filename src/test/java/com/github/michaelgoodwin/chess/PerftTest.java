@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class PerftTest
+{
+	private final Perft perft = new Perft();
+
+	@Test
+	public void testStartingPosition()
+	{
+		assertEquals(4_865_609L, count(Perft.START_FEN, 5));
+	}
+
+	@Test
+	public void testKiwipete()
+	{
+		assertEquals(4_085_603L, count("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 4));
+	}
+
+	@Test
+	public void testEnPassantPins()
+	{
+		assertEquals(11_030_083L, count("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 6));
+	}
+
+	@Test
+	public void testPromotions()
+	{
+		assertEquals(15_833_292L, count("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 5));
+	}
+
+	@Test
+	public void testUnderPromotionCheck()
+	{
+		assertEquals(2_103_487L, count("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 4));
+	}
+
+	@Test
+	public void testMiddlegame()
+	{
+		assertEquals(3_894_594L,
+			count("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeDepth()
+	{
+		count(Perft.START_FEN, -1);
+	}
+
+	private long count(final String fen, final int depth)
+	{
+		final Position position = new Position();
+		position.setFen(fen);
+		return perft.perft(position, depth);
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.archive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.Perft;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.Team;
+import com.github.michaelgoodwin.chess.User;
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GameArchiveTest
+{
+	private static final String FEN = "4k3/8/8/8/8/8/4P3/4K3 w - - 0 1";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Path path;
+
+	@Before
+	public void setUp()
+	{
+		path = folder.getRoot().toPath().resolve("games.archive");
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final Game mate = game("alice", "bob", null, "f2f3", "e7e5", "g2g4", "d8h4");
+		final Game resigned = game("carol", "dave", FEN, "e2e4", "e8d7");
+		try (GameArchiveWriter writer = new GameArchiveWriter(path))
+		{
+			assertEquals(0, writer.append(mate));
+			assertEquals(1, writer.append(resigned, PgnWriter.WHITE_WINS));
+		}
+
+		try (GameArchive archive = new GameArchive(path))
+		{
+			assertEquals(2, archive.getGameCount());
+
+			final ArchivedGame first = archive.get(0);
+			assertEquals("alice", first.getWhiteName());
+			assertEquals("bob", first.getBlackName());
+			assertEquals(PgnWriter.BLACK_WINS, first.getResult());
+			assertNull(first.getFen());
+			assertArrayEquals(moves(mate), first.getMoves());
+			assertEquals(Duration.ofMinutes(5), first.getStartingTime());
+
+			final ArchivedGame second = archive.get(1);
+			assertEquals("carol", second.getWhiteName());
+			assertEquals(PgnWriter.WHITE_WINS, second.getResult());
+			assertEquals(FEN, second.getFen());
+			assertArrayEquals(moves(resigned), second.getMoves());
+		}
+	}
+
+	@Test
+	public void testTornRecord() throws IOException
+	{
+		try (GameArchiveWriter writer = new GameArchiveWriter(path))
+		{
+			writer.append(game("alice", "bob", null, "e2e4"));
+			writer.append(game("carol", "dave", null, "d2d4", "d7d5"));
+		}
+
+		// The last record was cut short, its index entry made it to disk
+		try (FileChannel data = FileChannel.open(path, StandardOpenOption.WRITE))
+		{
+			data.truncate(data.size() - 4);
+		}
+		try (GameArchive archive = new GameArchive(path))
+		{
+			assertEquals(1, archive.getGameCount());
+		}
+
+		// Reopening for writing drops the dangling index entry so the next game takes its number
+		try (GameArchiveWriter writer = new GameArchiveWriter(path))
+		{
+			assertEquals(1, writer.getGameCount());
+			assertEquals(Long.BYTES, Files.size(GameArchive.indexPath(path)));
+			assertEquals(1, writer.append(game("erin", "frank", null, "c2c4")));
+		}
+		try (GameArchive archive = new GameArchive(path))
+		{
+			assertEquals(2, archive.getGameCount());
+			assertEquals("alice", archive.get(0).getWhiteName());
+			assertEquals("erin", archive.get(1).getWhiteName());
+		}
+	}
+
+	@Test
+	public void testPartialIndexEntry() throws IOException
+	{
+		try (GameArchiveWriter writer = new GameArchiveWriter(path))
+		{
+			writer.append(game("alice", "bob", null, "e2e4"));
+		}
+
+		try (FileChannel index = FileChannel.open(GameArchive.indexPath(path), StandardOpenOption.APPEND))
+		{
+			index.write(ByteBuffer.wrap(new byte[3]));
+		}
+		try (GameArchive archive = new GameArchive(path))
+		{
+			assertEquals(1, archive.getGameCount());
+		}
+
+		try (GameArchiveWriter writer = new GameArchiveWriter(path))
+		{
+			assertEquals(1, writer.getGameCount());
+			assertEquals(Long.BYTES, Files.size(GameArchive.indexPath(path)));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testReadAfterClose() throws IOException
+	{
+		try (GameArchiveWriter writer = new GameArchiveWriter(path))
+		{
+			writer.append(game("alice", "bob", null, "e2e4"));
+		}
+
+		final GameArchive archive = new GameArchive(path);
+		archive.close();
+		archive.get(0);
+	}
+
+	private static Game game(final String white, final String black, final String fen, final String... moves)
+	{
+		final Position position = new Position();
+		position.setFen(fen == null ? Perft.START_FEN : fen);
+		final short[] played = new short[moves.length];
+		for (int i = 0; i < moves.length; i++)
+		{
+			final String move = moves[i];
+			final int from = Position.square(move.charAt(0) - 'a', move.charAt(1) - '1');
+			final int to = Position.square(move.charAt(2) - 'a', move.charAt(3) - '1');
+			final int encoded = position.encodeMove(from, to, Position.NO_PIECE);
+			played[i] = CompactMove.toShort(encoded);
+			position.makeMove(encoded);
+		}
+		return Game.replay(new Player(new User(white), Team.WHITE), new Player(new User(black), Team.BLACK),
+			Duration.ofMinutes(5), Duration.ofSeconds(3), fen, played);
+	}
+
+	private static short[] moves(final Game game)
+	{
+		final short[] moves = new short[game.getMoveCount()];
+		for (int i = 0; i < moves.length; i++)
+		{
+			moves[i] = CompactMove.toShort(game.getMove(i));
+		}
+		return moves;
+	}
+}
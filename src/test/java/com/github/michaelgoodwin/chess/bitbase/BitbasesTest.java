@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.bitbase;
+
+import static org.junit.Assert.assertEquals;
+import com.github.michaelgoodwin.chess.Position;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class BitbasesTest
+{
+	private static Bitbases bitbases;
+
+	@BeforeClass
+	public static void generate()
+	{
+		bitbases = Bitbases.generate(Endgame.KQK, Endgame.KPK, Endgame.KBBK);
+	}
+
+	@Test
+	public void testKingAndPawn()
+	{
+		// Opposition decides it, with white to move the king steps aside and the pawn queens
+		assertEquals(Bitbases.WIN, probe("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1"));
+		assertEquals(Bitbases.LOSS, probe("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1"));
+		assertEquals(Bitbases.DRAW, probe("4k3/4P3/4K3/8/8/8/8/8 b - - 0 1"));
+		// Rook pawns are drawn once the defending king reaches the corner
+		assertEquals(Bitbases.DRAW, probe("k7/8/8/8/P7/8/8/3K4 w - - 0 1"));
+	}
+
+	@Test
+	public void testBlackPawn()
+	{
+		assertEquals(Bitbases.WIN, probe("8/8/8/8/4p3/4k3/8/4K3 b - - 0 1"));
+		assertEquals(Bitbases.LOSS, probe("8/8/8/8/4p3/4k3/8/4K3 w - - 0 1"));
+	}
+
+	@Test
+	public void testKingAndQueen()
+	{
+		assertEquals(Bitbases.WIN, probe("4k3/8/8/8/8/8/8/3QK3 w - - 0 1"));
+		assertEquals(Bitbases.LOSS, probe("4k3/8/8/8/8/8/8/3QK3 b - - 0 1"));
+		// An undefended queen next to the king is taken
+		assertEquals(Bitbases.DRAW, probe("8/8/8/8/8/8/2kQ4/7K b - - 0 1"));
+		assertEquals(Bitbases.DRAW, probe("k7/2Q5/1K6/8/8/8/8/8 b - - 0 1"));
+	}
+
+	@Test
+	public void testTwoBishops()
+	{
+		assertEquals(Bitbases.WIN, probe("4k3/8/8/8/8/8/8/2B1KB2 w - - 0 1"));
+		// Bishops on the same colour can't mate
+		assertEquals(Bitbases.DRAW, probe("4k3/8/8/8/8/8/8/2B1K1B1 w - - 0 1"));
+	}
+
+	@Test
+	public void testNotCovered()
+	{
+		assertEquals(Bitbases.UNKNOWN, probe("4k3/8/8/8/8/8/8/3NK3 w - - 0 1"));
+		assertEquals(Bitbases.UNKNOWN, probe("4k3/4p3/8/8/8/8/4P3/4K3 w - - 0 1"));
+	}
+
+	private static int probe(final String fen)
+	{
+		final Position position = new Position();
+		position.setFen(fen);
+		return bitbases.probe(position);
+	}
+}
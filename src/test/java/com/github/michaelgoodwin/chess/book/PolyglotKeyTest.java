@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.book;
+
+import static org.junit.Assert.assertEquals;
+import com.github.michaelgoodwin.chess.Perft;
+import com.github.michaelgoodwin.chess.Position;
+import org.junit.Test;
+
+/**
+ * Checks the default keys against the reference keys published with the Polyglot book format
+ */
+public class PolyglotKeyTest
+{
+	@Test
+	public void testStartingPosition()
+	{
+		assertKey(0x463b96181691fc9cL);
+	}
+
+	@Test
+	public void testPawnMoves()
+	{
+		assertKey(0x823c9b50fd114196L, "e2e4");
+		assertKey(0x0756b94461c50fb0L, "e2e4", "d7d5");
+		assertKey(0x662fafb965db29d4L, "e2e4", "d7d5", "e4e5");
+	}
+
+	@Test
+	public void testEnPassantOnlyWhenCapturable()
+	{
+		assertKey(0x22a48b5a8e47ff78L, "e2e4", "d7d5", "e4e5", "f7f5");
+		assertKey(0x3c8123ea7b067637L, "a2a4", "b7b5", "h2h4", "b5b4", "c2c4");
+		assertKey(0x5c3f9b829b279560L, "a2a4", "b7b5", "h2h4", "b5b4", "c2c4", "b4c3", "a1a3");
+	}
+
+	@Test
+	public void testCastlingRights()
+	{
+		assertKey(0x652a607ca3f242c1L, "e2e4", "d7d5", "e4e5", "f7f5", "e1e2");
+		assertKey(0x00fdd303c946bdd9L, "e2e4", "d7d5", "e4e5", "f7f5", "e1e2", "e8f7");
+	}
+
+	private static void assertKey(final long expected, final String... moves)
+	{
+		final Position position = new Position();
+		position.setFen(Perft.START_FEN);
+		for (final String move : moves)
+		{
+			final int from = Position.square(move.charAt(0) - 'a', move.charAt(1) - '1');
+			final int to = Position.square(move.charAt(2) - 'a', move.charAt(3) - '1');
+			position.makeMove(position.encodeMove(from, to, Position.NO_PIECE));
+		}
+		assertEquals(Long.toHexString(expected), Long.toHexString(PolyglotKey.DEFAULT.key(position)));
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.Team;
+import com.github.michaelgoodwin.chess.User;
+import com.github.michaelgoodwin.chess.pgn.PgnWriter;
+import com.github.michaelgoodwin.chess.server.GameServer;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GameJournalTest
+{
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final Map<String, User> users = new HashMap<>();
+
+	@Test
+	public void testRecoversLiveGames() throws IOException
+	{
+		final Path directory = folder.getRoot().toPath();
+		final Game live = game("alice", "bob");
+		final Game finished = game("carol", "dave");
+		try (GameJournal journal = open(directory, 2))
+		{
+			journal.started(1, live).join();
+			journal.started(2, finished).join();
+			journal.moved(1, play(live, "e2e4"), 1).join();
+			journal.moved(1, play(live, "e7e5"), 2).join();
+			journal.ended(2, PgnWriter.DRAW).join();
+		}
+
+		try (GameJournal journal = open(directory, 2))
+		{
+			assertEquals(2, journal.getMaxGameId());
+			final List<RecoveredGame> recovered = journal.getRecovered();
+			assertEquals(1, recovered.size());
+			final Game game = recovered.get(0).getGame();
+			assertEquals(1, recovered.get(0).getGameId());
+			assertEquals(2, game.getMoveCount());
+			assertEquals(live.getMove(1), game.getMove(1));
+			assertSame(users.get("alice"), game.getWhitePlayer().getUser());
+			assertEquals(Duration.ofNanos(2), game.getBlackPlayer().getTimeRemaining());
+		}
+	}
+
+	@Test
+	public void testTornLastRecord() throws IOException
+	{
+		final Path directory = folder.getRoot().toPath();
+		final Game live = game("alice", "bob");
+		try (GameJournal journal = open(directory, 1))
+		{
+			journal.started(1, live).join();
+			journal.moved(1, play(live, "e2e4"), 1).join();
+			journal.moved(1, play(live, "e7e5"), 2).join();
+		}
+
+		// Cut the last move short as if the process died while writing it
+		try (FileChannel channel = FileChannel.open(directory.resolve("shard-0.journal"), StandardOpenOption.WRITE))
+		{
+			channel.truncate(channel.size() - 3);
+		}
+
+		try (GameJournal journal = open(directory, 1))
+		{
+			assertEquals(1, journal.getRecovered().size());
+			final Game game = journal.getRecovered().get(0).getGame();
+			assertEquals(1, game.getMoveCount());
+			assertEquals(live.getMove(0), game.getMove(0));
+
+			// Appending carries on after the last whole record
+			journal.moved(1, live.getMove(1), 3).join();
+		}
+
+		try (GameJournal journal = open(directory, 1))
+		{
+			assertEquals(2, journal.getRecovered().get(0).getGame().getMoveCount());
+		}
+	}
+
+	@Test
+	public void testMaxGameIdSurvivesCompaction() throws IOException
+	{
+		final Path directory = folder.getRoot().toPath();
+		try (GameJournal journal = open(directory, 2))
+		{
+			journal.started(7, game("alice", "bob")).join();
+			journal.ended(7, PgnWriter.WHITE_WINS).join();
+		}
+
+		// The ended game isn't copied by compaction, only the id mark keeps its id from being given out again
+		for (int i = 0; i < 2; i++)
+		{
+			try (GameJournal journal = open(directory, 3 - i))
+			{
+				assertTrue(journal.getRecovered().isEmpty());
+				assertEquals(7, journal.getMaxGameId());
+			}
+		}
+	}
+
+	private GameJournal open(final Path directory, final int shards) throws IOException
+	{
+		return GameJournal.open(directory, shards, GameServer.platformThreads(), users::get);
+	}
+
+	private Game game(final String white, final String black)
+	{
+		return Game.start(new Player(user(white), Team.WHITE), new Player(user(black), Team.BLACK),
+			Duration.ofMinutes(5), Duration.ofSeconds(2));
+	}
+
+	private User user(final String name)
+	{
+		return users.computeIfAbsent(name, User::new);
+	}
+
+	private static int play(final Game game, final String move)
+	{
+		final Position position = game.getBoard().getPosition();
+		final int from = Position.square(move.charAt(0) - 'a', move.charAt(1) - '1');
+		final int to = Position.square(move.charAt(2) - 'a', move.charAt(3) - '1');
+		final int encoded = position.encodeMove(from, to, Position.NO_PIECE);
+		game.playMove(encoded);
+		return encoded;
+	}
+}
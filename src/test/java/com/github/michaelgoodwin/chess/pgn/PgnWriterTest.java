@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020, Michael Goodwin <https://github.com/MichaelGoodwin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.michaelgoodwin.chess.pgn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import com.github.michaelgoodwin.chess.CompactMove;
+import com.github.michaelgoodwin.chess.Game;
+import com.github.michaelgoodwin.chess.Perft;
+import com.github.michaelgoodwin.chess.Player;
+import com.github.michaelgoodwin.chess.Position;
+import com.github.michaelgoodwin.chess.Team;
+import com.github.michaelgoodwin.chess.User;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class PgnWriterTest
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final Game game = replay(null, "e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6", "e1g1");
+		final PgnGame read = roundTrip(game, null);
+		assertEquals("alice", read.getTag("White"));
+		assertEquals("bob", read.getTag("Black"));
+		assertNull(read.getFen());
+		assertArrayEquals(moves(game), read.getMoves());
+		assertEquals(PgnWriter.UNFINISHED, read.getResult());
+	}
+
+	@Test
+	public void testFenStart() throws IOException
+	{
+		final String fen = "4k3/8/8/8/8/8/4P3/4K3 w - - 0 1";
+		final Game game = replay(fen, "e2e4", "e8d7", "e4e5");
+		final String text = write(game, null);
+		assertTrue(text, text.contains("[SetUp \"1\"]\n[FEN \"" + fen + "\"]\n"));
+
+		final PgnGame read = read(text);
+		assertEquals(fen, read.getFen());
+		assertArrayEquals(moves(game), read.getMoves());
+	}
+
+	@Test
+	public void testBlackMovesFirst() throws IOException
+	{
+		final String fen = "4k3/4p3/8/8/8/8/8/4K3 b - - 0 12";
+		final Game game = replay(fen, "e7e5", "e1d2");
+		final String text = write(game, null);
+		assertTrue(text, text.contains("\n12... e5 13. Kd2 *"));
+
+		final PgnGame read = read(text);
+		assertEquals(fen, read.getFen());
+		assertArrayEquals(moves(game), read.getMoves());
+	}
+
+	@Test
+	public void testResultFromPosition() throws IOException
+	{
+		final Game game = replay(null, "f2f3", "e7e5", "g2g4", "d8h4");
+		assertEquals(PgnWriter.BLACK_WINS, roundTrip(game, null).getResult());
+	}
+
+	@Test
+	public void testResultGiven() throws IOException
+	{
+		// A resignation leaves nothing in the position to show the game is over
+		final Game game = replay(null, "e2e4", "e7e5");
+		assertEquals(PgnWriter.WHITE_WINS, roundTrip(game, PgnWriter.WHITE_WINS).getResult());
+	}
+
+	private static Game replay(final String fen, final String... moves)
+	{
+		final Position position = new Position();
+		position.setFen(fen == null ? Perft.START_FEN : fen);
+		final short[] played = new short[moves.length];
+		for (int i = 0; i < moves.length; i++)
+		{
+			final String move = moves[i];
+			final int from = Position.square(move.charAt(0) - 'a', move.charAt(1) - '1');
+			final int to = Position.square(move.charAt(2) - 'a', move.charAt(3) - '1');
+			final int encoded = position.encodeMove(from, to, Position.NO_PIECE);
+			played[i] = CompactMove.toShort(encoded);
+			position.makeMove(encoded);
+		}
+		return Game.replay(new Player(new User("alice"), Team.WHITE), new Player(new User("bob"), Team.BLACK), fen,
+			played);
+	}
+
+	private static short[] moves(final Game game)
+	{
+		final short[] moves = new short[game.getMoveCount()];
+		for (int i = 0; i < moves.length; i++)
+		{
+			moves[i] = CompactMove.toShort(game.getMove(i));
+		}
+		return moves;
+	}
+
+	private static PgnGame roundTrip(final Game game, final String result) throws IOException
+	{
+		return read(write(game, result));
+	}
+
+	private static String write(final Game game, final String result) throws IOException
+	{
+		final StringWriter text = new StringWriter();
+		try (PgnWriter writer = new PgnWriter(text))
+		{
+			writer.write(game, result);
+		}
+		return text.toString();
+	}
+
+	private static PgnGame read(final String text) throws IOException
+	{
+		final PgnReader reader = new PgnReader(Channels.newChannel(
+			new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))));
+		final List<PgnGame> games = new ArrayList<>();
+		reader.readAll(games::add);
+		assertEquals(0, reader.getSkippedGames());
+		assertEquals(1, games.size());
+		return games.get(0);
+	}
+}